@@ -0,0 +1,88 @@
+package analysis;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import nfa.CompactNFA;
+import nfa.NFAGraph;
+import nfa.NFAVertexND;
+
+/**
+ * The intermediate graphs of the analysis of one NFA. Each graph is built the
+ * first time one of the EDA or IDA analyses, with or without priorities, needs
+ * it, and is shared with the analyses after it, none of which modify it.
+ */
+class AnalysisContext {
+
+	private final NFAAnalyser analyser;
+
+	private final NFAGraph originalM;
+
+	/* The NFA with its epsilon transitions flattened or merged, null if it is too complex */
+	private boolean transformed;
+	private CompactNFA transformedM;
+	private NFAGraph transformedNFAGraph;
+
+	/* The states of the NFA merged into every state of the transformed NFA */
+	private final Map<NFAVertexND, Set<NFAVertexND>> esccs = new HashMap<NFAVertexND, Set<NFAVertexND>>();
+
+	/* The trimmed UP-NFA, null if the transformed NFA or the trimming is too complex */
+	private boolean trimmed;
+	private NFAGraph trimmedUPNFA;
+
+	AnalysisContext(NFAAnalyser analyser, NFAGraph originalM) {
+		this.analyser = analyser;
+		this.originalM = originalM;
+	}
+
+	/**
+	 * @return The NFA with its epsilon transitions flattened or merged by the
+	 *         analyser, or null if it is too complex.
+	 */
+	CompactNFA getTransformedNFA() {
+		if (!transformed) {
+			transformedM = analyser.transformNFA(CompactNFA.fromNFAGraph(originalM), esccs);
+			transformed = true;
+		}
+		return transformedM;
+	}
+
+	/**
+	 * @return The transformed NFA as an NFA graph, or null if it is too
+	 *         complex.
+	 */
+	NFAGraph getTransformedNFAGraph() {
+		if (transformedNFAGraph == null && getTransformedNFA() != null) {
+			transformedNFAGraph = transformedM.toNFAGraph();
+		}
+		return transformedNFAGraph;
+	}
+
+	/**
+	 * @return The states of the NFA merged into every state of the transformed
+	 *         NFA, empty if the analyser does not merge states.
+	 */
+	Map<NFAVertexND, Set<NFAVertexND>> getEsccs() {
+		getTransformedNFA();
+		return esccs;
+	}
+
+	/**
+	 * @return The unprioritised NFA of the transformed NFA, without the states
+	 *         that cannot lead to acceptance, or null if the transformed NFA
+	 *         is too complex, or finding those states takes more subsets of
+	 *         its states than the maximum complexity.
+	 */
+	NFAGraph getTrimmedUPNFA() {
+		if (!trimmed) {
+			NFAGraph m = getTransformedNFAGraph();
+			if (m != null) {
+				trimmedUPNFA = NFAAnalysisTools.makeTrimUPNFA(m, analyser.createUnprioritisedNFAGraph(m), analyser.maxComplexity);
+			}
+			trimmed = true;
+		}
+		return trimmedUPNFA;
+	}
+
+}
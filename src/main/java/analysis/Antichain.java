@@ -0,0 +1,49 @@
+package analysis;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * The minimal sets of states among the subsets searched by a subset
+ * construction. When a subset of states accepts fewer words than every set of
+ * states containing it, a set containing one of the minimal sets does not need
+ * to be searched.
+ */
+class Antichain {
+
+	private final LinkedList<BitSet> sets = new LinkedList<BitSet>();
+
+	/**
+	 * @return True if one of the sets of the antichain is contained in the
+	 *         set.
+	 */
+	boolean containsSubsetOf(BitSet set) {
+		for (BitSet subset : sets) {
+			if (isSubset(subset, set)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds a set to the antichain, removing the sets that contain it.
+	 */
+	void add(BitSet set) {
+		Iterator<BitSet> i = sets.iterator();
+		while (i.hasNext()) {
+			if (isSubset(set, i.next())) {
+				i.remove();
+			}
+		}
+		sets.add(set);
+	}
+
+	private static boolean isSubset(BitSet subset, BitSet set) {
+		BitSet outside = (BitSet) subset.clone();
+		outside.andNot(set);
+		return outside.isEmpty();
+	}
+
+}
@@ -0,0 +1,180 @@
+package analysis;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+import nfa.NFAGraph;
+import nfa.UPNFAState;
+import nfa.transitionlabel.CharacterClassTransitionLabel;
+import nfa.transitionlabel.MintermAlphabet;
+import nfa.transitionlabel.TransitionLabel;
+
+/**
+ * Decides for the sets P of the states of an UP-NFA whether there is a word
+ * that none of the states in P accept, in which case a state with such a set
+ * P can still lead to acceptance.
+ *
+ * Every set is decided once, by searching the subsets of states reachable
+ * from it for one that rejects some word, which stops at the first such
+ * subset. A subset of another subset accepts fewer words, so a subset that
+ * contains a subset already searched is not searched again (an antichain of
+ * the subsets), and the subsets found to accept every word are remembered for
+ * the sets decided afterwards. Before the first symbol every character needs
+ * a transition, after it only the characters of the wildcard do, as in the
+ * complement of {@link SubsetConstruction#determinize}. The oracle gives up
+ * once it has searched more subsets than its budget, for all the sets
+ * together.
+ */
+class CoAcceptanceOracle {
+
+	private final SubsetConstruction subsets;
+
+	/* Whether the minterms cover all characters, not only the ones of the wildcard */
+	private final boolean mintermsCoverAllCharacters;
+
+	/* The sets P decided */
+	private final HashMap<BitSet, Boolean> rejectsSomeWord = new HashMap<BitSet, Boolean>();
+
+	/*
+	 * The subsets found to accept every word, after the first symbol, when
+	 * only the characters of the wildcard need transitions.
+	 */
+	private final HashSet<BitSet> acceptingEveryWord = new HashSet<BitSet>();
+
+	private final int maxSubsets;
+	private int numSubsets;
+	private boolean exceededBudget;
+
+	/* The number of the state of the NFA of every state of the last numbering P was a set over */
+	private UPNFAState.StateNumbering lastNumbering;
+	private int[] numberedStates;
+
+	/**
+	 * @param m
+	 *            The NFA of which the UP-NFA was constructed.
+	 * @param maxSubsets
+	 *            The largest number of subsets of states to search.
+	 */
+	CoAcceptanceOracle(NFAGraph m, int maxSubsets) {
+		this.maxSubsets = maxSubsets;
+		HashSet<TransitionLabel> alphabet = new HashSet<TransitionLabel>();
+		alphabet.add(CharacterClassTransitionLabel.wildcardLabel());
+		subsets = new SubsetConstruction(m, alphabet);
+		MintermAlphabet mintermAlphabet = subsets.getMintermAlphabet();
+		BitSet allMinterms = new BitSet();
+		allMinterms.set(0, mintermAlphabet.getNumMinterms());
+		mintermsCoverAllCharacters = mintermAlphabet.getNumMinterms() > 0 && mintermAlphabet.getLabel(allMinterms).complement().isEmpty();
+	}
+
+	/**
+	 * @param numbering
+	 *            The numbering of the states of the NFA P is a set over.
+	 * @param P
+	 *            The set P of a state of the UP-NFA, as a bitset over the
+	 *            numbering.
+	 * @return True if there is a word that none of the states in P accept,
+	 *         without taking the epsilon transitions from the states in P
+	 *         before the first symbol.
+	 */
+	boolean rejectsSomeWord(UPNFAState.StateNumbering numbering, long[] P) {
+		if (numbering != lastNumbering) {
+			/* the states of one UP-NFA share their numbering */
+			numberedStates = new int[numbering.size()];
+			for (int i = 0; i < numberedStates.length; i++) {
+				numberedStates[i] = subsets.getNFA().getStateNumber(numbering.getVertex(i));
+			}
+			lastNumbering = numbering;
+		}
+		BitSet states = new BitSet(subsets.getNFA().getNumStates());
+		for (int w = 0; w < P.length; w++) {
+			for (long word = P[w]; word != 0; word &= word - 1) {
+				states.set(numberedStates[(w << 6) + Long.numberOfTrailingZeros(word)]);
+			}
+		}
+		Boolean known = rejectsSomeWord.get(states);
+		if (known == null) {
+			known = search(states);
+			rejectsSomeWord.put(states, known);
+		}
+		return known;
+	}
+
+	private boolean search(BitSet P) {
+		/* the empty word, and the symbols outside the minterms of the wildcard, are only tried from P itself */
+		BitSet[] successors = successors(P);
+		if (successors == null) {
+			return true;
+		}
+		BitSet coveredMinterms = new BitSet();
+		for (int minterm = 0; minterm < successors.length; minterm++) {
+			if (successors[minterm] != null) {
+				coveredMinterms.set(minterm);
+			}
+		}
+		if (!mintermsCoverAllCharacters || coveredMinterms.cardinality() < subsets.getMintermAlphabet().getNumMinterms()) {
+			return true;
+		}
+
+		/* the minimal subsets searched so far, every subset reachable from P contains one of them */
+		Antichain antichain = new Antichain();
+		antichain.add(P);
+		LinkedList<BitSet> searched = new LinkedList<BitSet>();
+		LinkedList<BitSet> toVisit = new LinkedList<BitSet>();
+		toVisit.add(P);
+		while (!toVisit.isEmpty()) {
+			BitSet current = toVisit.removeLast();
+			searched.add(current);
+			if (current != P) {
+				successors = successors(current);
+				if (successors == null) {
+					return true;
+				}
+			}
+			for (int minterm = 0; minterm < successors.length; minterm++) {
+				BitSet next = successors[minterm];
+				if (next == null) {
+					if (subsets.getAlphabetMinterms().get(minterm)) {
+						return true;
+					}
+					continue;
+				}
+				if (acceptingEveryWord.contains(next) || antichain.containsSubsetOf(next)) {
+					continue;
+				}
+				antichain.add(next);
+				if (++numSubsets > maxSubsets) {
+					/* P is not decided, so it may still lead to acceptance */
+					exceededBudget = true;
+					return true;
+				}
+				toVisit.add(next);
+			}
+		}
+		/* every subset reachable from P accepts every word, as P does */
+		acceptingEveryWord.addAll(searched);
+		return false;
+	}
+
+	/**
+	 * @return True if the oracle gave up after searching more subsets than
+	 *         the budget, after which its answers are not decided.
+	 */
+	boolean exceededBudget() {
+		return exceededBudget;
+	}
+
+	/*
+	 * Returns the subsets of states reachable from a subset with every
+	 * minterm, null for the minterms without transitions, or null if the
+	 * subset does not accept the empty word.
+	 */
+	private BitSet[] successors(BitSet states) {
+		if (!subsets.isAccepting(states)) {
+			return null;
+		}
+		return subsets.successors(states);
+	}
+
+}
@@ -0,0 +1,241 @@
+package analysis;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import nfa.CompactNFA;
+
+/**
+ * The epsilon closures of the states of a compact NFA, each computed once and
+ * shared by all the states whose closures contain it.
+ *
+ * The prioritised closure of a state lists the states in which the walks over
+ * epsilon transitions from it end, in the order of priority of the walks and
+ * once for every walk, where a walk ends in a state with symbol transitions
+ * or in an accepting state without transitions, and does not take the same
+ * transition twice. The closure of a state is the set of states reachable
+ * from it with epsilon transitions.
+ *
+ * Both are memoised through the strongly connected components of the epsilon
+ * transitions. A state that cannot reach a cycle of epsilon transitions has
+ * the prioritised closures of the targets of its epsilon transitions, one
+ * after the other, as prioritised closure, and the states of one component
+ * have the same closure.
+ */
+class EpsilonClosures {
+
+	private static final int[] EMPTY_CLOSURE = new int[0];
+
+	/* The largest array most virtual machines can allocate */
+	private static final int MAX_CLOSURE_SIZE = Integer.MAX_VALUE - 8;
+
+	private final CompactNFA m;
+
+	/* The component of every state, the epsilon transitions leading to the same or a lower numbered component */
+	private final int[] component;
+
+	private final int numComponents;
+
+	/* The states in the order of their components */
+	private final int[] statesByComponent;
+
+	/* Whether the states of a component can reach a cycle of epsilon transitions */
+	private final boolean[] reachesCycle;
+
+	private final int[][] prioritisedClosures;
+
+	private BitSet[] componentClosures;
+
+	EpsilonClosures(CompactNFA m) {
+		this.m = m;
+		int numStates = m.getNumStates();
+		component = new int[numStates];
+		numComponents = NFAAnalysisTools.stronglyConnectedComponents(m, true, component);
+
+		int[] componentStart = new int[numComponents + 1];
+		for (int s = 0; s < numStates; s++) {
+			componentStart[component[s] + 1]++;
+		}
+		for (int c = 0; c < numComponents; c++) {
+			componentStart[c + 1] += componentStart[c];
+		}
+		statesByComponent = new int[numStates];
+		for (int s = 0; s < numStates; s++) {
+			statesByComponent[componentStart[component[s]]++] = s;
+		}
+
+		BitSet[] componentStates = NFAAnalysisTools.componentStatesWithEdges(m, true, component, numComponents);
+		reachesCycle = new boolean[numComponents];
+		for (int s : statesByComponent) {
+			int c = component[s];
+			if (componentStates[c] != null) {
+				reachesCycle[c] = true;
+			}
+			for (int e = m.getEpsilonStart(s); e < m.getOutgoingEnd(s); e++) {
+				if (reachesCycle[component[m.getEdgeTarget(e)]]) {
+					reachesCycle[c] = true;
+				}
+			}
+		}
+		prioritisedClosures = new int[numStates][];
+	}
+
+	/**
+	 * @param s
+	 *            The number of the state.
+	 * @return The states in which the walks over epsilon transitions from the
+	 *         state end, in order of priority, which should not be modified.
+	 */
+	int[] getPrioritisedClosure(int s) {
+		if (prioritisedClosures[s] == null) {
+			if (isPassedThrough(s) && reachesCycle[component[s]]) {
+				prioritisedClosures[s] = walkClosure(s);
+			} else {
+				acyclicClosure(s);
+			}
+		}
+		return prioritisedClosures[s];
+	}
+
+	/**
+	 * @param s
+	 *            The number of the state.
+	 * @return The states reachable from the state with epsilon transitions,
+	 *         including the state itself, which should not be modified.
+	 */
+	BitSet getClosure(int s) {
+		if (componentClosures == null) {
+			componentClosures = new BitSet[numComponents];
+			for (int t : statesByComponent) {
+				int c = component[t];
+				if (componentClosures[c] == null) {
+					componentClosures[c] = new BitSet(m.getNumStates());
+				}
+				componentClosures[c].set(t);
+				for (int e = m.getEpsilonStart(t); e < m.getOutgoingEnd(t); e++) {
+					int targetComponent = component[m.getEdgeTarget(e)];
+					if (targetComponent != c) {
+						componentClosures[c].or(componentClosures[targetComponent]);
+					}
+				}
+			}
+		}
+		return componentClosures[component[s]];
+	}
+
+	/* The walks continue from states with only epsilon transitions */
+	private boolean isPassedThrough(int s) {
+		return m.getOutDegree(s) > 0 && !m.hasSymbolEdges(s);
+	}
+
+	/*
+	 * Computes the prioritised closures of a state that cannot reach a cycle
+	 * of epsilon transitions and of the states it reaches, none of which can.
+	 */
+	private void acyclicClosure(int s) {
+		int[] stack = new int[16];
+		int stackSize = 0;
+		stack[stackSize++] = s;
+		while (stackSize > 0) {
+			int v = stack[stackSize - 1];
+			if (prioritisedClosures[v] != null) {
+				stackSize--;
+				continue;
+			}
+			if (!isPassedThrough(v)) {
+				if (m.getOutDegree(v) > 0 || m.isAcceptingState(v)) {
+					prioritisedClosures[v] = new int[] { v };
+				} else {
+					prioritisedClosures[v] = EMPTY_CLOSURE;
+				}
+				stackSize--;
+				continue;
+			}
+			long length = 0;
+			boolean targetsDone = true;
+			for (int e = m.getEpsilonStart(v); e < m.getOutgoingEnd(v); e++) {
+				int t = m.getEdgeTarget(e);
+				if (prioritisedClosures[t] == null) {
+					if (stackSize == stack.length) {
+						stack = Arrays.copyOf(stack, 2 * stackSize);
+					}
+					stack[stackSize++] = t;
+					targetsDone = false;
+				} else {
+					length += prioritisedClosures[t].length;
+				}
+			}
+			if (targetsDone) {
+				int[] closure = new int[checkedClosureSize(length)];
+				int closureSize = 0;
+				for (int e = m.getEpsilonStart(v); e < m.getOutgoingEnd(v); e++) {
+					int[] targetClosure = prioritisedClosures[m.getEdgeTarget(e)];
+					System.arraycopy(targetClosure, 0, closure, closureSize, targetClosure.length);
+					closureSize += targetClosure.length;
+				}
+				prioritisedClosures[v] = closure;
+				stackSize--;
+			}
+		}
+	}
+
+	/*
+	 * Follows the walks from a state that can reach a cycle of epsilon
+	 * transitions, never taking a transition twice in one walk. A walk that
+	 * reaches a state that cannot reach a cycle can never come back to a
+	 * transition it took before, so the prioritised closure of that state is
+	 * used instead.
+	 */
+	private int[] walkClosure(int s) {
+		int[] closure = new int[16];
+		int closureSize = 0;
+		boolean[] takenEdges = new boolean[m.getNumEdges()];
+		/* the states of the walk, the transitions taken to them and the next transitions to take from them */
+		int[] walkStates = new int[m.getNumEdges() + 1];
+		int[] walkEdges = new int[m.getNumEdges() + 1];
+		int[] nextEdges = new int[m.getNumEdges() + 1];
+		int walkLength = 0;
+		walkStates[0] = s;
+		walkEdges[0] = -1;
+		nextEdges[0] = m.getEpsilonStart(s);
+		while (walkLength >= 0) {
+			int v = walkStates[walkLength];
+			if (nextEdges[walkLength] == m.getOutgoingEnd(v)) {
+				if (walkEdges[walkLength] != -1) {
+					takenEdges[walkEdges[walkLength]] = false;
+				}
+				walkLength--;
+				continue;
+			}
+			int e = nextEdges[walkLength]++;
+			if (takenEdges[e]) {
+				continue;
+			}
+			int t = m.getEdgeTarget(e);
+			if (isPassedThrough(t) && reachesCycle[component[t]]) {
+				takenEdges[e] = true;
+				walkLength++;
+				walkStates[walkLength] = t;
+				walkEdges[walkLength] = e;
+				nextEdges[walkLength] = m.getEpsilonStart(t);
+			} else {
+				int[] targetClosure = getPrioritisedClosure(t);
+				if (closureSize + (long) targetClosure.length > closure.length) {
+					int newSize = checkedClosureSize(closureSize + (long) targetClosure.length);
+					closure = Arrays.copyOf(closure, (int) Math.max(Math.min(2L * closure.length, MAX_CLOSURE_SIZE), newSize));
+				}
+				System.arraycopy(targetClosure, 0, closure, closureSize, targetClosure.length);
+				closureSize += targetClosure.length;
+			}
+		}
+		return Arrays.copyOf(closure, closureSize);
+	}
+
+	/* The number of walks can grow exponentially with the number of states */
+	private static int checkedClosureSize(long size) {
+		if (size > MAX_CLOSURE_SIZE) {
+			throw new OutOfMemoryError("Epsilon closure of " + size + " states");
+		}
+		return (int) size;
+	}
+}
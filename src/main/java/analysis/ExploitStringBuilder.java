@@ -4,6 +4,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.Set;
 
 import analysis.NFAAnalyser.IdaSpecialTransitionLabel;
 import analysis.NFAAnalyserInterface.EdaAnalysisResultsESCC;
@@ -16,9 +17,13 @@ import nfa.NFAEdge;
 import nfa.NFAVertexND;
 import nfa.transitionlabel.*;
 import nfa.transitionlabel.TransitionLabel.TransitionType;
+import util.CompactRangeSet;
 
 public class ExploitStringBuilder implements ExploitStringBuilderInterface<EdaAnalysisResults, IdaAnalysisResults> {
 
+	/* The largest number of sets of states searched for a suffix */
+	private static final int MAX_SUFFIX_SUBSETS = 100000;
+
 	@Override
 	public ExploitString buildEdaExploitString(EdaAnalysisResults results) {
 		
@@ -110,115 +115,46 @@ public class ExploitStringBuilder implements ExploitStringBuilderInterface<EdaAn
 
 	public static String buildSuffixString(NFAGraph n, NFAVertexND start) {
 		/* determining the alphabet */
-		//System.out.println("ExploitStringBuilder:Start");
-		HashSet<TransitionLabel> regexAlphabet = (HashSet<TransitionLabel>) NFAAnalysisTools.getAlphabet(n);
-		//System.out.println("ExploitStringBuilder:1");
-		/* constructing n' */
-		NFAGraph nAccent = n;
-		
+		Set<TransitionLabel> regexAlphabet = NFAAnalysisTools.getAlphabet(n);
 
-		//System.out.println("IN ExploitStringBuilder:buildSuffixString()");
-		//System.out.println(n);
-		//System.out.println("End");
-		/* determinizing */
-		NFAGraph dfa = NFAAnalysisTools.determinize(nAccent, n.vertexSet(), regexAlphabet);	
-		/* swapping final and nonfinal states */
-		//System.out.println("ExploitStringBuilder:2");
-		
-		for (NFAVertexND currentState : dfa.vertexSet()) {
-			if (dfa.isAcceptingState(currentState)) {
-				dfa.removeAcceptingState(currentState);
-			} else {
-				dfa.addAcceptingState(currentState);
-			}
+		/* a word none of the states accept, found without determinizing all of n, if the search does not give up */
+		String suffix = new FailingSuffixSearch(n, regexAlphabet, MAX_SUFFIX_SUBSETS).shortestRejectedWord(n.vertexSet(), false);
+		if (suffix != null) {
+			return suffix;
 		}
-		//System.out.println("ExploitStringBuilder:3");
-		
-		if (dfa.getAcceptingStates().isEmpty()) {
-			
-			
-			Iterator<TransitionLabel> i0 = regexAlphabet.iterator();
-			TransitionLabel wholeAlphabet = i0.next();
-			while (i0.hasNext()) {
-				wholeAlphabet = wholeAlphabet.union(i0.next());
-			}
-			
-			// if the alphabet matches our default character, find another character 
-			if (!wholeAlphabet.matches("#")) {
-				return "#";  
-			} else {	
-				
-				/* If there is any character in the 16UNICODE alphabet that isn't in the regex alpahbet, take this character */
-				HashSet<TransitionLabel> unicode16Alphabet = new HashSet<TransitionLabel>();
-				for (int i = 0; i < TransitionLabel.MAX_16UNICODE; i++) {
-					char currentChar = (char) i;
-					String currentString = "" + currentChar;
-					if (currentChar == '[') {
-						currentString = "\\" + currentChar;
-					} else if (currentChar == '\u03b5') {
-						currentString = "[\u03b5]";
-					}
-					if (!wholeAlphabet.matches(currentString)) {						
-						return "" + ((char) i);
-					}
-				}
-
-				/* Otherwise, determinize from the state where EDA/IDA took place */
-				unicode16Alphabet.add(CharacterClassTransitionLabel.wildcardLabel());
-				// XXX I'm not sure if this is correct.
-				// We determinize starting at the state where EDA/IDA occurs.
-				// Then we take the complement of this DFA
-				// and try to find a nonempty suffix, 
-				// since for an empty suffix, the matcher might spit out part of the pump and use it to accept the string: (a.*)|(((ba)|.??)*a)
-				HashSet<NFAVertexND> startStates = NFAAnalysisTools.reachableWithEpsilon(nAccent, start); 
-
-				NFAGraph dfa2 = NFAAnalysisTools.determinize(nAccent, startStates, unicode16Alphabet);
-				/* swapping final and nonfinal states */;
-				for (NFAVertexND currentState : dfa2.vertexSet()) {
-					if (dfa2.isAcceptingState(currentState)) {
-						dfa2.removeAcceptingState(currentState);
-					} else {
-						dfa2.addAcceptingState(currentState);
-						//System.out.println("Check: " + currentState);
-					}
-				}
 
-				if (!dfa2.getAcceptingStates().isEmpty()) {
-					Iterator<NFAVertexND> i1 = dfa2.getAcceptingStates().iterator();
-					while (i1.hasNext()) {
-					NFAVertexND finalState = i1.next();
-						//System.out.println(finalState);	
-		
-						LinkedList<NFAEdge> pathToFinal = NFAAnalysisTools.shortestPathTo(dfa2, finalState);
-						//for (NFAEdge e : pathToFinal) {
-						//	System.out.print(e.getSourceVertex() + "-" + e + "->" + e.getTargetVertex());
-						//}
-						//System.out.println();
-
-						if (!pathToFinal.isEmpty()) {
-							return buildStringFromEdges(pathToFinal);
-						}
-					}
-		
+		/* the characters no transition of n reads */
+		CompactRangeSet outsideAlphabet = new CompactRangeSet(TransitionLabel.MIN_16UNICODE, TransitionLabel.MAX_16UNICODE);
+		for (TransitionLabel tl : regexAlphabet) {
+			outsideAlphabet = outsideAlphabet.union(((CharacterClassTransitionLabel) tl).getRanges());
+		}
+		outsideAlphabet = outsideAlphabet.complement();
+
+		// take our default character if the alphabet does not match it, otherwise find another character
+		if (outsideAlphabet.contains('#')) {
+			return "#";
+		} else if (!outsideAlphabet.isEmpty()) {
+			/* If there is any character in the 16UNICODE alphabet that isn't in the regex alpahbet, take this character */
+			return "" + ((char) outsideAlphabet.sampleRangeSet());
+		}
 
-					throw new RuntimeException("Cannot build suffix! (Only ε suffixes.)");
-				} else {
-					throw new RuntimeException("Cannot build suffix!");
-				}
-				
-				
+		/* Otherwise, search from the state where EDA/IDA took place */
+		// XXX I'm not sure if this is correct.
+		// We search starting at the state where EDA/IDA occurs
+		// for a nonempty suffix it does not accept,
+		// since for an empty suffix, the matcher might spit out part of the pump and use it to accept the string: (a.*)|(((ba)|.??)*a)
+		HashSet<NFAVertexND> startStates = NFAAnalysisTools.reachableWithEpsilon(n, start);
+		HashSet<TransitionLabel> unicode16Alphabet = new HashSet<TransitionLabel>();
+		unicode16Alphabet.add(CharacterClassTransitionLabel.wildcardLabel());
+		FailingSuffixSearch suffixSearch = new FailingSuffixSearch(n, unicode16Alphabet, MAX_SUFFIX_SUBSETS);
+		suffix = suffixSearch.shortestRejectedWord(startStates, true);
+		if (suffix == null) {
+			if (suffixSearch.exceededBudget()) {
+				throw new NoExploitStringException("Cannot build suffix within " + MAX_SUFFIX_SUBSETS + " sets of states!");
 			}
-			//return "#";
+			throw new RuntimeException("Cannot build suffix!");
 		}
-		
-		
-		Iterator<NFAVertexND> i0 = dfa.getAcceptingStates().iterator();
-		NFAVertexND finalState = i0.next();
-		
-		LinkedList<NFAEdge> pathToFinal = NFAAnalysisTools.shortestPathTo(dfa, finalState);
-		
-		//System.out.println("ExploitStringBuilder:End");
-		return buildStringFromEdges(pathToFinal);
+		return suffix;
 	}
 
 	/**
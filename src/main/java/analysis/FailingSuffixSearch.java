@@ -0,0 +1,134 @@
+package analysis;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.Set;
+
+import nfa.NFAGraph;
+import nfa.NFAVertexND;
+import nfa.transitionlabel.TransitionLabel;
+
+/**
+ * Searches for the shortest word that none of a set of states of an NFA
+ * accept, as a path to an accepting state in the complement of the DFA
+ * {@link SubsetConstruction#determinize} would construct from the set.
+ *
+ * The subsets of states are only constructed as the breadth first search
+ * reaches them, and the search stops at the first subset that rejects the
+ * word leading to it. A subset containing a subset reached before accepts
+ * every word that subset accepts, and was not reached with a shorter word, so
+ * it is not searched (an antichain of the subsets). The search gives up once
+ * it has found more subsets than its budget.
+ */
+class FailingSuffixSearch {
+
+	private final SubsetConstruction subsets;
+
+	private final int maxSubsets;
+
+	/* Whether the last search gave up */
+	private boolean exceededBudget;
+
+	/**
+	 * @param m
+	 *            The NFA to search.
+	 * @param alphabet
+	 *            The symbols without a transition in the DFA of which lead to
+	 *            the empty set of states.
+	 * @param maxSubsets
+	 *            The largest number of subsets of states to search.
+	 */
+	FailingSuffixSearch(NFAGraph m, Collection<TransitionLabel> alphabet, int maxSubsets) {
+		subsets = new SubsetConstruction(m, alphabet);
+		this.maxSubsets = maxSubsets;
+	}
+
+	/**
+	 * @return True if the last search gave up after searching more subsets
+	 *         than the budget.
+	 */
+	boolean exceededBudget() {
+		return exceededBudget;
+	}
+
+	/**
+	 * @param startStates
+	 *            The states to start from, without taking their epsilon
+	 *            transitions before the first symbol.
+	 * @param nonEmpty
+	 *            Whether the empty word should not be returned.
+	 * @return The shortest word none of the start states accept, or null if
+	 *         they accept every word or the search exceeded its budget.
+	 */
+	String shortestRejectedWord(Set<NFAVertexND> startStates, boolean nonEmpty) {
+		exceededBudget = false;
+		BitSet start = subsets.toStates(startStates);
+		SearchState initial = new SearchState(start, null, -1);
+		if (!nonEmpty && !subsets.isAccepting(start)) {
+			return initial.getWord();
+		}
+
+		Antichain antichain = new Antichain();
+		antichain.add(start);
+		int numSubsets = 1;
+		LinkedList<SearchState> toVisit = new LinkedList<SearchState>();
+		toVisit.add(initial);
+		while (!toVisit.isEmpty()) {
+			SearchState current = toVisit.removeFirst();
+			BitSet[] successors = subsets.successors(current.states);
+			for (int minterm = 0; minterm < successors.length; minterm++) {
+				BitSet next = successors[minterm];
+				if (next == null) {
+					/* the symbols of the alphabet without transitions lead to the empty set */
+					if (subsets.getAlphabetMinterms().get(minterm)) {
+						return new SearchState(new BitSet(), current, minterm).getWord();
+					}
+					continue;
+				}
+				SearchState nextState = new SearchState(next, current, minterm);
+				if (!subsets.isAccepting(next)) {
+					return nextState.getWord();
+				}
+				if (antichain.containsSubsetOf(next)) {
+					continue;
+				}
+				antichain.add(next);
+				if (++numSubsets > maxSubsets) {
+					exceededBudget = true;
+					return null;
+				}
+				toVisit.add(nextState);
+			}
+		}
+		return null;
+	}
+
+	/* A subset of states with the search state and minterm it was reached from */
+	private class SearchState {
+
+		private final BitSet states;
+		private final SearchState parent;
+		private final int minterm;
+
+		private SearchState(BitSet states, SearchState parent, int minterm) {
+			this.states = states;
+			this.parent = parent;
+			this.minterm = minterm;
+		}
+
+		private String getWord() {
+			LinkedList<String> symbols = new LinkedList<String>();
+			for (SearchState s = this; s.parent != null; s = s.parent) {
+				symbols.addFirst(subsets.getMintermAlphabet().getMinterm(s.minterm).getSymbol());
+			}
+			StringBuilder word = new StringBuilder();
+			for (String symbol : symbols) {
+				word.append(symbol);
+			}
+			return word.toString();
+		}
+
+	}
+
+}
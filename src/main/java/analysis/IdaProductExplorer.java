@@ -0,0 +1,352 @@
+package analysis;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nfa.CompactNFA;
+import nfa.transitionlabel.EpsilonTransitionLabel;
+import nfa.transitionlabel.MintermAlphabet;
+import nfa.transitionlabel.TransitionLabel;
+import nfa.transitionlabel.TransitionLabel.TransitionType;
+
+import util.LongIntHashMap;
+
+/**
+ * Searches the product of the product of an NFA with itself with the NFA
+ * again ({@link NFAAnalysisTools#productConstructionAFAFA(CompactNFA)}) for
+ * the pairs of states p != q of the NFA that show IDA, without constructing
+ * the transitions of the product. The product with itself is small, and is
+ * constructed, but of the product with the NFA again only the packed keys of
+ * its states are stored, and the transitions of a state are generated again
+ * whenever they are needed, together with the edges from every state (p, q,
+ * q) back to the states (p, p, q).
+ *
+ * The states are numbered, and their transitions are followed, in the same
+ * order as in the constructed product with the back edges added, so the
+ * strongly connected components are numbered in the same order too, and the
+ * same pairs are found, in the same order.
+ *
+ * Every state of a component with such an edge contains three states of the
+ * NFA that can reach a cycle of the NFA, since the states of the NFA follow
+ * closed walks around a cycle of the product, apart from the back edges,
+ * which go from q, on a cycle, to p. Neither product creates states with
+ * another state of the NFA, and as the states that cannot reach a cycle are
+ * only reached from each other, the remaining states are still numbered and
+ * searched in the same order.
+ */
+class IdaProductExplorer {
+
+	private final ProductNFA afa;
+
+	private final CompactNFA m;
+
+	private final int afaBits;
+
+	private final MintermAlphabet mintermAlphabet;
+
+	/* The states of the NFA that can reach a cycle, the only ones the product states contain */
+	private final BitSet mStates;
+
+	/* The states of the product, numbered breadth first as the constructed product numbers them */
+	private final LongIntHashMap stateNumbers;
+	private long[] stateKeys;
+	private int numStates;
+
+	/* The targets of the transitions of one state, sorted as in the constructed product */
+	private int[] symbolTargets = new int[16];
+	private int numSymbolTargets;
+	private int[] backEdgeTargets = new int[16];
+	private int numBackEdgeTargets;
+	private int[] epsilonTargets = new int[16];
+	private int[] epsilonPriorities = new int[16];
+	private int numEpsilonTargets;
+
+	private final TransitionTargets transitionTargets = new TransitionTargets();
+
+	/* The pairs found, p and q of every pair one after the other */
+	private int[] pairs = new int[16];
+	private int numPairs;
+
+	private IdaProductExplorer(CompactNFA m) {
+		this.m = m;
+		mStates = NFAAnalysisTools.statesReachingCycles(m);
+		afa = NFAAnalysisTools.productConstructionAFA(m, mStates);
+		afaBits = ProductNFA.bitsFor(afa, m);
+		mintermAlphabet = ProductNFA.sharedMintermAlphabet(afa, m);
+		stateNumbers = new LongIntHashMap(afa.getNumStates() + m.getNumStates());
+		stateKeys = new long[16];
+	}
+
+	/**
+	 * Finds the pairs of states p != q of an NFA for which the product of its
+	 * product with itself with the NFA again, with an edge from every state
+	 * (p, q, q) back to the states (p, p, q), has a strongly connected
+	 * component with a symbol transition containing such an edge.
+	 *
+	 * @param m
+	 *            The NFA.
+	 * @return The numbers of the states p and q of every such edge, one after
+	 *         the other, or null if the product has more components than the
+	 *         maximum complexity.
+	 */
+	static int[] findIdaPairs(CompactNFA m, int maxComplexity, AtomicInteger maxSeenComplexity) {
+		IdaProductExplorer explorer = new IdaProductExplorer(m);
+		explorer.numberStates();
+		int numComponents = explorer.searchComponents();
+		if (NFAAnalysisTools.isTooComplex(numComponents, maxComplexity, maxSeenComplexity)) {
+			return null;
+		}
+		return Arrays.copyOf(explorer.pairs, explorer.numPairs);
+	}
+
+	/* Numbers the states reachable from the initial state in the order the constructed product numbers them */
+	private void numberStates() {
+		ProductNFA.TransitionSink numbering = new ProductNFA.TransitionSink() {
+			@Override
+			public void addTransition(long targetKey, TransitionLabel label, int numParallel) {
+				if (ProductNFA.isAllowedState(afaBits, null, mStates, targetKey)) {
+					findState(targetKey);
+				}
+			}
+		};
+		findState(ProductNFA.packState(afaBits, afa.getInitialState(), 0, m.getInitialState()));
+		for (int s = 0; s < numStates; s++) {
+			ProductNFA.expandState(afa, m, afaBits, mintermAlphabet, stateKeys[s], numbering);
+		}
+	}
+
+	private int findState(long key) {
+		int state = stateNumbers.get(key);
+		if (state == -1) {
+			state = numStates++;
+			if (state == stateKeys.length) {
+				stateKeys = Arrays.copyOf(stateKeys, 2 * state);
+			}
+			stateKeys[state] = key;
+			stateNumbers.put(key, state);
+		}
+		return state;
+	}
+
+	/*
+	 * Runs Tarjan's algorithm over all the states, as
+	 * NFAAnalysisTools.stronglyConnectedComponents does, recording the pairs
+	 * of every component as it is completed, and returns the number of
+	 * components.
+	 */
+	private int searchComponents() {
+		int[] index = new int[numStates];
+		int[] lowLink = new int[numStates];
+		Arrays.fill(index, -1);
+		boolean[] onStack = new boolean[numStates];
+		int[] stack = new int[numStates];
+		int stackSize = 0;
+		/* the component of every state, -1 until its component is completed */
+		int[] component = new int[numStates];
+		Arrays.fill(component, -1);
+		/* the states with a transition to themselves, the only states of components of one state with edges */
+		BitSet selfLoops = new BitSet(numStates);
+
+		/*
+		 * The explicit call stack. The targets of the transitions of the
+		 * state in frame i are stored in successors from successorStart[i]
+		 * up to (but not including) successorStart[i + 1], of which the ones
+		 * from nextSuccessor[i] on are still to be followed.
+		 */
+		int[] callStack = new int[16];
+		int[] nextSuccessor = new int[16];
+		int[] successorStart = new int[17];
+		int[] successors = new int[64];
+		int callStackSize = 0;
+
+		int counter = 0;
+		int numComponents = 0;
+		for (int root = 0; root < numStates; root++) {
+			if (index[root] != -1) {
+				continue;
+			}
+			int w = root;
+			while (true) {
+				if (w != -1) {
+					/* visiting w, pushing it onto the call stack with its transitions */
+					index[w] = lowLink[w] = counter++;
+					stack[stackSize++] = w;
+					onStack[w] = true;
+					int frame = callStackSize++;
+					if (callStackSize == callStack.length) {
+						callStack = Arrays.copyOf(callStack, 2 * callStackSize);
+						nextSuccessor = Arrays.copyOf(nextSuccessor, 2 * callStackSize);
+						successorStart = Arrays.copyOf(successorStart, 2 * callStackSize + 1);
+					}
+					callStack[frame] = w;
+					expand(w);
+					int start = successorStart[frame];
+					int end = start + numSymbolTargets + numBackEdgeTargets + numEpsilonTargets;
+					if (end > successors.length) {
+						successors = Arrays.copyOf(successors, Math.max(2 * successors.length, end));
+					}
+					System.arraycopy(symbolTargets, 0, successors, start, numSymbolTargets);
+					System.arraycopy(backEdgeTargets, 0, successors, start + numSymbolTargets, numBackEdgeTargets);
+					System.arraycopy(epsilonTargets, 0, successors, start + numSymbolTargets + numBackEdgeTargets, numEpsilonTargets);
+					nextSuccessor[frame] = start;
+					successorStart[frame + 1] = end;
+				}
+				if (callStackSize == 0) {
+					break;
+				}
+				int frame = callStackSize - 1;
+				int v = callStack[frame];
+				w = -1;
+				if (nextSuccessor[frame] < successorStart[frame + 1]) {
+					int t = successors[nextSuccessor[frame]++];
+					if (t == v) {
+						selfLoops.set(v);
+					}
+					if (index[t] == -1) {
+						w = t;
+					} else if (onStack[t] && index[t] < lowLink[v]) {
+						lowLink[v] = index[t];
+					}
+				} else {
+					callStackSize--;
+					if (lowLink[v] == index[v]) {
+						int componentStart = stackSize;
+						do {
+							componentStart--;
+							onStack[stack[componentStart]] = false;
+							component[stack[componentStart]] = numComponents;
+						} while (stack[componentStart] != v);
+						int[] componentStates = Arrays.copyOfRange(stack, componentStart, stackSize);
+						stackSize = componentStart;
+						/* the transitions of the states are only generated again for components with edges */
+						if (componentStates.length > 1 || selfLoops.get(v)) {
+							recordPairs(componentStates, component, numComponents);
+						}
+						numComponents++;
+					}
+					if (callStackSize > 0) {
+						int u = callStack[callStackSize - 1];
+						if (lowLink[v] < lowLink[u]) {
+							lowLink[u] = lowLink[v];
+						}
+					}
+				}
+			}
+		}
+		return numComponents;
+	}
+
+	/*
+	 * Records the pairs (p, q) of the back edges within a component that
+	 * contains a symbol transition, for its states in ascending order.
+	 */
+	private void recordPairs(int[] componentStates, int[] component, int componentNumber) {
+		boolean containsSymbolTransition = false;
+		for (int s : componentStates) {
+			expand(s);
+			for (int i = 0; i < numSymbolTargets; i++) {
+				if (component[symbolTargets[i]] == componentNumber) {
+					containsSymbolTransition = true;
+					break;
+				}
+			}
+			if (containsSymbolTransition) {
+				break;
+			}
+		}
+		if (!containsSymbolTransition) {
+			return;
+		}
+		Arrays.sort(componentStates);
+		for (int s : componentStates) {
+			expand(s);
+			for (int i = 0; i < numBackEdgeTargets; i++) {
+				if (component[backEdgeTargets[i]] == componentNumber) {
+					if (numPairs + 2 > pairs.length) {
+						pairs = Arrays.copyOf(pairs, 2 * pairs.length);
+					}
+					long key = stateKeys[s];
+					pairs[numPairs++] = afa.getM1State(ProductNFA.unpackM1State(afaBits, key));
+					pairs[numPairs++] = ProductNFA.unpackM2State(afaBits, key);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Finds the targets of the transitions of a state, as the constructed
+	 * product with the back edges orders them: the symbol transitions, the
+	 * back edges by the number of their target, and the epsilon transitions
+	 * stably sorted by priority.
+	 */
+	private void expand(int s) {
+		numSymbolTargets = 0;
+		numBackEdgeTargets = 0;
+		numEpsilonTargets = 0;
+		long key = stateKeys[s];
+		ProductNFA.expandState(afa, m, afaBits, mintermAlphabet, key, transitionTargets);
+
+		/* from (p, q, q), p != q, back to every state (p, p, q) */
+		int afaState = ProductNFA.unpackM1State(afaBits, key);
+		int p = afa.getM1State(afaState);
+		int q = ProductNFA.unpackM2State(afaBits, key);
+		if (p == q || afa.getM2State(afaState) != q) {
+			return;
+		}
+		for (int f1 = 0; f1 < 3; f1++) {
+			int sourceAfaState = afa.getStateNumber(p, f1, p);
+			if (sourceAfaState == -1) {
+				continue;
+			}
+			for (int f2 = 0; f2 < 3; f2++) {
+				int t = stateNumbers.get(ProductNFA.packState(afaBits, sourceAfaState, f2, q));
+				if (t == -1) {
+					continue;
+				}
+				if (numBackEdgeTargets == backEdgeTargets.length) {
+					backEdgeTargets = Arrays.copyOf(backEdgeTargets, 2 * numBackEdgeTargets);
+				}
+				int i = numBackEdgeTargets++;
+				for (; i > 0 && backEdgeTargets[i - 1] > t; i--) {
+					backEdgeTargets[i] = backEdgeTargets[i - 1];
+				}
+				backEdgeTargets[i] = t;
+			}
+		}
+	}
+
+	/* Sorts the targets of the transitions of a state into the symbol and the epsilon transitions */
+	private class TransitionTargets implements ProductNFA.TransitionSink {
+
+		@Override
+		public void addTransition(long targetKey, TransitionLabel label, int numParallel) {
+			int t = stateNumbers.get(targetKey);
+			if (t == -1) {
+				/* the target was not created, as it cannot lie in a component with a back edge */
+				return;
+			}
+			if (label.getTransitionType() == TransitionType.EPSILON) {
+				if (numEpsilonTargets == epsilonTargets.length) {
+					epsilonTargets = Arrays.copyOf(epsilonTargets, 2 * numEpsilonTargets);
+					epsilonPriorities = Arrays.copyOf(epsilonPriorities, 2 * numEpsilonTargets);
+				}
+				int i = numEpsilonTargets++;
+				int priority = ((EpsilonTransitionLabel) label).getPriority();
+				/* insertion sort is stable */
+				for (; i > 0 && epsilonPriorities[i - 1] > priority; i--) {
+					epsilonTargets[i] = epsilonTargets[i - 1];
+					epsilonPriorities[i] = epsilonPriorities[i - 1];
+				}
+				epsilonTargets[i] = t;
+				epsilonPriorities[i] = priority;
+			} else {
+				if (numSymbolTargets == symbolTargets.length) {
+					symbolTargets = Arrays.copyOf(symbolTargets, 2 * numSymbolTargets);
+				}
+				symbolTargets[numSymbolTargets++] = t;
+			}
+		}
+	}
+
+}
@@ -1,18 +1,22 @@
 package analysis;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
+import org.jgrapht.Graph;
+
 import analysis.EdaAnalysisResults.EdaCases;
 import analysis.IdaAnalysisResults.IdaCases;
 import analysis.AnalysisSettings.NFAConstruction;
@@ -22,13 +26,15 @@ import regexcompiler.MyPattern;
 
 import nfa.transitionlabel.TransitionLabel.TransitionType;
 
+import nfa.CompactNFA;
 import nfa.NFAGraph;
+import nfa.NFAGraphViews;
 import nfa.NFAVertexND;
 import nfa.UPNFAState;
 import nfa.NFAEdge;
 import nfa.transitionlabel.TransitionLabel;
-import nfa.transitionlabel.CharacterClassTransitionLabel;
 import nfa.transitionlabel.EpsilonTransitionLabel;
+import nfa.transitionlabel.MintermAlphabet;
 
 public abstract class NFAAnalyser implements NFAAnalyserInterface {
 	
@@ -51,6 +57,22 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 
 	protected Map<NFAGraph, EdaAnalysisResults> edaResultsCache = new HashMap<NFAGraph, EdaAnalysisResults>();
 	protected Map<NFAGraph, IdaAnalysisResults> idaResultsCache = new HashMap<NFAGraph, IdaAnalysisResults>();
+
+	/* The intermediate graphs of the NFAs whose analysis is not complete yet */
+	private Map<NFAGraph, AnalysisContext> analysisContexts = new HashMap<NFAGraph, AnalysisContext>();
+
+	/**
+	 * Flattens or merges the epsilon transitions of an NFA, as the analyser
+	 * does before analysing it.
+	 * 
+	 * @param m
+	 *            The NFA to transform.
+	 * @param esccs
+	 *            The map to which the states merged into every state of the
+	 *            transformed NFA are added, if states are merged.
+	 * @return The transformed NFA, or null when it is too complex.
+	 */
+	protected abstract CompactNFA transformNFA(CompactNFA m, Map<NFAVertexND, Set<NFAVertexND>> esccs);
 	
 	protected abstract EdaAnalysisResults calculateEdaAnalysisResults(NFAGraph originalM);
 	
@@ -112,6 +134,19 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 	}
 	
 
+	/* The context shared by the analyses of an NFA, kept until its analysis is complete */
+	AnalysisContext getAnalysisContext(NFAGraph originalM) {
+		AnalysisContext context = analysisContexts.get(originalM);
+		if (context == null) {
+			if (analysisContexts.size() >= MAX_CACHE_SIZE) {
+				analysisContexts.clear();
+			}
+			context = new AnalysisContext(this, originalM);
+			analysisContexts.put(originalM, context);
+		}
+		return context;
+	}
+
 	protected EdaAnalysisResults searchEdaCache(NFAGraph originalM) {
 		EdaAnalysisResults resultsObject;
 		if (!edaResultsCache.containsKey(originalM)) {
@@ -131,6 +166,11 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 				}
 			}
 
+			/* an NFA with EDA is not analysed for IDA */
+			if (resultsObject.edaCase != EdaCases.NO_EDA) {
+				analysisContexts.remove(originalM);
+			}
+
 			if (edaResultsCache.size() >= MAX_CACHE_SIZE) {
 				edaResultsCache.clear();
 			}
@@ -170,6 +210,8 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 						throw new RuntimeException("Unknown priority strategy: " + noEdaPriorityRemovalStrategy);
 					}
 					
+					analysisContexts.remove(originalM);
+
 					if (idaResultsCache.size() >= MAX_CACHE_SIZE) {
 						idaResultsCache.clear();
 					}
@@ -204,25 +246,27 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 		}
 	}
 	
-	protected EdaAnalysisResults edaTestCaseParallel(NFAGraph originalM, LinkedList<NFAGraph> sccsInFlat) {
-		for (NFAGraph currentSccInFlat : sccsInFlat) {
+	protected EdaAnalysisResults edaTestCaseParallel(NFAGraph originalM, List<? extends Graph<NFAVertexND, NFAEdge>> sccsInFlat) {
+		for (Graph<NFAVertexND, NFAEdge> currentSccInFlat : sccsInFlat) {
 			for (NFAEdge e : currentSccInFlat.edgeSet()) {
 				if (e.getNumParallel() > 1) {
 
 					/* building the exploit string */
 					NFAVertexND sourceVertex = e.getSourceVertex();
 					// System.out.println("Case: Parallel edges in merged");
-					return new EdaAnalysisResultsParallel(originalM, currentSccInFlat, sourceVertex, e);
+					return new EdaAnalysisResultsParallel(originalM, NFAGraphViews.toNFAGraph(currentSccInFlat), sourceVertex, e);
 				}
 			}
 			for (NFAVertexND sourceVertex : currentSccInFlat.vertexSet()) {
 				HashSet<NFAVertexND> epsilonAdjacentVertices = new HashSet<NFAVertexND>();
-				HashSet<NFAEdge> outgoingEpsilonEdges = (HashSet<NFAEdge>) currentSccInFlat.outgoingEpsilonEdgesOf(sourceVertex);
-				for (NFAEdge e : outgoingEpsilonEdges) {
+				for (NFAEdge e : currentSccInFlat.outgoingEdgesOf(sourceVertex)) {
+					if (!e.getIsEpsilonTransition()) {
+						continue;
+					}
 					NFAVertexND targetVertex = e.getTargetVertex();
 					if (epsilonAdjacentVertices.contains(targetVertex)) {
 
-						return new EdaAnalysisResultsParallel(originalM, currentSccInFlat, sourceVertex, e);
+						return new EdaAnalysisResultsParallel(originalM, NFAGraphViews.toNFAGraph(currentSccInFlat), sourceVertex, e);
 					} else {
 						epsilonAdjacentVertices.add(targetVertex);
 					}
@@ -234,132 +278,54 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 	}
 	
 	protected EdaAnalysisResults edaTestCaseFilter(NFAGraph originalM, NFAGraph merged) {
-		NFAGraph pc = NFAAnalysisTools.productConstructionAFA(merged);
-		
-		List<NFAGraph> pcSCCs = NFAAnalysisTools.getStronglyConnectedComponents(pc, maxComplexity, maxSeenComplexity);
-		if (pcSCCs == null) {
-			return new TooComplexEdaAnalysisResults(originalM);
-		}
-
-		for (NFAGraph pcSCC : pcSCCs) {
-			
-			for (NFAVertexND pfp : pcSCC.vertexSet()) {
-				
-				String p1 = pfp.getStateNumberByDimension(1);
-				String p2 = pfp.getStateNumberByDimension(3);
-				if (p1.equals(p2)) {
-					/* found (P, P) */
+		return edaTestCaseFilter(originalM, CompactNFA.fromNFAGraph(merged));
+	}
 
-					for (NFAVertexND qfq : pcSCC.vertexSet()) {
-						
-						String q1 = qfq.getStateNumberByDimension(1);
-						String q2 = qfq.getStateNumberByDimension(3);
-						if (!q1.equals(q2)) {
-							/* found (P', P") where P' != P" */
-
-							/* building the exploit string */
-							// System.out.println("Case: Found (P', P\") P: " +
-							// pfp + " P\'P\": " + qfq);
-							//System.out.println("In NFAAnalyser:edaTestCaseFilter");
-							//System.out.println(originalM);
-							EdaAnalysisResultsFilter resultsObject = new EdaAnalysisResultsFilter(originalM, pcSCC, pfp, qfq);
-							//System.out.println("End");
-							return resultsObject;
-						}
-					}
-				}
-			}
-		}
-		return new EdaAnalysisResultsNoEda(originalM);
+	protected EdaAnalysisResults edaTestCaseFilter(NFAGraph originalM, CompactNFA merged) {
+		/* the product is only explored until a component with (P, P) and (P', P") is found */
+		return ProductExplorer.edaTestCaseFilter(originalM, merged, maxComplexity, maxSeenComplexity);
 	}
 	
 	protected IdaAnalysisResults idaTestCaseFilter(NFAGraph originalM, NFAGraph flat) {
-		//System.out.println(originalM);
-		//NFAGraph m1 = flat.copy();
-		//NFAGraph pc = NFAAnalysisTools.productConstructionAFAFA(m1);
-		NFAGraph pc = NFAAnalysisTools.productConstructionAFAFA(flat);
-		
-		//pc = NFAAnalysisTools.makeTrim(pc);
-		
-		
-		String[] filterStates = {"0", "1", "2"};
-
-		/* Adding the edges from (p, q, q) to (p, p, q) */
-		NFAGraph pcWithBackEdges = pc.copy();
-		for (NFAVertexND sourcePCV : pc.vertexSet()) {
+		return idaTestCaseFilter(originalM, CompactNFA.fromNFAGraph(flat));
+	}
 
-			String p1 = sourcePCV.getStateNumberByDimension(1);
-			String p2 = sourcePCV.getStateNumberByDimension(3);
-			String q = sourcePCV.getStateNumberByDimension(5);
-			
-			/* found (p, p, q), p != q */
-			if (p1.equals(p2) && !p1.equals(q)) {
-				/*
-				 * Since filter states don't matter we need to check to all
-				 * combinations
-				 */
-				for (String f1 : filterStates) {
-					for (String f2 : filterStates) {
-						NFAVertexND targetPCV = new NFAVertexND(p1, f1, q, f2, q);
-						/* found (p, p, q) and (p, q, q) */
-						if (pc.containsVertex(targetPCV)) {
-							/* Adding the edge back from (p, q, q) to (p, p, q) */
-							NFAEdge newSpecialEdge = new NFAEdge(targetPCV, sourcePCV, new IdaSpecialTransitionLabel(null));
-							pcWithBackEdges.addEdge(newSpecialEdge);
-						}
-					}
-				}
-			}
-			
-		}
-		
-		boolean containsIda = false;
-		LinkedList<NFAGraph> sccs = NFAAnalysisTools.getStronglyConnectedComponents(pcWithBackEdges, maxComplexity, maxSeenComplexity);
-		if (sccs == null) {
+	protected IdaAnalysisResults idaTestCaseFilter(NFAGraph originalM, CompactNFA flat) {
+		/* the pairs (p, q) of the back edges from (p, q, q) to (p, p, q) in components with symbol transitions */
+		int[] idaPairs = IdaProductExplorer.findIdaPairs(flat, maxComplexity, maxSeenComplexity);
+		if (idaPairs == null) {
 			return new IdaAnalysisResultsNoIda(originalM);
 		}
 
+		boolean containsIda = false;
+		/* only needed to find the paths between p and q */
+		NFAGraph flatGraph = null;
 		LinkedList<NFAVertexND> storedPs = new LinkedList<NFAVertexND>();
 		LinkedList<NFAVertexND> storedQs = new LinkedList<NFAVertexND>();
 		LinkedList<LinkedList<TransitionLabel>> storedSymbols = new LinkedList<LinkedList<TransitionLabel>>();
 		
-		for (NFAGraph scc : sccs) {
-			boolean containsSymbolTransition = false;
-			for (NFAEdge e : scc.edgeSet()) {
-				TransitionLabel tl = e.getTransitionLabel();
-				if (tl.getTransitionType() == TransitionType.SYMBOL) {
-					containsSymbolTransition = true;
-					break;
-				}
+		for (int i = 0; i < idaPairs.length; i += 2) {
+			NFAVertexND p = flat.getVertex(idaPairs[i]);
+			NFAVertexND q = flat.getVertex(idaPairs[i + 1]);
+			if (flatGraph == null) {
+				flatGraph = flat.toNFAGraph();
 			}
-			if (containsSymbolTransition) {
-				for (NFAEdge e : scc.edgeSet()) {
-					TransitionLabel tl = e.getTransitionLabel();				
-					if (tl.getTransitionType() == TransitionType.OTHER) {
-						if (tl instanceof IdaSpecialTransitionLabel) {
-							NFAVertexND eSource = e.getSourceVertex();
-							NFAVertexND p = eSource.getStateByDimension(1);
-							NFAVertexND q = eSource.getStateByDimension(5);	
-							LinkedList<NFAEdge> pqPath = NFAAnalysisTools.shortestPathBetween(flat, p, q);
-							if (pqPath == null) {
-								continue;
-							}
-							LinkedList<TransitionLabel> pqPathTransitionLabels = new LinkedList<TransitionLabel>();	
-							for (NFAEdge e2 : pqPath) {
-								TransitionLabel currentTransitionLabel = e2.getTransitionLabel();
-								if (currentTransitionLabel.getTransitionType() != TransitionType.EPSILON) {
-									pqPathTransitionLabels.add(currentTransitionLabel);
-								}
-							}
-							
-							storedPs.add(p);
-							storedQs.add(q);
-							storedSymbols.add(pqPathTransitionLabels);
-							containsIda = true;
-						}
-					}
+			LinkedList<NFAEdge> pqPath = NFAAnalysisTools.shortestPathBetween(flatGraph, p, q);
+			if (pqPath == null) {
+				continue;
+			}
+			LinkedList<TransitionLabel> pqPathTransitionLabels = new LinkedList<TransitionLabel>();	
+			for (NFAEdge e2 : pqPath) {
+				TransitionLabel currentTransitionLabel = e2.getTransitionLabel();
+				if (currentTransitionLabel.getTransitionType() != TransitionType.EPSILON) {
+					pqPathTransitionLabels.add(currentTransitionLabel);
 				}
 			}
+			
+			storedPs.add(p);
+			storedQs.add(q);
+			storedSymbols.add(pqPathTransitionLabels);
+			containsIda = true;
 		}
 		if (containsIda) {
 			
@@ -440,55 +406,194 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 		}
 	}
 	
-	private int calculateD(NFAGraph originalM, NFAVertexND initialState, LinkedList<NFAEdge> maxPath) {
-		return calculateDDFS(originalM, initialState, 0, -1, new LinkedList<NFAEdge>(), maxPath, new HashSet<NFAEdge>());
-	}
-	
-	private int calculateDDFS(NFAGraph m, NFAVertexND currentVertex, int currentD, int maxD, LinkedList<NFAEdge> currentPath, LinkedList<NFAEdge> maxPath, HashSet<NFAEdge> traversed) {
+	/*
+	 * The degree is the largest number of special edges on a path from the
+	 * initial state. Without EDA a special edge from p to q always connects
+	 * two different strongly connected components, since p and q in one
+	 * component would give two different walks from p back to itself reading
+	 * the same word, so the longest path is found in one pass over the
+	 * condensation of the degree graph in topological order. Special edges
+	 * within a component, which only exist with EDA, are not counted.
+	 */
+	private int calculateD(NFAGraph m, NFAVertexND initialState, LinkedList<NFAEdge> maxPath) {
+		int numStates = m.vertexSet().size();
+		HashMap<NFAVertexND, Integer> stateNumbers = new HashMap<NFAVertexND, Integer>();
+		NFAVertexND[] vertices = new NFAVertexND[numStates];
+		stateNumbers.put(initialState, 0);
+		vertices[0] = initialState;
+		for (NFAVertexND v : m.vertexSet()) {
+			if (!stateNumbers.containsKey(v)) {
+				vertices[stateNumbers.size()] = v;
+				stateNumbers.put(v, stateNumbers.size());
+			}
+		}
+		NFAEdge[][] outgoing = new NFAEdge[numStates][];
+		int[] successorStart = new int[numStates];
+		int[] successorEnd = new int[numStates];
+		int[] successors = new int[m.edgeSet().size()];
+		int numSuccessors = 0;
+		for (int s = 0; s < numStates; s++) {
+			Set<NFAEdge> edges = m.outgoingEdgesOf(vertices[s]);
+			outgoing[s] = edges.toArray(new NFAEdge[edges.size()]);
+			successorStart[s] = numSuccessors;
+			for (NFAEdge e : outgoing[s]) {
+				successors[numSuccessors++] = stateNumbers.get(e.getTargetVertex());
+			}
+			successorEnd[s] = numSuccessors;
+		}
+
 		/*
-		 * For an optimisation the set "traversed" can be removed completely,
-		 * since originalM will always be a DAG. At the moment it is included for
-		 * testing purposes.
+		 * With the initial state numbered first, the components reachable
+		 * from it are numbered before the others, in reverse topological
+		 * order, ending with the component of the initial state.
 		 */
-		for (NFAEdge currentE : m.outgoingEdgesOf(currentVertex)) {
-
-			TransitionLabel tl = currentE.getTransitionLabel();
-			if (!traversed.contains(currentE)) {
-				traversed.add(currentE);
-				currentPath.add(currentE); /* all deeper paths will contain currentVertex */
-				if (tl instanceof IdaSpecialTransitionLabel) {
-					maxD = calculateDDFS(m, currentE.getTargetVertex(), currentD + 1, maxD, currentPath, maxPath, traversed);
-				} else {
-					maxD = calculateDDFS(m, currentE.getTargetVertex(), currentD, maxD, currentPath, maxPath, traversed);
+		int[] component = new int[numStates];
+		NFAAnalysisTools.stronglyConnectedComponents(numStates, successorStart, successorEnd, successors, component);
+		int numComponents = component[0] + 1;
+		/* the states of component c are componentStates[componentStart[c]] up to componentStates[componentStart[c + 1]] */
+		int[] componentStart = new int[numComponents + 1];
+		for (int s = 0; s < numStates; s++) {
+			if (component[s] < numComponents) {
+				componentStart[component[s] + 1]++;
+			}
+		}
+		for (int c = 0; c < numComponents; c++) {
+			componentStart[c + 1] += componentStart[c];
+		}
+		int[] componentStates = new int[componentStart[numComponents]];
+		int[] nextComponentState = Arrays.copyOf(componentStart, numComponents);
+		for (int s = 0; s < numStates; s++) {
+			if (component[s] < numComponents) {
+				componentStates[nextComponentState[component[s]]++] = s;
+			}
+		}
+
+		/*
+		 * The largest number of special edges on a path to every component,
+		 * with the edge entering the component on such a path. The initial
+		 * state is in the component completed last.
+		 */
+		int[] degree = new int[numComponents];
+		NFAEdge[] entryEdge = new NFAEdge[numComponents];
+		int d = 0;
+		int lastComponent = numComponents - 1;
+		for (int c = numComponents - 1; c >= 0; c--) {
+			/* the first component reached with a larger degree is entered by a special edge */
+			if (degree[c] > d) {
+				d = degree[c];
+				lastComponent = c;
+			}
+			for (int i = componentStart[c]; i < componentStart[c + 1]; i++) {
+				for (NFAEdge e : outgoing[componentStates[i]]) {
+					int targetComponent = component[stateNumbers.get(e.getTargetVertex())];
+					if (targetComponent == c) {
+						continue;
+					}
+					int targetDegree = degree[c];
+					if (e.getTransitionLabel() instanceof IdaSpecialTransitionLabel) {
+						targetDegree++;
+					}
+					if (targetDegree > degree[targetComponent] || entryEdge[targetComponent] == null) {
+						degree[targetComponent] = targetDegree;
+						entryEdge[targetComponent] = e;
+					}
 				}
-				currentPath.remove(currentE); /* since the list is passed as reference we need to remove this from the path */
-				traversed.remove(currentE);
-			} else {
-				/* We can make this assumption if we work with the component graph, but as we have seen, the component graph is not sufficient when calculating th exploit string explicitly. */
-				//throw new RuntimeException("Graph is not supposed to have cycles...");
 			}
+		}
 
+		/* following the entry edges back, joining them with paths within the components */
+		LinkedList<NFAEdge> path = new LinkedList<NFAEdge>();
+		int c = lastComponent;
+		while (entryEdge[c] != null) {
+			NFAEdge e = entryEdge[c];
+			path.addFirst(e);
+			c = component[stateNumbers.get(e.getSourceVertex())];
+			NFAVertexND entryVertex = entryEdge[c] != null ? entryEdge[c].getTargetVertex() : initialState;
+			path.addAll(0, pathWithinComponent(m, entryVertex, e.getSourceVertex(), c, stateNumbers, component));
 		}
-		int newMax;
-		if (currentD > maxD) {
-			maxPath.clear();
-			maxPath.addAll(currentPath);
-			newMax =  currentD;
-		} else {
-			newMax =  maxD;
+		if (!path.isEmpty()) {
+			/* the exploit string is built from the states after the last special edge too */
+			path.addAll(pathToDeadEnd(m, path.getLast().getTargetVertex()));
 		}
-		
-		return newMax;
+		maxPath.clear();
+		maxPath.addAll(path);
+		return d;
+	}
+
+	/* The shortest path from start to finish over the edges, other than special edges, within one component */
+	private LinkedList<NFAEdge> pathWithinComponent(NFAGraph m, NFAVertexND start, NFAVertexND finish, int c, HashMap<NFAVertexND, Integer> stateNumbers, int[] component) {
+		HashMap<NFAVertexND, NFAEdge> edgeTo = new HashMap<NFAVertexND, NFAEdge>();
+		LinkedList<NFAVertexND> queue = new LinkedList<NFAVertexND>();
+		HashSet<NFAVertexND> visited = new HashSet<NFAVertexND>();
+		queue.add(start);
+		visited.add(start);
+		while (!queue.isEmpty() && !visited.contains(finish)) {
+			NFAVertexND v = queue.removeFirst();
+			for (NFAEdge e : m.outgoingEdgesOf(v)) {
+				NFAVertexND target = e.getTargetVertex();
+				if (e.getTransitionLabel() instanceof IdaSpecialTransitionLabel || visited.contains(target) || component[stateNumbers.get(target)] != c) {
+					continue;
+				}
+				visited.add(target);
+				edgeTo.put(target, e);
+				queue.add(target);
+			}
+		}
+		LinkedList<NFAEdge> path = new LinkedList<NFAEdge>();
+		for (NFAVertexND v = finish; !v.equals(start); v = path.getFirst().getSourceVertex()) {
+			path.addFirst(edgeTo.get(v));
+		}
+		return path;
+	}
+
+	/*
+	 * The shortest path, other than over special edges, from a state to a
+	 * state without outgoing edges, or one edge from the state if there is
+	 * no such state.
+	 */
+	private LinkedList<NFAEdge> pathToDeadEnd(NFAGraph m, NFAVertexND start) {
+		HashMap<NFAVertexND, NFAEdge> edgeTo = new HashMap<NFAVertexND, NFAEdge>();
+		LinkedList<NFAVertexND> queue = new LinkedList<NFAVertexND>();
+		queue.add(start);
+		edgeTo.put(start, null);
+		NFAEdge firstEdge = null;
+		while (!queue.isEmpty()) {
+			NFAVertexND v = queue.removeFirst();
+			boolean isDeadEnd = true;
+			for (NFAEdge e : m.outgoingEdgesOf(v)) {
+				if (e.getTransitionLabel() instanceof IdaSpecialTransitionLabel) {
+					continue;
+				}
+				isDeadEnd = false;
+				if (firstEdge == null) {
+					firstEdge = e;
+				}
+				NFAVertexND target = e.getTargetVertex();
+				if (!edgeTo.containsKey(target)) {
+					edgeTo.put(target, e);
+					queue.add(target);
+				}
+			}
+			if (isDeadEnd) {
+				LinkedList<NFAEdge> path = new LinkedList<NFAEdge>();
+				for (NFAEdge e = edgeTo.get(v); e != null; e = edgeTo.get(e.getSourceVertex())) {
+					path.addFirst(e);
+				}
+				return path;
+			}
+		}
+		LinkedList<NFAEdge> path = new LinkedList<NFAEdge>();
+		if (firstEdge != null) {
+			path.add(firstEdge);
+		}
+		return path;
 	}
 		
-	/* Assume NFA has no epsilon loops, only one start and one accept and every state has either epsilon transitions, or one symbol transition from it */
-	protected EdaAnalysisResults edaUnprioritisedAnalysis(NFAGraph m, int maxComplexity) {
-		NFAGraph unprioritisedNFAGraph = createUnprioritisedNFAGraph(m);
-		//System.out.println("UnprioritisedNFAGraph:");
-		//System.out.println(unprioritisedNFAGraph);
-		//System.out.println("End UnpioritisedNFAGraph");
-		
-		NFAGraph trimmedUPNFA = NFAAnalysisTools.makeTrimUPNFA(m, unprioritisedNFAGraph);
+	/*
+	 * Assume the NFA of the trimmed UP-NFA has no epsilon loops, only one start and one accept and every state has either epsilon transitions, or one symbol transition from it.
+	 * The trimmed UP-NFA is shared with the IDA analysis, and is not modified.
+	 */
+	protected EdaAnalysisResults edaUnprioritisedAnalysis(NFAGraph trimmedUPNFA, int maxComplexity) {
 		//trimmedUPNFA = NFAAnalysisTools.makeTrim(trimmedUPNFA);
 		
 		HashMap<NFAVertexND, UPNFAState> statesMap = new HashMap<NFAVertexND, UPNFAState>();
@@ -497,7 +602,7 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 		//System.out.println(converted);
 		//System.out.println("End");
 		
-		LinkedList<NFAGraph> sccsInFlat = NFAAnalysisTools.getStronglyConnectedComponents(converted, maxComplexity, maxSeenComplexity);
+		LinkedList<Graph<NFAVertexND, NFAEdge>> sccsInFlat = NFAAnalysisTools.getStronglyConnectedComponentViews(converted, maxComplexity, maxSeenComplexity);
 		if (sccsInFlat == null) {
 			return null;
 		}
@@ -516,18 +621,18 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 		return resultsObject;
 	}
 	
-	/* Assume NFA has no epsilon loops, only one start and one accept and every state has either epsilon transitions, or one symbol transition from it */
-	protected IdaAnalysisResults idaUnprioritisedAnalysis(NFAGraph m) {		
-		NFAGraph unprioritisedNFAGraph = createUnprioritisedNFAGraph(m);
-		NFAGraph trimmedUPNFA = NFAAnalysisTools.makeTrimUPNFA(m, unprioritisedNFAGraph);
+	/*
+	 * Assume the NFA of the trimmed UP-NFA has no epsilon loops, only one start and one accept and every state has either epsilon transitions, or one symbol transition from it.
+	 * The trimmed UP-NFA is shared with the EDA analysis, and is not modified.
+	 */
+	protected IdaAnalysisResults idaUnprioritisedAnalysis(NFAGraph trimmedUPNFA) {
 		trimmedUPNFA = NFAAnalysisTools.makeTrim(trimmedUPNFA);
 		
 		HashMap<NFAVertexND, UPNFAState> statesMap = new HashMap<NFAVertexND, UPNFAState>();
 		NFAGraph converted = NFAAnalysisTools.convertUpNFAToNFAGraph(trimmedUPNFA, statesMap);
-		IdaAnalysisResults resultsObject = new IdaAnalysisResultsNoIda(m);
 		
 		/* Testing for multiple paths in PC */
-		resultsObject = idaTestCaseFilter(converted, converted);
+		IdaAnalysisResults resultsObject = idaTestCaseFilter(converted, converted);
 		resultsObject.setPriorityRemovalStrategy(PriorityRemovalStrategy.UNPRIORITISE);
 		return resultsObject;
 	}
@@ -543,15 +648,22 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 			newNFAInitialState = new NFAVertexND("q" + i);
 			i++;
 		}
-		UPNFAState newInitialState = new UPNFAState(newNFAInitialState.getStates(), new HashSet<NFAVertexND>());
+		/* the sets of higher priority states are bitsets over the states of m */
+		UPNFAState.StateNumbering numbering = new UPNFAState.StateNumbering(m.vertexSet());
+		UPNFAState newInitialState = new UPNFAState(newNFAInitialState.getStates(), numbering, numbering.createSet(), 0);
 		resultUPNFA.addVertex(newInitialState);
 		resultUPNFA.setInitialState(newInitialState);
 		
 		NFAVertexND mInitialState = m.getInitialState();
 		
-		/* Calculating the epsilon closure after all symbol transitions */
-		HashMap<NFAVertexND, TransitionLabel> stateToSymbolMap = new HashMap<NFAVertexND, TransitionLabel>();
-		HashMap<NFAVertexND, LinkedList<NFAVertexND>> stateToEpsilonClosureMap = new HashMap<NFAVertexND, LinkedList<NFAVertexND>>();
+		/* the closures of the states after symbol transitions are computed once each */
+		CompactNFA compactM = CompactNFA.fromNFAGraph(m);
+		EpsilonClosures closures = new EpsilonClosures(compactM);
+
+		/* Calculating the epsilon closure after all symbol transitions, indexed by state number */
+		TransitionLabel[] stateToSymbol = new TransitionLabel[numbering.size()];
+		long[][] stateToEpsilonClosure = new long[numbering.size()][];
+		HashSet<TransitionLabel> symbols = new HashSet<TransitionLabel>();
 		for (NFAEdge e : m.edgeSet()) {
 			//System.out.println("check2")
 			if (e.getTransitionType() == TransitionType.SYMBOL) {
@@ -560,17 +672,26 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 				NFAVertexND targetState = e.getTargetVertex();
 				TransitionLabel symbol = e.getTransitionLabel();				
 				
-				LinkedList<NFAVertexND> epsilonClosure = (LinkedList<NFAVertexND>) priorityBasedEpsilonClosureDFS(m, targetState);
-				stateToSymbolMap.put(sourceState, symbol);
-				stateToEpsilonClosureMap.put(sourceState, epsilonClosure);
+				long[] epsilonClosure = numbering.createSet();
+				for (int v : closures.getPrioritisedClosure(compactM.getStateNumber(targetState))) {
+					numbering.add(epsilonClosure, numbering.getNumber(compactM.getVertex(v)));
+				}
+				stateToSymbol[numbering.getNumber(sourceState)] = symbol;
+				stateToEpsilonClosure[numbering.getNumber(sourceState)] = epsilonClosure;
+				symbols.add(symbol);
 			}
 		}
+		/* the symbol transitions of P are split by the minterms of all symbol transitions, instead of splitting them pairwise */
+		MintermAlphabet mintermAlphabet = new MintermAlphabet(symbols);
 		//System.out.println("check4")
 		LinkedList<UPNFAState> toVisit = new LinkedList<UPNFAState>();
 		HashSet<UPNFAState> visited = new HashSet<UPNFAState>();
 		
-		LinkedList<NFAVertexND> reachableFromStart = (LinkedList<NFAVertexND>) priorityBasedEpsilonClosureDFS(m, mInitialState);
-		LinkedList<UPNFAState> startStatesList = (LinkedList<UPNFAState>) constructUPStates(reachableFromStart);
+		LinkedList<NFAVertexND> reachableFromStart = new LinkedList<NFAVertexND>();
+		for (int v : closures.getPrioritisedClosure(compactM.getStateNumber(mInitialState))) {
+			reachableFromStart.add(compactM.getVertex(v));
+		}
+		LinkedList<UPNFAState> startStatesList = (LinkedList<UPNFAState>) constructUPStates(reachableFromStart, numbering);
 		int priorityCounter = 1;
 		for (UPNFAState state : startStatesList) {
 			//System.out.println("check5")
@@ -585,7 +706,7 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 				toVisit.add(state);
 				//System.out.println("check9")
 			}
-			NFAEdge newEdge = new NFAEdge(newInitialState, state, new EpsilonTransitionLabel("ε" + priorityCounter));
+			NFAEdge newEdge = new NFAEdge(newInitialState, state, EpsilonTransitionLabel.forPriority(priorityCounter));
 			resultUPNFA.addEdge(newEdge);
 			priorityCounter++;
 		}
@@ -594,7 +715,7 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 			UPNFAState currentState = toVisit.removeFirst();
 			
 			ArrayList<String> q = currentState.getStates();
-			Set<NFAVertexND> P = currentState.getP();
+			long[] P = currentState.getPSet();
 			
 			Set<NFAEdge> outgoingEdges = m.outgoingEdgesOf(new NFAVertexND(q));
 			if (!outgoingEdges.isEmpty()) {
@@ -605,14 +726,14 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 					LinkedList<NFAEdge> sortedEdges = new LinkedList<NFAEdge>(outgoingEdges);
 					Collections.sort(sortedEdges);
 					
-					Set<NFAVertexND> s = new HashSet<NFAVertexND>();
+					/* P together with the targets of the edges of higher priority, and its hash code */
+					long[] higherP = P.clone();
+					int higherPHashCode = currentState.getPHashCode();
 					for (NFAEdge currentEdge : sortedEdges) {
 						//System.out.println("check13: " + currentEdge.getSourceVertex() + "-" + currentEdge + "->" + currentEdge.getTargetVertex())
 						NFAVertexND targetVertex = currentEdge.getTargetVertex();
 						
-						Set<NFAVertexND> newP = new HashSet<NFAVertexND>(P);
-						newP.addAll(s);
-						UPNFAState newUpNfaState = new UPNFAState(targetVertex.getStates(), newP);
+						UPNFAState newUpNfaState = new UPNFAState(targetVertex.getStates(), numbering, higherP.clone(), higherPHashCode);
 						if (!resultUPNFA.containsVertex(newUpNfaState)) {
 							//System.out.println("check14")
 							resultUPNFA.addVertex(newUpNfaState);
@@ -632,125 +753,50 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 						resultUPNFA.addEdge(newEdge);
 						
 						
-						s.add(targetVertex);
+						higherPHashCode += numbering.add(higherP, numbering.getNumber(targetVertex));
 					}
 				} else {
 					//System.out.println("check18")
 					NFAVertexND targetVertex = edge.getTargetVertex();
-					CharacterClassTransitionLabel symbolTransition = (CharacterClassTransitionLabel) edge.getTransitionLabel();
-					CharacterClassTransitionLabel remainingSymbols = (CharacterClassTransitionLabel) symbolTransition.copy();
-					HashMap<TransitionLabel, UPNFAState> newTransitionLabelToStateMap = new HashMap<TransitionLabel, UPNFAState>();
-					HashMap<TransitionLabel, LinkedList<NFAVertexND>> labelToReachableStatesMap = new HashMap<TransitionLabel, LinkedList<NFAVertexND>>();
-					// This for loop builds up labelToReachableStatesMap (does this preserve the priorities of P in labelToReachableStatesMap? Does it have to?)
-					for (NFAVertexND p : P) {
+					BitSet symbolMinterms = mintermAlphabet.getMinterms(edge.getTransitionLabel());
+					/* the states reachable from P with each minterm of the symbol transition */
+					long[][] mintermReachableStates = new long[mintermAlphabet.getNumMinterms()][];
+					int[] mintermReachableStatesHashCodes = new int[mintermAlphabet.getNumMinterms()];
+					for (int p : numbering.toArray(P)) {
 						//System.out.println("check19")
-						if (stateToSymbolMap.containsKey(p)) {
+						if (stateToSymbol[p] != null) {
 							//System.out.println("check20: " + p)
-							TransitionLabel pSymbolTransition = stateToSymbolMap.get(p);
-							LinkedList<NFAVertexND> epsilonClosure = new LinkedList<NFAVertexND>(stateToEpsilonClosureMap.get(p));
-							if (labelToReachableStatesMap.containsKey(pSymbolTransition)) {
-								// We already have this symbol transition, so only append the reachable states
-								//System.out.println("check21")
-								LinkedList<NFAVertexND> reachableStates = labelToReachableStatesMap.get(pSymbolTransition);
-								/* We add one by one manually to interrupt */
-								//System.out.println("check22")
-								reachableStates.addAll(epsilonClosure);
-							} else {
-								// Merge the symbol transition into the others with which it intersects
-								//System.out.println("check23")
-								TransitionLabel remainingPSymbols = pSymbolTransition.copy();
-						
-								LinkedList<TransitionLabel> transitionLabelsToRemove = new LinkedList<TransitionLabel>();
-								LinkedList<TransitionLabel> transitionLabelsToAdd = new LinkedList<TransitionLabel>();
-								LinkedList<LinkedList<NFAVertexND>> statesToAdd = new LinkedList<LinkedList<NFAVertexND>>();
-								
-								for (Map.Entry<TransitionLabel, LinkedList<NFAVertexND>> kv : labelToReachableStatesMap.entrySet()) {
-									//System.out.println("check24")
-									TransitionLabel currentTransitionLabel = kv.getKey();
-									LinkedList<NFAVertexND> currentReachableStates = kv.getValue();
-									
-									// If the intersection is not empty, merge
-									if (!remainingPSymbols.intersection(currentTransitionLabel).isEmpty()) {
-										//System.out.println("check25")
-										transitionLabelsToRemove.add(currentTransitionLabel);
-										
-										// The transition labels only in currentTransitionLabel
-										TransitionLabel tl1 = currentTransitionLabel.intersection(remainingPSymbols.complement());
-										if (!tl1.isEmpty()) {
-											transitionLabelsToAdd.add(tl1);
-											statesToAdd.add(currentReachableStates);
-										}
-										
-										TransitionLabel intersection = remainingPSymbols.intersection(currentTransitionLabel);
-										LinkedList<NFAVertexND> reachableStatesUnion = new LinkedList<NFAVertexND>(epsilonClosure);
-										reachableStatesUnion.addAll(currentReachableStates);										
-										transitionLabelsToAdd.add(intersection);
-										statesToAdd.add(reachableStatesUnion);
-										
-										TransitionLabel tl3 = remainingPSymbols.intersection(currentTransitionLabel.complement());	
-										remainingPSymbols = tl3;
-										if (tl3.isEmpty()) {
-											break;
-										}
+							BitSet pSymbolMinterms = mintermAlphabet.getMinterms(stateToSymbol[p]);
+							long[] epsilonClosure = stateToEpsilonClosure[p];
+							for (int minterm = pSymbolMinterms.nextSetBit(0); minterm >= 0; minterm = pSymbolMinterms.nextSetBit(minterm + 1)) {
+								if (symbolMinterms.get(minterm)) {
+									if (mintermReachableStates[minterm] == null) {
+										mintermReachableStates[minterm] = numbering.createSet();
 									}
+									mintermReachableStatesHashCodes[minterm] += numbering.addAll(mintermReachableStates[minterm], epsilonClosure);
 								}
-								//System.out.println("check26")
-								for (TransitionLabel tl : transitionLabelsToRemove) {
-									//System.out.println("check27")
-									labelToReachableStatesMap.remove(tl);
-								}
-								Iterator<TransitionLabel> i0 = transitionLabelsToAdd.iterator();
-								Iterator<LinkedList<NFAVertexND>> i1 = statesToAdd.iterator();
-								while (i0.hasNext()) {
-									//System.out.println("check28")
-									labelToReachableStatesMap.put(i0.next(), i1.next());
-								}
-								//System.out.println("check29")
-								if (!remainingPSymbols.isEmpty()) {
-									//System.out.println("check30")
-									labelToReachableStatesMap.put(remainingPSymbols, epsilonClosure);
-								}
-								//System.out.println("check31")
 							}
 						}
 					}
-					// Shouldn't this maybe be in order of priority? ()
-					for (Map.Entry<TransitionLabel, LinkedList<NFAVertexND>> kv : labelToReachableStatesMap.entrySet()) {
-						TransitionLabel currentTransitionLabel = kv.getKey();
-						LinkedList<NFAVertexND> currentReachableStates = kv.getValue();
-						//System.out.println("check32: " + symbolTransition + " " + currentTransitionLabel)
-						
-						// This should maybe be !currentTransitionLabel.intersection(remainingSymbols).isEmpty()
-						if (!currentTransitionLabel.intersection(remainingSymbols).isEmpty()) {
-							//System.out.println("check33")
-							// This should maybe be TransitionLabel newTransitionLabel = currentTransitionLabel.intersection(remainingSymbols);
-							TransitionLabel newTransitionLabel = currentTransitionLabel.intersection(symbolTransition);
-							Set<NFAVertexND> newP = new HashSet<NFAVertexND>(currentReachableStates);
-							
-							if (newTransitionLabelToStateMap.containsKey(newTransitionLabel)) {
-								//System.out.println("check34")
-								UPNFAState newState = newTransitionLabelToStateMap.get(newTransitionLabel);
-								// This should never happen...
-								newState.getP().addAll(newP);
-							} else {
-								//System.out.println("check35")
-								UPNFAState newState = new UPNFAState(targetVertex.getStates(), newP);
-								newTransitionLabelToStateMap.put(newTransitionLabel, newState);
-							}
-							//System.out.println("check36")
-							remainingSymbols = (CharacterClassTransitionLabel) remainingSymbols.intersection(newTransitionLabel.complement());
-							
+					
+					/* the minterms with the same reachable states form one label, the minterms without any form the remaining symbols */
+					LinkedHashMap<UPNFAState, BitSet> newStateToMinterms = new LinkedHashMap<UPNFAState, BitSet>();
+					for (int minterm = symbolMinterms.nextSetBit(0); minterm >= 0; minterm = symbolMinterms.nextSetBit(minterm + 1)) {
+						long[] reachableStates = mintermReachableStates[minterm];
+						if (reachableStates == null) {
+							reachableStates = numbering.createSet();
 						}
-						//System.out.println("check37")
-						
+						UPNFAState newState = new UPNFAState(targetVertex.getStates(), numbering, reachableStates, mintermReachableStatesHashCodes[minterm]);
+						BitSet newStateMinterms = newStateToMinterms.get(newState);
+						if (newStateMinterms == null) {
+							newStateMinterms = new BitSet();
+							newStateToMinterms.put(newState, newStateMinterms);
+						}
+						newStateMinterms.set(minterm);
 					}
-					//System.out.println("check38")
-					
-					if (!remainingSymbols.isEmpty()) {
-						//System.out.println("check39")
-						HashSet<NFAVertexND> emptySet = new HashSet<NFAVertexND>();
-						UPNFAState newState = new UPNFAState(targetVertex.getStates(), emptySet);
-						newTransitionLabelToStateMap.put(remainingSymbols, newState);
+					HashMap<TransitionLabel, UPNFAState> newTransitionLabelToStateMap = new HashMap<TransitionLabel, UPNFAState>();
+					for (Map.Entry<UPNFAState, BitSet> kv : newStateToMinterms.entrySet()) {
+						newTransitionLabelToStateMap.put(mintermAlphabet.getLabel(kv.getValue()), kv.getKey());
 					}
 					//System.out.println("check40")
 					for (Map.Entry<TransitionLabel, UPNFAState> kv : newTransitionLabelToStateMap.entrySet()) {
@@ -797,43 +843,15 @@ public abstract class NFAAnalyser implements NFAAnalyserInterface {
 	}
 	
 	/* Assume NFA has no epsilon loops, only one start and one accept and every state has either epsilon transitions, or one symbol transition from it */
-	private List<NFAVertexND> priorityBasedEpsilonClosureDFS(NFAGraph m, NFAVertexND startState) {
-		LinkedList<NFAVertexND> terminalStates = new LinkedList<NFAVertexND>();
-		Stack<NFAVertexND> toVisit = new Stack<NFAVertexND>();
-		toVisit.push(startState);
-		while (!toVisit.isEmpty()) {
-			NFAVertexND currentState = toVisit.pop();
-			LinkedList<NFAEdge> outgoingTransitions = new LinkedList<NFAEdge>(m.outgoingEdgesOf(currentState));
-			if (!outgoingTransitions.isEmpty()) {
-				NFAEdge edge = outgoingTransitions.iterator().next();
-				NFAVertexND targetState = edge.getTargetVertex();
-				if (edge.getIsEpsilonTransition()) {
-					Collections.sort(outgoingTransitions, Collections.reverseOrder());
-					for (NFAEdge e : outgoingTransitions) {
-						targetState = e.getTargetVertex();
-						toVisit.push(targetState);
-					}
-				} else if (edge.getTransitionType() == TransitionType.SYMBOL) {
-					terminalStates.add(currentState);
-				}
-
-			} else if (m.isAcceptingState(currentState)) {
-				terminalStates.add(currentState);
-			}
-		}
-		return terminalStates;
-	}
-	
 	/* Receives a list of states in order of priority and creates unprioritised states e.g. (q0, q1, q2 -> (q0, {}), (q1, {q0}), (q2, {q0, q1})) */
-	private List<UPNFAState> constructUPStates(List<NFAVertexND> stateList) {
-		Set<NFAVertexND> currentP = new HashSet<NFAVertexND>();
+	private List<UPNFAState> constructUPStates(List<NFAVertexND> stateList, UPNFAState.StateNumbering numbering) {
+		long[] currentP = numbering.createSet();
+		int currentPHashCode = 0;
 		List<UPNFAState> unprioritisedStatesList = new LinkedList<UPNFAState>();
 		for (NFAVertexND q : stateList) {
-			UPNFAState newUnprioritisedState = new UPNFAState(q.getStates(), currentP);
+			UPNFAState newUnprioritisedState = new UPNFAState(q.getStates(), numbering, currentP.clone(), currentPHashCode);
 			unprioritisedStatesList.add(newUnprioritisedState);
-			if (!currentP.contains(q)) {
-				currentP.add(q);
-			}
+			currentPHashCode += numbering.add(currentP, numbering.getNumber(q));
 		}
 		return unprioritisedStatesList;
 		
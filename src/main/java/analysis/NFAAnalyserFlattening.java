@@ -1,8 +1,11 @@
 package analysis;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
@@ -14,6 +17,7 @@ import analysis.IdaAnalysisResults.IdaCases;
 import analysis.AnalysisSettings.PriorityRemovalStrategy;
 import analysis.NFAAnalyserInterface.EdaAnalysisResultsNoEda;
 
+import nfa.CompactNFA;
 import nfa.NFAGraph;
 import nfa.NFAVertexND;
 import nfa.NFAEdge;
@@ -26,9 +30,14 @@ public class NFAAnalyserFlattening extends NFAAnalyser {
 		super(priorityRemovalStrategy, maxComplexity, maxSeenComplexity);
 	}
 
+	@Override
+	protected CompactNFA transformNFA(CompactNFA m, Map<NFAVertexND, Set<NFAVertexND>> esccs) {
+		return flattenNFA(m);
+	}
+
 	@Override
 	protected EdaAnalysisResults calculateEdaAnalysisResults(NFAGraph originalM) {
-		NFAGraph flatGraph = flattenNFA(originalM);
+		CompactNFA flatGraph = getAnalysisContext(originalM).getTransformedNFA();
 		
 		LinkedList<NFAGraph> sccsInFlat = NFAAnalysisTools.getStronglyConnectedComponents(flatGraph, maxComplexity, maxSeenComplexity);
 		if (sccsInFlat == null) {
@@ -54,8 +63,11 @@ public class NFAAnalyserFlattening extends NFAAnalyser {
 	
 	@Override
 	protected EdaAnalysisResults calculateEdaUnprioritisedAnalysisResults(NFAGraph originalM) {	
-		NFAGraph flatGraph = flattenNFA(originalM);
-		EdaAnalysisResults toReturn = edaUnprioritisedAnalysis(flatGraph, maxComplexity);
+		NFAGraph trimmedUPNFA = getAnalysisContext(originalM).getTrimmedUPNFA();
+		if (trimmedUPNFA == null) {
+			return new TooComplexEdaAnalysisResults(originalM);
+		}
+		EdaAnalysisResults toReturn = edaUnprioritisedAnalysis(trimmedUPNFA, maxComplexity);
 		if (toReturn == null) {
 			return new TooComplexEdaAnalysisResults(originalM);
 		}
@@ -66,7 +78,7 @@ public class NFAAnalyserFlattening extends NFAAnalyser {
 	@Override
 	protected IdaAnalysisResults calculateIdaAnalysisResults(NFAGraph originalM) {
 
-		NFAGraph flatGraph = flattenNFA(originalM);
+		CompactNFA flatGraph = getAnalysisContext(originalM).getTransformedNFA();
 
 		IdaAnalysisResults toReturn = new IdaAnalysisResultsNoIda(originalM);
 		toReturn.setPriorityRemovalStrategy(PriorityRemovalStrategy.IGNORE);
@@ -80,9 +92,12 @@ public class NFAAnalyserFlattening extends NFAAnalyser {
 	
 	@Override
 	protected IdaAnalysisResults calculateIdaUnprioritisedAnalysisResults(NFAGraph originalM) {
-		NFAGraph flatGraph = flattenNFA(originalM);
+		NFAGraph trimmedUPNFA = getAnalysisContext(originalM).getTrimmedUPNFA();
+		if (trimmedUPNFA == null) {
+			return new TooComplexIdaAnalysisResults(originalM);
+		}
 
-		IdaAnalysisResults toReturn = idaUnprioritisedAnalysis(flatGraph);
+		IdaAnalysisResults toReturn = idaUnprioritisedAnalysis(trimmedUPNFA);
 
 
 		toReturn.setPriorityRemovalStrategy(PriorityRemovalStrategy.UNPRIORITISE);
@@ -174,7 +189,7 @@ public class NFAAnalyserFlattening extends NFAAnalyser {
 			int priorityCounter = 1;
 			for (NFAVertexND targetState : reachableFromSource) {
 				if (!sourceState.equals(targetState)) {
-					NFAEdge newEdge = new NFAEdge(sourceState, targetState,	new EpsilonTransitionLabel("ε" + priorityCounter));
+					NFAEdge newEdge = new NFAEdge(sourceState, targetState,	EpsilonTransitionLabel.forPriority(priorityCounter));
 					flatGraph.addEdge(newEdge);
 					priorityCounter++;
 				}
@@ -184,31 +199,126 @@ public class NFAAnalyserFlattening extends NFAAnalyser {
 		return flatGraph;
 	}
 
+	/**
+	 * Constructs a compact NFA in which every walk over epsilon transitions
+	 * of the compact NFA given as parameter, from the initial state or the
+	 * target of a symbol transition to a state with symbol transitions or an
+	 * accepting state without outgoing transitions, is replaced by a single
+	 * epsilon transition, prioritised in the order the walks are taken.
+	 * 
+	 * @param m
+	 *            The compact NFA to flatten.
+	 * @return The flattened compact NFA.
+	 */
+	public static CompactNFA flattenNFA(CompactNFA m) {
+		int numStates = m.getNumStates();
+		CompactNFA.Builder flatGraph = new CompactNFA.Builder();
+		int[] flatStateNumbers = new int[numStates];
+		Arrays.fill(flatStateNumbers, -1);
+
+		int mInitialState = m.getInitialState();
+		BitSet searchFromStates = new BitSet(numStates);
+		searchFromStates.set(mInitialState);
+
+		/* Adding the vertices of the non-epsilon edges */
+		for (int s = 0; s < numStates; s++) {
+			for (int e = m.getOutgoingStart(s); e < m.getEpsilonStart(s); e++) {
+				int t = m.getEdgeTarget(e);
+				if (flatStateNumbers[s] == -1) {
+					flatStateNumbers[s] = flatGraph.addState(m.getVertex(s));
+				}
+				if (flatStateNumbers[t] == -1) {
+					flatStateNumbers[t] = flatGraph.addState(m.getVertex(t));
+				}
+				searchFromStates.set(t);
+			}
+		}
+
+		/* Adding the initial state */
+		if (flatStateNumbers[mInitialState] == -1) {
+			flatStateNumbers[mInitialState] = flatGraph.addState(m.getVertex(mInitialState));
+		}
+		flatGraph.setInitialState(flatStateNumbers[mInitialState]);
+
+		/* Adding the accepting states */
+		for (int s = 0; s < numStates; s++) {
+			if (m.isAcceptingState(s)) {
+				if (flatStateNumbers[s] == -1) {
+					flatStateNumbers[s] = flatGraph.addState(m.getVertex(s));
+				}
+				flatGraph.addAcceptingState(flatStateNumbers[s]);
+			}
+		}
+
+		/* Adding the non-epsilon edges, which are already normalised in m */
+		for (int e = 0; e < m.getNumEdges(); e++) {
+			if (!m.isEpsilonEdge(e)) {
+				flatGraph.appendEdge(flatStateNumbers[m.getEdgeSource(e)], flatStateNumbers[m.getEdgeTarget(e)], m.getEdgeLabel(e), m.getEdgeNumParallel(e));
+			}
+		}
+
+		/* the closures of the states between the sources are shared */
+		EpsilonClosures closures = new EpsilonClosures(m);
+		for (int sourceState = searchFromStates.nextSetBit(0); sourceState >= 0; sourceState = searchFromStates.nextSetBit(sourceState + 1)) {
+			int priorityCounter = 1;
+			for (int targetState : closures.getPrioritisedClosure(sourceState)) {
+				if (sourceState != targetState) {
+					/* every priority is used once per source, so the new edges are never parallel */
+					flatGraph.appendEdge(flatStateNumbers[sourceState], flatStateNumbers[targetState], EpsilonTransitionLabel.forPriority(priorityCounter), 1);
+					priorityCounter++;
+				}
+			}
+		}
+		return flatGraph.build();
+	}
+
+	/*
+	 * Assumes one start and accept state and either epsilon transitions, or a
+	 * symbol transitions from each state. The walks are taken in the order of
+	 * priority of their edges, with an explicit stack of the states on the
+	 * current walk, so that long walks do not overflow the call stack.
+	 */
 	public static LinkedList<NFAVertexND> dfsFlatten(NFAGraph m, NFAVertexND startVertex) {
 		LinkedList<NFAVertexND> endVertices = new LinkedList<NFAVertexND>();
-		dfsFlatten(m, startVertex, new HashSet<NFAEdge>(), endVertices);
+		HashSet<NFAEdge> visitedEdges = new HashSet<NFAEdge>();
+		Stack<FlattenFrame> walk = new Stack<FlattenFrame>();
+		FlattenFrame startFrame = dfsFlattenVisit(m, startVertex, null, endVertices);
+		if (startFrame != null) {
+			walk.push(startFrame);
+		}
+		while (!walk.isEmpty()) {
+			FlattenFrame current = walk.peek();
+			if (!current.sortedEdges.hasNext()) {
+				/* unvisit the edge the walk took to the state */
+				walk.pop();
+				visitedEdges.remove(current.incomingEdge);
+				continue;
+			}
+			NFAEdge e = current.sortedEdges.next();
+			if (visitedEdges.add(e)) {
+				FlattenFrame next = dfsFlattenVisit(m, e.getTargetVertex(), e, endVertices);
+				if (next != null) {
+					walk.push(next);
+				} else {
+					visitedEdges.remove(e);
+				}
+			}
+		}
 		return endVertices;
 	}
 
 	/*
-	 * Assumes one start and accept state and either epsilon transitions, or a
-	 * symbol transitions from each state
+	 * Adds a state in which a walk ends to the end vertices, or returns the
+	 * frame of a state the walk continues from with epsilon transitions.
 	 */
-	private static void dfsFlatten(NFAGraph m, NFAVertexND currentVertex, HashSet<NFAEdge> visitedEdges, LinkedList<NFAVertexND> endVertices) {
+	private static FlattenFrame dfsFlattenVisit(NFAGraph m, NFAVertexND currentVertex, NFAEdge incomingEdge, LinkedList<NFAVertexND> endVertices) {
 		Set<NFAEdge> outgoingEdges = m.outgoingEdgesOf(currentVertex);
 		if (!outgoingEdges.isEmpty()) {
 			NFAEdge edge = outgoingEdges.iterator().next();
 			if (edge.getIsEpsilonTransition()) {
 				LinkedList<NFAEdge> sortedEdges = new LinkedList<NFAEdge>(outgoingEdges);
 				Collections.sort(sortedEdges);
-				for (NFAEdge e : sortedEdges) {
-					if (!visitedEdges.contains(e)) {
-						visitedEdges.add(e);
-						dfsFlatten(m, e.getTargetVertex(), visitedEdges, endVertices);
-						visitedEdges.remove(e);
-					}
-
-				}
+				return new FlattenFrame(incomingEdge, sortedEdges.iterator());
 			} else {
 				endVertices.add(currentVertex);
 			}
@@ -216,6 +326,19 @@ public class NFAAnalyserFlattening extends NFAAnalyser {
 		} else if (m.isAcceptingState(currentVertex)) {
 			endVertices.add(currentVertex);
 		}
+		return null;
+	}
+
+	/* A state on the current walk of dfsFlatten, with the edge the walk took to it and its edges left to take */
+	private static class FlattenFrame {
+
+		private final NFAEdge incomingEdge;
+		private final Iterator<NFAEdge> sortedEdges;
+
+		private FlattenFrame(NFAEdge incomingEdge, Iterator<NFAEdge> sortedEdges) {
+			this.incomingEdge = incomingEdge;
+			this.sortedEdges = sortedEdges;
+		}
 
 	}
 
@@ -236,29 +359,58 @@ public class NFAAnalyserFlattening extends NFAAnalyser {
 		return paths;
 	}
 
-	static void numWalksFromSearch(NFAGraph m, NFAVertexND current,
+	static void numWalksFromSearch(NFAGraph m, NFAVertexND start,
 			HashMap<NFAEdge, Integer> visitedEdges,
 			HashMap<NFAVertexND, Integer> paths) {
-		/* update the number of paths to the current vertex */
-
-		for (NFAEdge e : m.outgoingEdgesOf(current)) {
-			if (e.getIsEpsilonTransition()) {
-				int currentNumVisit = visitedEdges.get(e);
-				/* update the number of times this edge has been visited */
-				visitedEdges.put(e, currentNumVisit + 1);
+		/* the states on the current walk, in an explicit stack so that long walks do not overflow the call stack */
+		Stack<WalkFrame> walk = new Stack<WalkFrame>();
+		walk.push(new WalkFrame(m.outgoingEdgesOf(start).iterator()));
+		while (!walk.isEmpty()) {
+			WalkFrame current = walk.peek();
+			if (current.edge != null) {
 				/* for the amount of times the edge can be visited again */
-				for (int i = currentNumVisit; i < e.getNumParallel(); i++) {
-					/* search from the new vertex */
-					paths.put(e.getTargetVertex(),
-							paths.get(e.getTargetVertex()) + 1);
-					numWalksFromSearch(m, e.getTargetVertex(), visitedEdges,
-							paths);
+				if (current.i < current.edge.getNumParallel()) {
+					current.i++;
+					/* update the number of paths to the new vertex and search from it */
+					NFAVertexND target = current.edge.getTargetVertex();
+					paths.put(target, paths.get(target) + 1);
+					walk.push(new WalkFrame(m.outgoingEdgesOf(target).iterator()));
+					continue;
 				}
 				/* unvisit the current edge */
-				visitedEdges.put(e, currentNumVisit);
+				visitedEdges.put(current.edge, current.numVisit);
+				current.edge = null;
+			}
+			while (current.edges.hasNext()) {
+				NFAEdge e = current.edges.next();
+				if (e.getIsEpsilonTransition()) {
+					/* update the number of times this edge has been visited */
+					current.edge = e;
+					current.numVisit = visitedEdges.get(e);
+					current.i = current.numVisit;
+					visitedEdges.put(e, current.numVisit + 1);
+					break;
+				}
+			}
+			if (current.edge == null) {
+				walk.pop();
 			}
 		}
 	}
 
+	/* A state on the current walk of numWalksFromSearch, with the epsilon edge taken from it */
+	private static class WalkFrame {
+
+		private final Iterator<NFAEdge> edges;
+		private NFAEdge edge;
+		/* The number of times the edge was visited before the walk took it */
+		private int numVisit;
+		private int i;
+
+		private WalkFrame(Iterator<NFAEdge> edges) {
+			this.edges = edges;
+		}
+
+	}
 
 }
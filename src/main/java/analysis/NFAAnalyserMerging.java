@@ -3,8 +3,11 @@ package analysis;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.jgrapht.Graph;
+
 import analysis.EdaAnalysisResults.EdaCases;
 import analysis.IdaAnalysisResults.IdaCases;
 import analysis.NFAAnalyserInterface.EdaAnalysisResultsNoEda;
@@ -12,9 +15,12 @@ import analysis.NFAAnalyserInterface.IdaAnalysisResultsNoIda;
 
 import analysis.AnalysisSettings.PriorityRemovalStrategy;
 
+import nfa.CompactNFA;
 import nfa.NFAGraph;
+import nfa.NFAGraphViews;
 import nfa.NFAEdge;
 import nfa.NFAVertexND;
+import nfa.transitionlabel.TransitionLabel.TransitionType;
 
 /**
  * An analyser for finding patterns that can cause catastrophic backtracking.
@@ -28,11 +34,11 @@ public class NFAAnalyserMerging extends NFAAnalyser {
 		super(priorityRemovalStrategy, maxComplexity, maxSeenComplexity);
 	}
 
-	private EdaAnalysisResults testCaseESCC(NFAGraph originalM, LinkedList<NFAGraph> sccsInOriginal, Map<NFAVertexND, NFAGraph> esccs) {
+	private EdaAnalysisResults testCaseESCC(NFAGraph originalM, LinkedList<Graph<NFAVertexND, NFAEdge>> sccsInOriginal, Map<NFAVertexND, Set<NFAVertexND>> esccs) {
 
 		/* mapping SCCs to the ESCC's in them */
-		HashMap<NFAGraph, LinkedList<NFAVertexND>> sccToMergedESCCStatesMap = new HashMap<NFAGraph, LinkedList<NFAVertexND>>();
-		for (NFAGraph currentSCCInOriginal : sccsInOriginal) {
+		HashMap<Graph<NFAVertexND, NFAEdge>, LinkedList<NFAVertexND>> sccToMergedESCCStatesMap = new HashMap<Graph<NFAVertexND, NFAEdge>, LinkedList<NFAVertexND>>();
+		for (Graph<NFAVertexND, NFAEdge> currentSCCInOriginal : sccsInOriginal) {
 			for (NFAVertexND currentVertex : currentSCCInOriginal.vertexSet()) {
 				/* if a vertex in this SCC becomes a merged ESCC */
 				if (esccs.containsKey(currentVertex)) {
@@ -48,7 +54,7 @@ public class NFAAnalyserMerging extends NFAAnalyser {
 				}
 			}
 		}
-		for (NFAGraph currentSCCInOriginal : sccsInOriginal) {
+		for (Graph<NFAVertexND, NFAEdge> currentSCCInOriginal : sccsInOriginal) {
 			/*
 			 * find esccs in this scc (in merged). The OrDefault lets it return
 			 * an empty list to save a null check
@@ -62,7 +68,8 @@ public class NFAAnalyserMerging extends NFAAnalyser {
 			//LinkedList<NFAVertexND> esscsInCurrentSCC = sccToMergedESCCStatesMap.getOrDefault(currentSCCInOriginal, new LinkedList<NFAVertexND>());
 
 			for (NFAVertexND mergedESCCInSCC : esscsInCurrentSCC) {
-				NFAGraph currentESCC = esccs.get(mergedESCCInSCC);
+				/* the epsilon transitions between the vertices of the escc in the original graph */
+				Graph<NFAVertexND, NFAEdge> currentESCC = NFAGraphViews.withTransitionType(NFAGraphViews.induced(originalM, esccs.get(mergedESCCInSCC)), TransitionType.EPSILON);
 
 				/*
 				 * find all the entrance and exit states of the escc and map
@@ -132,7 +139,7 @@ public class NFAAnalyserMerging extends NFAAnalyser {
 								NFAEdge entranceEdge = entranceStates.get(start);
 								NFAEdge exitEdge = exitStates.get(p);
 								//System.out.println("Case: More than one walk through escc: " + entranceEdge.getTargetVertex() + " " + exitEdge.getSourceVertex());
-								EdaAnalysisResultsESCC resultsObject = new EdaAnalysisResultsESCC(originalM, currentSCCInOriginal, entranceEdge, exitEdge);
+								EdaAnalysisResultsESCC resultsObject = new EdaAnalysisResultsESCC(originalM, NFAGraphViews.toNFAGraph(currentSCCInOriginal), entranceEdge, exitEdge);
 								return resultsObject;
 							}
 						}
@@ -144,16 +151,22 @@ public class NFAAnalyserMerging extends NFAAnalyser {
 		return new EdaAnalysisResultsNoEda(originalM);
 	}
 
+	/* Merges the epsilon strongly connected components of the NFA */
+	@Override
+	protected CompactNFA transformNFA(CompactNFA m, Map<NFAVertexND, Set<NFAVertexND>> esccs) {
+		return NFAAnalysisTools.mergeStronglyConnectedComponents(m, true, maxComplexity, maxSeenComplexity, esccs);
+	}
+
 	@Override
 	protected EdaAnalysisResults calculateEdaAnalysisResults(NFAGraph originalM) {
-		LinkedList<NFAGraph> sccsInOriginal = NFAAnalysisTools.getStronglyConnectedComponents(originalM, maxComplexity, maxSeenComplexity);
+		LinkedList<Graph<NFAVertexND, NFAEdge>> sccsInOriginal = NFAAnalysisTools.getStronglyConnectedComponentViews(originalM, maxComplexity, maxSeenComplexity);
 		if (sccsInOriginal == null) {
 			return new TooComplexEdaAnalysisResults(originalM);
 		}
 
-		NFAGraph merged = originalM.copy();
-		Map<NFAVertexND, NFAGraph> esccs = NFAAnalysisTools.mergeStronglyConnectedComponents(merged, true, maxComplexity, maxSeenComplexity);
-		if (esccs == null) {
+		AnalysisContext context = getAnalysisContext(originalM);
+		CompactNFA merged = context.getTransformedNFA();
+		if (merged == null) {
 			return new TooComplexEdaAnalysisResults(originalM);
 		}
 
@@ -171,7 +184,7 @@ public class NFAAnalyserMerging extends NFAAnalyser {
 		
 		
 		/* Testing for multiple paths through ESCCs */
-		toReturn = testCaseESCC(originalM, sccsInOriginal, esccs);
+		toReturn = testCaseESCC(originalM, sccsInOriginal, context.getEsccs());
 		toReturn.setPriorityRemovalStrategy(PriorityRemovalStrategy.IGNORE);
 		
 		if (toReturn.edaCase != EdaCases.NO_EDA) {
@@ -187,12 +200,12 @@ public class NFAAnalyserMerging extends NFAAnalyser {
 	
 	@Override
 	protected EdaAnalysisResults calculateEdaUnprioritisedAnalysisResults(NFAGraph originalM) {
-		NFAGraph merged = originalM.copy();
-		if (NFAAnalysisTools.mergeStronglyConnectedComponents(merged, true, maxComplexity, maxSeenComplexity) == null) {
+		NFAGraph trimmedUPNFA = getAnalysisContext(originalM).getTrimmedUPNFA();
+		if (trimmedUPNFA == null) {
 			return new TooComplexEdaAnalysisResults(originalM);
 		}
 
-		EdaAnalysisResults toReturn = edaUnprioritisedAnalysis(merged, maxComplexity);
+		EdaAnalysisResults toReturn = edaUnprioritisedAnalysis(trimmedUPNFA, maxComplexity);
 		if (toReturn == null) {
 			return new TooComplexEdaAnalysisResults(originalM);
 		}
@@ -204,8 +217,8 @@ public class NFAAnalyserMerging extends NFAAnalyser {
 
 	@Override
 	protected IdaAnalysisResults calculateIdaAnalysisResults(NFAGraph originalM) {
-		NFAGraph merged = originalM.copy();
-		if (NFAAnalysisTools.mergeStronglyConnectedComponents(merged, true, maxComplexity, maxSeenComplexity) == null) {
+		CompactNFA merged = getAnalysisContext(originalM).getTransformedNFA();
+		if (merged == null) {
 			return new TooComplexIdaAnalysisResults(originalM);
 		}
 		
@@ -224,13 +237,13 @@ public class NFAAnalyserMerging extends NFAAnalyser {
 
 	@Override
 	protected IdaAnalysisResults calculateIdaUnprioritisedAnalysisResults(NFAGraph originalM) {
-		NFAGraph merged = originalM.copy();
-		if (NFAAnalysisTools.mergeStronglyConnectedComponents(merged, true, maxComplexity, maxSeenComplexity) == null) {
+		NFAGraph trimmedUPNFA = getAnalysisContext(originalM).getTrimmedUPNFA();
+		if (trimmedUPNFA == null) {
 			return new TooComplexIdaAnalysisResults(originalM);
 		}
 
 		IdaAnalysisResults toReturn = new IdaAnalysisResultsNoIda(originalM);
-		toReturn = idaUnprioritisedAnalysis(merged);
+		toReturn = idaUnprioritisedAnalysis(trimmedUPNFA);
 
 		toReturn.setPriorityRemovalStrategy(PriorityRemovalStrategy.UNPRIORITISE);
 		return toReturn;
@@ -1,9 +1,10 @@
 package analysis;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -14,97 +15,197 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.jgrapht.Graph;
 import org.jgrapht.alg.connectivity.KosarajuStrongConnectivityInspector;
 
+import nfa.CompactNFA;
 import nfa.NFAGraph;
+import nfa.NFAGraphViews;
 import nfa.NFAVertexND;
 import nfa.UPNFAState;
 import nfa.NFAEdge;
-import nfa.FilterEdge;
 import nfa.transitionlabel.TransitionLabel;
+import nfa.transitionlabel.TransitionLabel.TransitionType;
 import nfa.transitionlabel.CharacterClassTransitionLabel;
-import nfa.transitionlabel.EmptyTransitionLabelException;
+import nfa.transitionlabel.EpsilonTransitionLabel;
 
 
 public class NFAAnalysisTools {
 
+	private static final EpsilonTransitionLabel FILTER_EPSILON_1 = EpsilonTransitionLabel.forPriority(1);
+
+	private static final EpsilonTransitionLabel FILTER_EPSILON_2 = EpsilonTransitionLabel.forPriority(2);
+
 	/* ============= GENERAL TOOLS ============= */
 
 	/**
-	 * Modifies an NFA graph so that it can be used with the Mohri filter.
+	 * Calculates the product construction of two NFA graphs with the Mohri
+	 * filter between them. The filter state is kept as a component of the
+	 * product states, instead of preparing copies of a and b for the filter
+	 * and constructing the product of a and the filter first, but the states
+	 * and edges are the same, and they are added in the same order.
 	 * 
-	 * @param m
-	 *            The NFA graph to modify
-	 * @param modifyLabel
-	 *            The label to assign to the current epsilon transitions.
-	 * @param selfloopLabel
-	 *            The label to assign to the selfloops added to all states.
+	 * @param a
+	 *            The first NFA graph.
+	 * @param b
+	 *            The second NFA graph.
+	 * @return The NFA graph representing the product construction.
 	 */
-	public static void prepareForFilter(NFAGraph m, String modifyLabel, String selfloopLabel) {
-		for (NFAVertexND v : m.vertexSet()) {
-			/* changing current epsilon transitions to modifyLabel */
-			for (NFAEdge e : m.outgoingEdgesOf(v)) {
-				if (e.getIsEpsilonTransition()) {
-					e.setTransitionLabel(modifyLabel);
-				}
+	public static NFAGraph productConstructionAFB(NFAGraph a, NFAGraph b) {
+		/* the edges are merged once all of them are found */
+		NFAGraph.Builder productConstruction = new NFAGraph.Builder();
+		NFAVertexND[] filterStates = { new NFAVertexND(0), new NFAVertexND(1), new NFAVertexND(2) };
+
+		FilterProductState firstState = new FilterProductState(a.getInitialState(), 0, b.getInitialState(), filterStates);
+		LinkedList<FilterProductState> toVisit = new LinkedList<FilterProductState>();
+		/* Adding the initial state */
+		toVisit.add(firstState);
+		productConstruction.addVertex(firstState.vertex);
+		productConstruction.setInitialState(firstState.vertex);
+		while (!toVisit.isEmpty()) {
+			FilterProductState source = toVisit.poll();
+			/* see if the current vertex is accepting, all the filter states are */
+			if (a.isAcceptingState(source.m1State) && b.isAcceptingState(source.m2State)) {
+				productConstruction.addAcceptingState(source.vertex);
 			}
-			/* Adding the self loop */
-			try {
-				m.addEdge(new NFAEdge(v, v, selfloopLabel));
-			} catch (EmptyTransitionLabelException e1) {
-				throw new RuntimeException("Empty transition label");
+
+			for (FilterTransition ft : filterTransitions(a, source.m1State, source.filterState)) {
+				for (NFAEdge currentM2Edge : b.outgoingEdgesOf(source.m2State)) {
+					NFAVertexND m2TargetState = currentM2Edge.getTargetVertex();
+					TransitionLabel label;
+					switch (ft.type) {
+					case SYMBOL:
+						if (currentM2Edge.getIsEpsilonTransition() || !currentM2Edge.isTransitionFor(ft.word)) {
+							/* current edge can't handle word */
+							continue;
+						}
+						label = ft.word.intersection(currentM2Edge.getTransitionLabel());
+						break;
+					case BOTH_EPSILON:
+					case M2_EPSILON:
+						if (!currentM2Edge.getIsEpsilonTransition()) {
+							continue;
+						}
+						label = ft.word;
+						break;
+					default:
+						/* m2 takes none of its edges, but stays in its state */
+						continue;
+					}
+					FilterProductState target = new FilterProductState(ft.m1TargetState, ft.filterTargetState, m2TargetState, filterStates);
+					addFilterProductEdge(productConstruction, toVisit, source, target, label, ft.numParallel * currentM2Edge.getNumParallel());
+				}
+				if (ft.type == FilterTransitionType.M1_EPSILON) {
+					FilterProductState target = new FilterProductState(ft.m1TargetState, ft.filterTargetState, source.m2State, filterStates);
+					addFilterProductEdge(productConstruction, toVisit, source, target, ft.word, ft.numParallel);
+				}
 			}
 		}
+		return productConstruction.build();
 	}
 
-	/**
-	 * Creates an NFA graph representing the Mohri filter.
-	 * 
-	 * @return the NFA graph
+	private static void addFilterProductEdge(NFAGraph.Builder productConstruction, LinkedList<FilterProductState> toVisit, FilterProductState source, FilterProductState target, TransitionLabel label, int numParallel) {
+		/* ensure each state is only visited once */
+		if (!productConstruction.containsVertex(target.vertex)) {
+			toVisit.add(target);
+			productConstruction.addVertex(target.vertex);
+		}
+		NFAEdge newEdge = new NFAEdge(source.vertex, target.vertex, label);
+		newEdge.setNumParallel(numParallel);
+		productConstruction.appendEdge(newEdge);
+	}
+
+	/*
+	 * Finds the transitions of m1 in the state m1State, together with the
+	 * filter in the state filterState, in the order the product of m1 and the
+	 * filter had them: for every edge of m1 the transitions of the filter
+	 * reading it, and then the epsilon self loop of m1 (which lets m2 move on
+	 * its own). Epsilon transitions between the same states are merged the way
+	 * NFAGraph.addEdge merges them.
 	 */
-	public static NFAGraph createFilter() {
-		NFAGraph mohriFilter = new NFAGraph();
-		NFAVertexND v0 = new NFAVertexND(0);
-		NFAVertexND v1 = new NFAVertexND(1);
-		NFAVertexND v2 = new NFAVertexND(2);
-
-		mohriFilter.addVertex(v0); /* state 0 */
-		mohriFilter.addVertex(v1); /* state 1 */
-		mohriFilter.addVertex(v2); /* state 2 */
-
-		try {
-			mohriFilter.addEdge(new FilterEdge(v0, v0, "ε2", "ε1"));
-			mohriFilter.addEdge(new FilterEdge(v0, v0, "x", "x"));
-			mohriFilter.addEdge(new FilterEdge(v0, v1, "ε1", "ε1"));
-			mohriFilter.addEdge(new FilterEdge(v0, v2, "ε2", "ε2"));
-
-			mohriFilter.addEdge(new FilterEdge(v1, v1, "ε1", "ε1"));
-			mohriFilter.addEdge(new FilterEdge(v1, v0, "x", "x"));
-
-			mohriFilter.addEdge(new FilterEdge(v2, v2, "ε2", "ε2"));
-			mohriFilter.addEdge(new FilterEdge(v2, v0, "x", "x"));
-			
-		} catch (EmptyTransitionLabelException e1) {
-			throw new RuntimeException("Empty transition label");
+	private static ArrayList<FilterTransition> filterTransitions(NFAGraph m1, NFAVertexND m1State, int filterState) {
+		ArrayList<FilterTransition> transitions = new ArrayList<FilterTransition>();
+		for (NFAEdge currentM1Edge : m1.outgoingEdgesOf(m1State)) {
+			NFAVertexND m1TargetState = currentM1Edge.getTargetVertex();
+			int m1NumParallel = currentM1Edge.getNumParallel();
+			if (!currentM1Edge.getIsEpsilonTransition()) {
+				/* symbol transitions reset the filter */
+				transitions.add(new FilterTransition(FilterTransitionType.SYMBOL, m1TargetState, 0, currentM1Edge.getTransitionLabel(), m1NumParallel));
+				continue;
+			}
+			if (filterState == 0) {
+				addFilterTransition(transitions, new FilterTransition(FilterTransitionType.BOTH_EPSILON, m1TargetState, 0, FILTER_EPSILON_2, m1NumParallel));
+			}
+			if (filterState == 0 || filterState == 2) {
+				addFilterTransition(transitions, new FilterTransition(FilterTransitionType.M1_EPSILON, m1TargetState, 2, FILTER_EPSILON_2, m1NumParallel));
+			}
 		}
-		
+		if (filterState == 0 || filterState == 1) {
+			transitions.add(new FilterTransition(FilterTransitionType.M2_EPSILON, m1State, 1, FILTER_EPSILON_1, 1));
+		}
+		return transitions;
+	}
+
+	private static void addFilterTransition(ArrayList<FilterTransition> transitions, FilterTransition newTransition) {
+		for (FilterTransition ft : transitions) {
+			if (ft.type == newTransition.type && ft.m1TargetState.equals(newTransition.m1TargetState)) {
+				/* if the transition exists increase the number of its parallel transitions */
+				ft.numParallel++;
+				return;
+			}
+		}
+		transitions.add(newTransition);
+	}
 
-		mohriFilter.setInitialState(v0);
+	private enum FilterTransitionType {
+		/* m1 and m2 read a symbol together */
+		SYMBOL,
+		/* m1 and m2 take epsilon transitions together */
+		BOTH_EPSILON,
+		/* m1 takes an epsilon transition while m2 stays in its state */
+		M1_EPSILON,
+		/* m2 takes an epsilon transition while m1 stays in its state */
+		M2_EPSILON
+	}
+
+	/* A transition of m1 together with the filter */
+	private static class FilterTransition {
+
+		private final FilterTransitionType type;
+
+		private final NFAVertexND m1TargetState;
+
+		private final int filterTargetState;
+
+		/* The symbols read, or the label of the product transition for epsilon transitions */
+		private final TransitionLabel word;
 
-		mohriFilter.addAcceptingState(v0);
-		mohriFilter.addAcceptingState(v1);
-		mohriFilter.addAcceptingState(v2);
+		private int numParallel;
 
-		return mohriFilter;
+		private FilterTransition(FilterTransitionType type, NFAVertexND m1TargetState, int filterTargetState, TransitionLabel word, int numParallel) {
+			this.type = type;
+			this.m1TargetState = m1TargetState;
+			this.filterTargetState = filterTargetState;
+			this.word = word;
+			this.numParallel = numParallel;
+		}
 	}
 
-	public static NFAGraph productConstructionAFB(NFAGraph a, NFAGraph b) {
-		NFAGraph m1 = a.copy();
-		NFAGraph m2 = b.copy();
-		NFAGraph f = NFAAnalysisTools.createFilter();
-		NFAAnalysisTools.prepareForFilter(m1, "ε2", "ε1");
-		NFAAnalysisTools.prepareForFilter(m2, "ε1", "ε2");
-		HashMap<NFAEdge, TransitionLabel> originalWords = new HashMap<NFAEdge, TransitionLabel>();
-		NFAGraph af = NFAAnalysisTools.productConstruction(m1, f, originalWords);		
-		return NFAAnalysisTools.productConstruction(af, m2, originalWords);
+	/* A state of the product of m1, the filter and m2, with its vertex */
+	private static class FilterProductState {
+
+		private final NFAVertexND m1State;
+
+		private final int filterState;
+
+		private final NFAVertexND m2State;
+
+		private final NFAVertexND vertex;
+
+		private FilterProductState(NFAVertexND m1State, int filterState, NFAVertexND m2State, NFAVertexND[] filterStates) {
+			this.m1State = m1State;
+			this.filterState = filterState;
+			this.m2State = m2State;
+			/* the dimensions are nested as in the product of the product of m1 and the filter with m2 */
+			this.vertex = new NFAVertexND(new NFAVertexND(m1State, filterStates[filterState]), m2State);
+		}
 	}
 	
 
@@ -121,114 +222,46 @@ public class NFAAnalysisTools {
 	}
 	
 	public static NFAGraph productConstructionAFAFA(NFAGraph m) {
-		NFAGraph m1 = m.copy();
-		NFAGraph m2 = m.copy();
-		NFAGraph f = NFAAnalysisTools.createFilter();
-		NFAAnalysisTools.prepareForFilter(m1, "ε2", "ε1");
-		NFAAnalysisTools.prepareForFilter(m2, "ε1", "ε2");
-		HashMap<NFAEdge, TransitionLabel> originalWords = new HashMap<NFAEdge, TransitionLabel>();
-		NFAGraph af = NFAAnalysisTools.productConstruction(m1, f, originalWords);
-		NFAGraph afa = NFAAnalysisTools.productConstruction(af, m2, originalWords);
-		/*
-		 * Changing the existing epsilon transitions and adding the epsilon self
-		 * loops
-		 */
-		NFAAnalysisTools.prepareForFilter(afa, "ε2", "ε1");
-
-		NFAGraph afaf = NFAAnalysisTools.productConstruction(afa, f, originalWords);
-		NFAGraph afafa = NFAAnalysisTools.productConstruction(afaf, m2, originalWords);
-
-		return afafa;
+		return NFAAnalysisTools.productConstructionAFB(NFAAnalysisTools.productConstructionAFA(m), m);
 	}
 
-	public static NFAGraph productConstruction(NFAGraph m1, NFAGraph m2, HashMap<NFAEdge, TransitionLabel> originalWords) {
-		NFAGraph productConstruction = new NFAGraph();
-
-		NFAVertexND m1SourceState, m2SourceState;
-		m1SourceState = m1.getInitialState();
-		m2SourceState = m2.getInitialState();
-
-		int m1Dimensions = m1SourceState.getNumDimensions();
-		int m2Dimensions = m2SourceState.getNumDimensions();
-		NFAVertexND firstVertex = new NFAVertexND(m1SourceState, m2SourceState);
-
-		LinkedList<NFAVertexND> toVisit = new LinkedList<NFAVertexND>();
-		/* Adding the initial state */
-		toVisit.add(firstVertex);
-		productConstruction.addVertex(firstVertex);
-
-		productConstruction.setInitialState(firstVertex);
-		while (!toVisit.isEmpty()) {
-			NFAVertexND sourceVertex = toVisit.poll();
-			m1SourceState = sourceVertex.getStateByDimensionRange(1, 1 + m1Dimensions);
-			m2SourceState = sourceVertex.getStateByDimensionRange(1 + m1Dimensions, 1 + m1Dimensions + m2Dimensions);
-			/* see if the current vertex is accepting */
-			if (m1.isAcceptingState(m1SourceState) && m2.isAcceptingState(m2SourceState)) {
-				productConstruction.addAcceptingState(sourceVertex);
-			}
-			
-			for (NFAEdge currentM1Edge : m1.outgoingEdgesOf(m1SourceState)) {
-				int m1NumParallel = currentM1Edge.getNumParallel();
-
-				NFAVertexND m1TargetState = currentM1Edge.getTargetVertex();
-				TransitionLabel word = currentM1Edge.getTransitionLabel();
-				
-				TransitionLabel originalWord = word;
-				if (originalWords.containsKey(currentM1Edge)) {
-					/* This edge changed the word, find it's original value */
-					originalWord = originalWords.get(currentM1Edge);
-				}
-				
-				for (NFAEdge currentM2Edge : m2.outgoingEdgesOf(m2SourceState)) {
-					if (!currentM2Edge.isTransitionFor(word)) {
-						/* current edge can't handle word */
-						continue;
-					}
-					
-					
-					int m2NumParallel = currentM2Edge.getNumParallel();
-					NFAVertexND m2TargetState = currentM2Edge.getTargetVertex();
-
-					NFAVertexND targetVertex = new NFAVertexND(m1TargetState, m2TargetState);
-					/* ensure each state is only visited once */
-					if (!productConstruction.containsVertex(targetVertex)) {
-						toVisit.add(targetVertex);
-						productConstruction.addVertex(targetVertex);
-					}
-					
-					NFAEdge newEdge = new NFAEdge(sourceVertex, targetVertex, originalWord);
-					
-					if (isFilterEdge(currentM2Edge)) {
-						/*
-						 * swap out the current character for the filter's
-						 * output character
-						 */
-						FilterEdge fEdge = (FilterEdge) currentM2Edge;
-						if (fEdge.getIsEpsilonTransition()) {
-							/*
-							 * Storing the original name of the edge in the
-							 * outgoing transition character
-							 */
-							newEdge.setTransitionLabel(fEdge.getOutGoingTransitionCharacter());
-							originalWords.put(newEdge, originalWord);
-						}
-					} else {
-						
-						if (!currentM2Edge.getIsEpsilonTransition()) {
-							
-							TransitionLabel tl2 = currentM2Edge.getTransitionLabel();
-							TransitionLabel intersection = originalWord.intersection(tl2);
-							newEdge.setTransitionLabel(intersection);
-						}
-					}
-					newEdge.setNumParallel(m1NumParallel * m2NumParallel);
-					productConstruction.addEdge(newEdge);
+	/**
+	 * Calculates the product construction of a compact NFA using the Mohri
+	 * filter.
+	 * 
+	 * @param m
+	 *            The NFA to get the product construction of.
+	 * @return The product construction, with three dimensional states.
+	 */
+	public static ProductNFA productConstructionAFA(CompactNFA m) {
+		return ProductNFA.productConstructionAFB(m, m);
+	}
 
-				}
+	/**
+	 * Calculates the product construction of a compact NFA using the Mohri
+	 * filter, without the product states containing a state of the NFA that
+	 * is not in a given set.
+	 * 
+	 * @param m
+	 *            The NFA to get the product construction of.
+	 * @param mStates
+	 *            The states of the NFA the product states may contain.
+	 * @return The product construction, with three dimensional states.
+	 */
+	public static ProductNFA productConstructionAFA(CompactNFA m, BitSet mStates) {
+		return ProductNFA.productConstructionAFB(m, m, mStates, mStates);
+	}
 
-			}
-		}
-		return productConstruction;
+	/**
+	 * Calculates the product construction of the product construction of a
+	 * compact NFA with the NFA again, using the Mohri filter.
+	 * 
+	 * @param m
+	 *            The NFA to get the product construction of.
+	 * @return The product construction, with five dimensional states.
+	 */
+	public static ProductNFA productConstructionAFAFA(CompactNFA m) {
+		return ProductNFA.productConstructionAFB(productConstructionAFA(m), m);
 	}
 
 	/* Trims away states not reachable form start */
@@ -247,20 +280,25 @@ public class NFAAnalysisTools {
 		return trimmed;
 	}
 
-	private static void makeTrimFromStartDFS(NFAGraph m, NFAVertexND currentVertex, HashSet<NFAVertexND> usefulStates) {
-		usefulStates.add(currentVertex);
-		for (NFAEdge e : m.outgoingEdgesOf(currentVertex)) {
-			NFAVertexND target = e.getTargetVertex();
-			if (!usefulStates.contains(target)) {
-				makeTrimFromStartDFS(m, target, usefulStates);
+	private static void makeTrimFromStartDFS(NFAGraph m, NFAVertexND startVertex, HashSet<NFAVertexND> usefulStates) {
+		/* an explicit stack, so that long NFAs do not overflow the call stack */
+		LinkedList<NFAVertexND> toVisit = new LinkedList<NFAVertexND>();
+		usefulStates.add(startVertex);
+		toVisit.push(startVertex);
+		while (!toVisit.isEmpty()) {
+			NFAVertexND currentVertex = toVisit.pop();
+			for (NFAEdge e : m.outgoingEdgesOf(currentVertex)) {
+				NFAVertexND target = e.getTargetVertex();
+				if (usefulStates.add(target)) {
+					toVisit.push(target);
+				}
 			}
 		}
 	}
 
 	/**
-	 * Removes all useless states from an NFA graph. This is done recursively by
-	 * determining whether each vertex is connected to a useful vertex,
-	 * recursively.
+	 * Removes all useless states from an NFA graph. This is done by
+	 * determining whether each vertex is connected to a useful vertex.
 	 * 
 	 * @param m
 	 *            The NFA graph to remove all useless states from.
@@ -289,51 +327,65 @@ public class NFAAnalysisTools {
 	}
 
 	/**
-	 * A function used recursively to determine whether a state is useful.
+	 * A function used to determine whether a state is useful, by searching
+	 * the states reachable from it for a useful state.
 	 * 
 	 * @param m
 	 *            The graph containing the state
-	 * @param currentVertex
-	 *            The current state being considered.
+	 * @param startVertex
+	 *            The state being considered.
 	 * @param visited
 	 *            A map containing all visited states to prevent loops.
 	 * @return True if the state is useful, false if not.
 	 */
-	static boolean makeTrimIsUseful(NFAGraph m, NFAVertexND currentVertex, HashSet<NFAVertexND> visited, HashSet<NFAVertexND> usefulStates) {
-
-		if (usefulStates.contains(currentVertex)) {
-			/* the current vertex is useful */
-			return true;
-		}
-
-		if (visited.contains(currentVertex)) {
-			/* The current vertex is not useful, and has been visited before. */
-			return false;
-		} else {
-			visited.add(currentVertex);
-		}
-		boolean result = false;
-
-		for (NFAEdge currentEdge : m.outgoingEdgesOf(currentVertex)) {
-			/* See if any of the adjacent vertices are useful */
-			result |= makeTrimIsUseful(m, currentEdge.getTargetVertex(), visited, usefulStates);
-			if (result) {
+	static boolean makeTrimIsUseful(NFAGraph m, NFAVertexND startVertex, HashSet<NFAVertexND> visited, HashSet<NFAVertexND> usefulStates) {
+		LinkedList<NFAVertexND> toVisit = new LinkedList<NFAVertexND>();
+		toVisit.push(startVertex);
+		while (!toVisit.isEmpty()) {
+			NFAVertexND currentVertex = toVisit.pop();
+			if (usefulStates.contains(currentVertex)) {
+				/* the current vertex is useful */
 				return true;
 			}
+			if (!visited.add(currentVertex)) {
+				/* The current vertex is not useful, and has been visited before. */
+				continue;
+			}
+			/* See if any of the adjacent vertices are useful */
+			for (NFAEdge currentEdge : m.outgoingEdgesOf(currentVertex)) {
+				toVisit.push(currentEdge.getTargetVertex());
+			}
 		}
 
-		return result;
+		return false;
 	}
 	
-	public static NFAGraph makeTrimUPNFA(NFAGraph m, NFAGraph upnfa) {
+	/**
+	 * Removes the states of an UP-NFA that cannot lead to acceptance.
+	 * 
+	 * @param m
+	 *            The NFA the UP-NFA was constructed of.
+	 * @param upnfa
+	 *            The UP-NFA.
+	 * @param maxSubsets
+	 *            The largest number of subsets of states of m to search.
+	 * @return The trimmed UP-NFA, or null if deciding which states lead to
+	 *         acceptance takes more subsets than maxSubsets.
+	 */
+	public static NFAGraph makeTrimUPNFA(NFAGraph m, NFAGraph upnfa, int maxSubsets) {
 		HashSet<NFAVertexND> usefulStates = new HashSet<NFAVertexND>();
+		/* the states with the same set P share the subset search */
+		CoAcceptanceOracle oracle = new CoAcceptanceOracle(m, maxSubsets);
 		
 		for (NFAVertexND v : upnfa.vertexSet()) {
 			UPNFAState upNFAState = (UPNFAState) v;
 			
-			if (upNFAStateIsUseful(m, upnfa, upNFAState)) {
+			if (upNFAStateIsUseful(oracle, upNFAState)) {
 				usefulStates.add(upNFAState);
 			}
+			if (oracle.exceededBudget()) {
+				return null;
+			}
 			
 		}
 		
@@ -350,70 +402,14 @@ public class NFAAnalysisTools {
 		return trimmedUPNFA;
 	}
 	
-	public static boolean upNFAStateIsUseful(NFAGraph m, NFAGraph upnfa, UPNFAState upNFAState) {
-		HashSet<TransitionLabel> alphabet = new HashSet<TransitionLabel>();
-		alphabet.add(CharacterClassTransitionLabel.wildcardLabel());
-		HashSet<NFAVertexND> P = (HashSet<NFAVertexND>) upNFAState.getP();
-		TransitionLabel higherPrioritySymbols = new CharacterClassTransitionLabel();
-		boolean containsAcceptState = false;
-		for (NFAVertexND p : P) {
-			if (m.isAcceptingState(p)) {				
-				containsAcceptState = true;
-			}
-			Set<NFAEdge> outgoingEdges = m.outgoingEdgesOf(p);
-			for (NFAEdge e : outgoingEdges) {
-				if (!e.getIsEpsilonTransition()) {
-					higherPrioritySymbols = higherPrioritySymbols.union(e.getTransitionLabel());
-				}						
-			}
-		}
-		
-		if (!containsAcceptState || !higherPrioritySymbols.complement().isEmpty()) {
-			return true;
-		} else {
-			Iterator<NFAVertexND> i0 = P.iterator();
-			NFAVertexND p = i0.next();
-			HashSet<NFAVertexND> reachableFromStart = new HashSet<NFAVertexND>(P);
-			NFAGraph intersectionDfa = NFAAnalysisTools.determinize(m, reachableFromStart, alphabet);
-			intersectionDfa = complementDfa(intersectionDfa);
-			
-			/* Try to reach an accept state */
-			Stack<NFAVertexND> toVisit = new Stack<NFAVertexND>();
-			HashSet<NFAVertexND> visited = new HashSet<NFAVertexND>();
-			toVisit.push(intersectionDfa.getInitialState());
-			while (!toVisit.isEmpty()) {
-				NFAVertexND currentState = toVisit.pop();
-				
-				if (intersectionDfa.isAcceptingState(currentState)) {
-					return true;
-				} else {
-					Set<NFAEdge> outgoingEdges = intersectionDfa.outgoingEdgesOf(currentState);
-					for (NFAEdge e : outgoingEdges) {
-						NFAVertexND targetVertex = e.getTargetVertex();
-						if (!visited.contains(targetVertex)) {
-							toVisit.push(targetVertex);
-							visited.add(targetVertex);
-						}							
-					}
-					
-				}
-			}
-		}
-		return false;
-	}
-	
-	public static NFAGraph complementDfa(NFAGraph dfa) {
-		NFAGraph resultGraph = dfa.copy();
-		/* swapping final and nonfinal states */
-		for (NFAVertexND currentState : dfa.vertexSet()) {
-			if (dfa.isAcceptingState(currentState)) {
-				resultGraph.removeAcceptingState(currentState);
-			} else {
-				resultGraph.addAcceptingState(currentState);
-			}
-		}
-		return resultGraph;
-		
+	/**
+	 * @param oracle
+	 *            The oracle of the NFA the UP-NFA was constructed of, shared
+	 *            by all the states of the UP-NFA.
+	 * @return True if the state can still lead to acceptance.
+	 */
+	static boolean upNFAStateIsUseful(CoAcceptanceOracle oracle, UPNFAState upNFAState) {
+		return oracle.rejectsSomeWord(upNFAState.getNumbering(), upNFAState.getPSet());
 	}
 
 
@@ -429,9 +425,9 @@ public class NFAAnalysisTools {
 	 */
 	public static NFAGraph makeTrim(NFAGraph m) {
 		NFAGraph trimmed = m.copy();
-		NFAGraph reversedGraph = m.reverse();
+		Graph<NFAVertexND, NFAEdge> reversedGraph = NFAGraphViews.reversed(m);
 
-		HashSet<NFAVertexND> usefulStates = makeTrimReachable(reversedGraph, reversedGraph.getAcceptingStates());
+		HashSet<NFAVertexND> usefulStates = makeTrimReachable(reversedGraph, m.getAcceptingStates());
 
 		for (NFAVertexND v : m.vertexSet()) {
 			if (!usefulStates.contains(v)) {
@@ -445,19 +441,19 @@ public class NFAAnalysisTools {
 		return trimmed;
 	}
 	
-	private static HashSet<NFAVertexND> makeTrimReachable(NFAGraph reversedGraph, Set<NFAVertexND> defaultUsefulStates) {
+	private static HashSet<NFAVertexND> makeTrimReachable(Graph<NFAVertexND, NFAEdge> reversedGraph, Set<NFAVertexND> defaultUsefulStates) {
 		
-		HashSet<NFAVertexND> usefulStates = new HashSet<NFAVertexND>();
+		/* the states are marked when they are pushed, so that each is pushed once */
+		HashSet<NFAVertexND> usefulStates = new HashSet<NFAVertexND>(defaultUsefulStates);
 		LinkedList<NFAVertexND> toVisit = new LinkedList<NFAVertexND>(defaultUsefulStates);
 
 		while (!toVisit.isEmpty()) {
 			NFAVertexND currentVertex = toVisit.pop();
-			usefulStates.add(currentVertex);
 			for (NFAEdge outGoingEdge : reversedGraph.outgoingEdgesOf(currentVertex)) {
-				NFAVertexND targetVertex = outGoingEdge.getTargetVertex();
-				if (!usefulStates.contains(targetVertex) && !toVisit.contains(targetVertex)) {
+				/* the edges of the reversed view keep their own direction */
+				NFAVertexND targetVertex = reversedGraph.getEdgeTarget(outGoingEdge);
+				if (usefulStates.add(targetVertex)) {
 					toVisit.push(targetVertex);
-
 				}
 			}
 		}
@@ -469,7 +465,7 @@ public class NFAAnalysisTools {
 		HashMap<UPNFAState, NFAVertexND> stateMap = new HashMap<UPNFAState, NFAVertexND>();
 		
 		int stateCounter = 0;
-		NFAGraph resultGraph = new NFAGraph();
+		NFAGraph.Builder resultGraph = new NFAGraph.Builder();
 		for (NFAVertexND v : m.vertexSet()) {
 			NFAVertexND correspondingState = new NFAVertexND("q" + stateCounter);
 			stateMap.put((UPNFAState) v, correspondingState);
@@ -489,10 +485,10 @@ public class NFAAnalysisTools {
 			NFAVertexND newTarget = stateMap.get(targetState);
 			TransitionLabel transitionLabel = e.getTransitionLabel();
 			NFAEdge newEdge = new NFAEdge(newSource, newTarget, transitionLabel);
-			resultGraph.addEdge(newEdge);
+			resultGraph.appendEdge(newEdge);
 		}
 		
-		return resultGraph;
+		return resultGraph.build();
 	}
 	
 	
@@ -507,45 +503,258 @@ public class NFAAnalysisTools {
 	 * 			  The maximum complexity to compute
 	 * @return A list containing all the strongly connected components or null when graph is too complex.
 	 */
-	public static LinkedList<NFAGraph> getStronglyConnectedComponents(NFAGraph m, int maxComplexity, AtomicInteger maxSeenComplexity) {
+	public static LinkedList<NFAGraph> getStronglyConnectedComponents(Graph<NFAVertexND, NFAEdge> m, int maxComplexity, AtomicInteger maxSeenComplexity) {
+		LinkedList<Graph<NFAVertexND, NFAEdge>> sccs = getStronglyConnectedComponentViews(m, maxComplexity, maxSeenComplexity);
+		if (sccs == null) {
+			return null;
+		}
+		LinkedList<NFAGraph> sccNFAs = new LinkedList<NFAGraph>();
+		for (Graph<NFAVertexND, NFAEdge> scc : sccs) {
+			sccNFAs.add(NFAGraphViews.toNFAGraph(scc));
+		}
+		return sccNFAs;
+	}
+
+	/**
+	 * Constructs a list of read-only views of the strongly connected
+	 * components in the graph given as parameter, without copying their
+	 * vertices or edges.
+	 * 
+	 * @param m
+	 *            The graph to find the strongly connected components in.
+	 * @param maxComplexity
+	 * 			  The maximum complexity to compute
+	 * @return A list containing all the strongly connected components with at
+	 *         least one edge, or null when graph is too complex.
+	 */
+	public static LinkedList<Graph<NFAVertexND, NFAEdge>> getStronglyConnectedComponentViews(Graph<NFAVertexND, NFAEdge> m, int maxComplexity, AtomicInteger maxSeenComplexity) {
 		KosarajuStrongConnectivityInspector<NFAVertexND, NFAEdge> sci = new KosarajuStrongConnectivityInspector<NFAVertexND, NFAEdge>(m);
 		List<Graph<NFAVertexND, NFAEdge>> sccs = sci.getStronglyConnectedComponents();
-		if (maxSeenComplexity != null && sccs.size() > maxSeenComplexity.get()) {
-			maxSeenComplexity.set(sccs.size());
-		}
-		if (sccs.size() > maxComplexity) {
+		if (isTooComplex(sccs.size(), maxComplexity, maxSeenComplexity)) {
 			return null;
 		}
-		LinkedList<NFAGraph> sccNFAs = new LinkedList<NFAGraph>();
+		LinkedList<Graph<NFAVertexND, NFAEdge>> sccViews = new LinkedList<Graph<NFAVertexND, NFAEdge>>();
 
 		for (Graph<NFAVertexND, NFAEdge> scc : sccs) {
 			/* scc's consisting of no edges are irrelevant for our purpose */
 			if (scc.edgeSet().size() > 0) {
+				sccViews.add(scc);
+			}
 
-				NFAGraph currentNFAG = new NFAGraph();
-				for (NFAVertexND v : scc.vertexSet()) {
-					currentNFAG.addVertex(v);
-				}
-				for (NFAEdge e : scc.edgeSet()) {
-					currentNFAG.addEdge(e);
-				}
+		}
+		return sccViews;
+	}
 
-				sccNFAs.add(currentNFAG);
-			}
+	/**
+	 * Constructs a list of NFA graphs each representing a strongly connected
+	 * component in the compact NFA given as parameter.
+	 * 
+	 * @param m
+	 *            The compact NFA to find the strongly connected components in.
+	 * @param maxComplexity
+	 * 			  The maximum complexity to compute
+	 * @return A list containing all the strongly connected components or null when graph is too complex.
+	 */
+	public static LinkedList<NFAGraph> getStronglyConnectedComponents(CompactNFA m, int maxComplexity, AtomicInteger maxSeenComplexity) {
+		return getStronglyConnectedComponents(m, false, maxComplexity, maxSeenComplexity);
+	}
+
+	private static LinkedList<NFAGraph> getStronglyConnectedComponents(CompactNFA m, boolean epsilonOnly, int maxComplexity, AtomicInteger maxSeenComplexity) {
+		int[] component = new int[m.getNumStates()];
+		int numComponents = stronglyConnectedComponents(m, epsilonOnly, component);
+		if (isTooComplex(numComponents, maxComplexity, maxSeenComplexity)) {
+			return null;
+		}
 
+		BitSet[] componentStates = componentStatesWithEdges(m, epsilonOnly, component, numComponents);
+		LinkedList<NFAGraph> sccNFAs = new LinkedList<NFAGraph>();
+		for (BitSet states : componentStates) {
+			/* scc's consisting of no edges are irrelevant for our purpose */
+			if (states != null) {
+				sccNFAs.add(m.toNFAGraph(states, epsilonOnly));
+			}
 		}
 		return sccNFAs;
 	}
 
 	/**
-	 * Determines whether the specified edge is a filter edge.
+	 * Numbers the strongly connected components of a compact NFA with
+	 * Tarjan's algorithm. The components are numbered in reverse topological
+	 * order.
 	 * 
-	 * @param e
-	 *            The edge specified.
-	 * @return True if the edge is a filter edge, false if not.
+	 * @param m
+	 *            The compact NFA to find the strongly connected components in.
+	 * @param epsilonOnly
+	 *            True if only the epsilon edges should be considered.
+	 * @param component
+	 *            An array, with an entry for every state, in which the number
+	 *            of the component of each state is stored.
+	 * @return The number of strongly connected components.
 	 */
-	private static boolean isFilterEdge(NFAEdge e) {
-		return FilterEdge.class.isAssignableFrom(e.getClass());
+	static int stronglyConnectedComponents(CompactNFA m, boolean epsilonOnly, int[] component) {
+		int numStates = m.getNumStates();
+		int[] successorStart = new int[numStates];
+		int[] successorEnd = new int[numStates];
+		int[] successors = new int[m.getNumEdges()];
+		for (int s = 0; s < numStates; s++) {
+			successorStart[s] = epsilonOnly ? m.getEpsilonStart(s) : m.getOutgoingStart(s);
+			successorEnd[s] = m.getOutgoingEnd(s);
+		}
+		for (int e = 0; e < successors.length; e++) {
+			successors[e] = m.getEdgeTarget(e);
+		}
+		return stronglyConnectedComponents(numStates, successorStart, successorEnd, successors, component);
+	}
+
+	/**
+	 * Numbers the strongly connected components of a graph with Tarjan's
+	 * algorithm, from the roots and along the edges in the order of their
+	 * numbers. The components are numbered in reverse topological order.
+	 * 
+	 * @param numStates
+	 *            The number of states of the graph.
+	 * @param successorStart
+	 *            The start of the successors of every state.
+	 * @param successorEnd
+	 *            The end of the successors of every state, the successors of
+	 *            s being successors[successorStart[s]] up to (but not
+	 *            including) successors[successorEnd[s]].
+	 * @param successors
+	 *            The targets of the edges, -1 for edges to leave out.
+	 * @param component
+	 *            An array, with an entry for every state, in which the number
+	 *            of the component of each state is stored.
+	 * @return The number of strongly connected components.
+	 */
+	static int stronglyConnectedComponents(int numStates, int[] successorStart, int[] successorEnd, int[] successors, int[] component) {
+		int[] index = new int[numStates];
+		int[] lowLink = new int[numStates];
+		Arrays.fill(index, -1);
+		boolean[] onStack = new boolean[numStates];
+		int[] stack = new int[numStates];
+		int stackSize = 0;
+		/* the explicit call stack, with the next successor to explore from each state */
+		int[] callStack = new int[numStates];
+		int[] nextSuccessor = new int[numStates];
+		int callStackSize = 0;
+
+		int counter = 0;
+		int numComponents = 0;
+		for (int root = 0; root < numStates; root++) {
+			if (index[root] != -1) {
+				continue;
+			}
+			index[root] = lowLink[root] = counter++;
+			stack[stackSize++] = root;
+			onStack[root] = true;
+			callStack[callStackSize++] = root;
+			nextSuccessor[root] = successorStart[root];
+			while (callStackSize > 0) {
+				int v = callStack[callStackSize - 1];
+				if (nextSuccessor[v] < successorEnd[v]) {
+					int w = successors[nextSuccessor[v]++];
+					if (w == -1) {
+						continue;
+					}
+					if (index[w] == -1) {
+						index[w] = lowLink[w] = counter++;
+						stack[stackSize++] = w;
+						onStack[w] = true;
+						callStack[callStackSize++] = w;
+						nextSuccessor[w] = successorStart[w];
+					} else if (onStack[w] && index[w] < lowLink[v]) {
+						lowLink[v] = index[w];
+					}
+				} else {
+					callStackSize--;
+					if (lowLink[v] == index[v]) {
+						int w;
+						do {
+							w = stack[--stackSize];
+							onStack[w] = false;
+							component[w] = numComponents;
+						} while (w != v);
+						numComponents++;
+					}
+					if (callStackSize > 0) {
+						int u = callStack[callStackSize - 1];
+						if (lowLink[v] < lowLink[u]) {
+							lowLink[u] = lowLink[v];
+						}
+					}
+				}
+			}
+		}
+		return numComponents;
+	}
+
+	/*
+	 * Returns the states of every component containing at least one edge, and
+	 * null for every component without edges.
+	 */
+	static BitSet[] componentStatesWithEdges(CompactNFA m, boolean epsilonOnly, int[] component, int numComponents) {
+		BitSet[] componentStates = new BitSet[numComponents];
+		for (int s = 0; s < m.getNumStates(); s++) {
+			int from = epsilonOnly ? m.getEpsilonStart(s) : m.getOutgoingStart(s);
+			for (int e = from; e < m.getOutgoingEnd(s); e++) {
+				if (component[m.getEdgeTarget(e)] == component[s]) {
+					componentStates[component[s]] = new BitSet();
+					break;
+				}
+			}
+		}
+		for (int s = 0; s < m.getNumStates(); s++) {
+			if (componentStates[component[s]] != null) {
+				componentStates[component[s]].set(s);
+			}
+		}
+		return componentStates;
+	}
+
+	/**
+	 * Finds the states of a compact NFA that can reach a state in a strongly
+	 * connected component containing at least one edge, including those
+	 * states themselves. A state of a product of the NFA can only lie inside
+	 * a cycle of the product if its states in the NFA are among them.
+	 */
+	static BitSet statesReachingCycles(CompactNFA m) {
+		int[] component = new int[m.getNumStates()];
+		int numComponents = stronglyConnectedComponents(m, false, component);
+		BitSet cycleStates = new BitSet(m.getNumStates());
+		for (BitSet componentStates : componentStatesWithEdges(m, false, component, numComponents)) {
+			if (componentStates != null) {
+				cycleStates.or(componentStates);
+			}
+		}
+		return statesReaching(m, cycleStates);
+	}
+
+	/* Searches backwards from the target states along the incoming edges */
+	private static BitSet statesReaching(CompactNFA m, BitSet targets) {
+		BitSet reaching = (BitSet) targets.clone();
+		int[] toVisit = new int[m.getNumStates()];
+		int numToVisit = 0;
+		for (int s = targets.nextSetBit(0); s >= 0; s = targets.nextSetBit(s + 1)) {
+			toVisit[numToVisit++] = s;
+		}
+		while (numToVisit > 0) {
+			int s = toVisit[--numToVisit];
+			for (int i = m.getIncomingStart(s); i < m.getIncomingEnd(s); i++) {
+				int source = m.getEdgeSource(m.getIncomingEdge(i));
+				if (!reaching.get(source)) {
+					reaching.set(source);
+					toVisit[numToVisit++] = source;
+				}
+			}
+		}
+		return reaching;
+	}
+
+	static boolean isTooComplex(int complexity, int maxComplexity, AtomicInteger maxSeenComplexity) {
+		if (maxSeenComplexity != null && complexity > maxSeenComplexity.get()) {
+			maxSeenComplexity.set(complexity);
+		}
+		return complexity > maxComplexity;
 	}
 
 	/* ============= EDA TOOLS ============= */
@@ -563,19 +772,28 @@ public class NFAAnalysisTools {
 	 *         only epsilon transitions between the states, or null when graph is too complex.
 	 */
 	public static LinkedList<NFAGraph> getEpsilonStronglyConnectedComponents(NFAGraph m, int maxComplexity, AtomicInteger maxSeenComplexity) {
-		NFAGraph epsilonGraph = m.copy();
-
-		/* iterating over m's edge set so we can modify epsilonGraph's edges */
-		for (NFAEdge e : m.edgeSet()) {
-			/* removing all edges that aren't epsilon transitions */
-			if (!e.getIsEpsilonTransition()) {
-				epsilonGraph.removeEdge(e);
-			}
-		}
+		/* only the epsilon transitions are visible in the view */
+		Graph<NFAVertexND, NFAEdge> epsilonGraph = NFAGraphViews.withTransitionType(m, TransitionType.EPSILON);
 
 		return getStronglyConnectedComponents(epsilonGraph, maxComplexity, maxSeenComplexity);
 	}
 
+	/**
+	 * Constructs a list of NFA graphs each representing a strongly connected
+	 * component containing only epsilon transitions in the compact NFA given
+	 * as parameter.
+	 * 
+	 * @param m
+	 *            The compact NFA to find the strongly connected components in.
+	 * @param maxComplexity
+	 * 			  The maximum complexity to compute
+	 * @return A list containing all the strongly connected components, with
+	 *         only epsilon transitions between the states, or null when graph is too complex.
+	 */
+	public static LinkedList<NFAGraph> getEpsilonStronglyConnectedComponents(CompactNFA m, int maxComplexity, AtomicInteger maxSeenComplexity) {
+		return getStronglyConnectedComponents(m, true, maxComplexity, maxSeenComplexity);
+	}
+
 	/**
 	 * Creates a single state for each strongly connected component.
 	 * 
@@ -664,62 +882,293 @@ public class NFAAnalysisTools {
 		return mergedStates;
 	}
 
+	/**
+	 * Constructs a compact NFA in which every strongly connected component of
+	 * the compact NFA given as parameter is merged into a single state.
+	 * 
+	 * @param m
+	 *            The compact NFA to merge the strongly connected components
+	 *            in.
+	 * @param epsilon
+	 *            True if only epsilon strongly connected components should be
+	 *            merged, false if all strongly connected components should be
+	 *            merged.
+	 * @param maxComplexity
+	 * 			  The maximum complexity to compute
+	 * @param mergedStates
+	 *            A map in which the merged states are stored as key, with the
+	 *            vertices of the original scc as value.
+	 * @return The merged compact NFA, or null when graph is too complex.
+	 */
+	public static CompactNFA mergeStronglyConnectedComponents(CompactNFA m, boolean epsilon, int maxComplexity, AtomicInteger maxSeenComplexity, Map<NFAVertexND, Set<NFAVertexND>> mergedStates) {
+		int numStates = m.getNumStates();
+		int[] component = new int[numStates];
+		int numComponents = stronglyConnectedComponents(m, epsilon, component);
+		if (isTooComplex(numComponents, maxComplexity, maxSeenComplexity)) {
+			return null;
+		}
+		BitSet[] componentStates = componentStatesWithEdges(m, epsilon, component, numComponents);
+
+		CompactNFA.Builder merged = new CompactNFA.Builder();
+		int[] newStateNumbers = new int[numStates];
+		int[] mergedStateNumbers = new int[numComponents];
+		Arrays.fill(mergedStateNumbers, -1);
+		for (int s = 0; s < numStates; s++) {
+			int c = component[s];
+			if (componentStates[c] == null) {
+				newStateNumbers[s] = merged.addState(m.getVertex(s));
+			} else {
+				if (mergedStateNumbers[c] == -1) {
+					NFAVertexND mergedState = new NFAVertexND(m.getVertex(s).getStateNumberByDimension(1));
+					mergedStateNumbers[c] = merged.addState(mergedState);
+					HashSet<NFAVertexND> sccVertices = new HashSet<NFAVertexND>();
+					BitSet sccStates = componentStates[c];
+					for (int v = sccStates.nextSetBit(0); v >= 0; v = sccStates.nextSetBit(v + 1)) {
+						sccVertices.add(m.getVertex(v));
+					}
+					mergedStates.put(mergedState, sccVertices);
+				}
+				newStateNumbers[s] = mergedStateNumbers[c];
+			}
+		}
+		/* the merged state is initial or accepting if any state in the scc is */
+		if (m.getInitialState() >= 0) {
+			merged.setInitialState(newStateNumbers[m.getInitialState()]);
+		}
+		for (int s = 0; s < numStates; s++) {
+			if (m.isAcceptingState(s)) {
+				merged.addAcceptingState(newStateNumbers[s]);
+			}
+		}
+
+		for (int e = 0; e < m.getNumEdges(); e++) {
+			int source = m.getEdgeSource(e);
+			int target = m.getEdgeTarget(e);
+			boolean sourceMerged = componentStates[component[source]] != null;
+			boolean targetMerged = componentStates[component[target]] != null;
+			if (!sourceMerged && !targetMerged) {
+				/* edges between unmerged states cannot become parallel to other edges */
+				merged.appendEdge(newStateNumbers[source], newStateNumbers[target], m.getEdgeLabel(e), m.getEdgeNumParallel(e));
+			} else if (component[source] != component[target] || (epsilon && !m.isEpsilonEdge(e))) {
+				/* symbol transitions between vertices in an escc become self loops on the merged state */
+				merged.addEdge(newStateNumbers[source], newStateNumbers[target], m.getEdgeLabel(e), m.getEdgeNumParallel(e));
+			}
+		}
+
+		return merged.build();
+	}
+
 	/**
 	 * Determines the number of walks between a vertex and all other vertices in
-	 * a given graph.
+	 * a given graph, where a walk traverses every edge, and every one of the
+	 * parallel edges it stands for, at most once. Only whether there is no
+	 * walk, one walk or more than one walk is determined, so the number of
+	 * walks saturates at 2.
 	 * 
 	 * @param m
 	 *            The graph to count the walks in.
 	 * @param s
 	 *            The starting vertex.
 	 * @return A HashMap containing every destination vertex as key and the
-	 *         number of walks to this vertex as value.
+	 *         number of walks to this vertex, 0, 1 or 2 for two or more, as
+	 *         value.
 	 */
-	public static HashMap<NFAVertexND, Integer> numWalksFrom(NFAGraph m, NFAVertexND s) {
-		HashMap<NFAVertexND, Integer> paths = new HashMap<NFAVertexND, Integer>();
-		/* initialise all paths */
+	public static HashMap<NFAVertexND, Integer> numWalksFrom(Graph<NFAVertexND, NFAEdge> m, NFAVertexND s) {
+		HashMap<NFAVertexND, Integer> vertexNumbers = new HashMap<NFAVertexND, Integer>();
 		for (NFAVertexND v : m.vertexSet()) {
-			paths.put(v, 0);
+			vertexNumbers.put(v, vertexNumbers.size());
 		}
-		HashMap<NFAEdge, Integer> visitedEdges = new HashMap<NFAEdge, Integer>();
-		/* set the number of times each edge has been visited to 0 */
-		for (NFAEdge e : m.edgeSet()) {
-			visitedEdges.put(e, 0);
+		Set<NFAEdge> edges = m.edgeSet();
+		int[] edgeSources = new int[edges.size()];
+		int[] edgeTargets = new int[edges.size()];
+		boolean[] edgeIsParallel = new boolean[edges.size()];
+		int numEdges = 0;
+		for (NFAEdge e : edges) {
+			edgeSources[numEdges] = vertexNumbers.get(e.getSourceVertex());
+			edgeTargets[numEdges] = vertexNumbers.get(e.getTargetVertex());
+			edgeIsParallel[numEdges] = e.getNumParallel() > 1;
+			numEdges++;
+		}
+		int[] numWalks = new WalkCounter(vertexNumbers.size(), edgeSources, edgeTargets, edgeIsParallel).numWalksFrom(vertexNumbers.get(s));
+
+		HashMap<NFAVertexND, Integer> paths = new HashMap<NFAVertexND, Integer>();
+		for (NFAVertexND v : m.vertexSet()) {
+			paths.put(v, numWalks[vertexNumbers.get(v)]);
 		}
-		NFAAnalysisTools.numWalksFromSearch(m, s, visitedEdges, paths);
 		return paths;
 	}
 
-	/**
-	 * A function to recursively determine the number of walks between a vertex
-	 * and all other vertices in a given graph.
-	 * 
-	 * @param m
-	 *            The graph to count the walks in.
-	 * @param current
-	 *            The starting vertex.
-	 * @param visitedEdges
-	 *            A HashMap containing all the edges as key and the current
-	 *            number of times they have been visited as value.
-	 * @param paths
-	 *            A HashMap containing all the vertices as key and the current
-	 *            number of walks to them as value.
+	/*
+	 * Decides whether there is more than one walk from s to t, without
+	 * enumerating them. Any walk from s to t contains a path from s to t, and
+	 * the edges it has left over form cycles, one of which shares a vertex
+	 * with the path. So for a shortest path P from s to t there is a second
+	 * walk if and only if one of the edges of P stands for parallel edges,
+	 * some vertex of P lies on a cycle that has no edges in common with P, or
+	 * there is a second path, leaving P at some vertex p and reaching t
+	 * without visiting p or any vertex before it on P again.
 	 */
-	static void numWalksFromSearch(NFAGraph m, NFAVertexND current, HashMap<NFAEdge, Integer> visitedEdges, HashMap<NFAVertexND, Integer> paths) {
-		/* update the number of paths to the current vertex */
-		paths.put(current, paths.get(current) + 1);
-
-		for (NFAEdge e : m.outgoingEdgesOf(current)) {
-			int currentNumVisit = visitedEdges.get(e);
-			/* update the number of times this edge has been visited */
-			visitedEdges.put(e, currentNumVisit + 1);
-			/* for the amount of times the edge can be visited again */
-			for (int i = currentNumVisit; i < e.getNumParallel(); i++) {
-				/* search from the new vertex */
-				numWalksFromSearch(m, e.getTargetVertex(), visitedEdges, paths);
+	private static class WalkCounter {
+
+		private final int numVertices;
+
+		private final int[] edgeSources;
+
+		private final int[] edgeTargets;
+
+		private final boolean[] edgeIsParallel;
+
+		/* The edges from v are outgoing[outgoingStart[v]] up to outgoing[outgoingStart[v + 1]], and the edges to v the same in incoming */
+		private final int[] outgoingStart;
+		private final int[] outgoing;
+		private final int[] incomingStart;
+		private final int[] incoming;
+
+		private WalkCounter(int numVertices, int[] edgeSources, int[] edgeTargets, boolean[] edgeIsParallel) {
+			this.numVertices = numVertices;
+			this.edgeSources = edgeSources;
+			this.edgeTargets = edgeTargets;
+			this.edgeIsParallel = edgeIsParallel;
+			outgoingStart = new int[numVertices + 1];
+			incomingStart = new int[numVertices + 1];
+			for (int e = 0; e < edgeSources.length; e++) {
+				outgoingStart[edgeSources[e] + 1]++;
+				incomingStart[edgeTargets[e] + 1]++;
+			}
+			for (int v = 0; v < numVertices; v++) {
+				outgoingStart[v + 1] += outgoingStart[v];
+				incomingStart[v + 1] += incomingStart[v];
+			}
+			outgoing = new int[edgeSources.length];
+			incoming = new int[edgeSources.length];
+			int[] numOutgoing = new int[numVertices];
+			int[] numIncoming = new int[numVertices];
+			for (int e = 0; e < edgeSources.length; e++) {
+				outgoing[outgoingStart[edgeSources[e]] + numOutgoing[edgeSources[e]]++] = e;
+				incoming[incomingStart[edgeTargets[e]] + numIncoming[edgeTargets[e]]++] = e;
 			}
-			/* unvisit the current edge */
-			visitedEdges.put(e, currentNumVisit);
+		}
+
+		private int[] numWalksFrom(int s) {
+			/* a shortest path from s to every vertex, by the edge it enters the vertex with */
+			int[] pathEdge = new int[numVertices];
+			Arrays.fill(pathEdge, -1);
+			boolean[] reached = new boolean[numVertices];
+			int[] queue = new int[numVertices];
+			int head = 0;
+			int tail = 0;
+			reached[s] = true;
+			queue[tail++] = s;
+			while (head < tail) {
+				int v = queue[head++];
+				for (int i = outgoingStart[v]; i < outgoingStart[v + 1]; i++) {
+					int t = edgeTargets[outgoing[i]];
+					if (!reached[t]) {
+						reached[t] = true;
+						pathEdge[t] = outgoing[i];
+						queue[tail++] = t;
+					}
+				}
+			}
+
+			int[] numWalks = new int[numVertices];
+			for (int t = 0; t < numVertices; t++) {
+				if (reached[t]) {
+					numWalks[t] = hasSecondWalk(s, t, pathEdge) ? 2 : 1;
+				}
+			}
+			return numWalks;
+		}
+
+		private boolean hasSecondWalk(int s, int t, int[] pathEdge) {
+			/* the path p_0 = s, ..., p_length = t, edge i leading from p_i to p_i+1 */
+			int length = 0;
+			for (int v = t; v != s; v = edgeSources[pathEdge[v]]) {
+				length++;
+			}
+			int[] pathVertices = new int[length + 1];
+			int[] pathEdges = new int[length];
+			boolean[] edgeOnPath = new boolean[edgeSources.length];
+			pathVertices[length] = t;
+			for (int i = length - 1; i >= 0; i--) {
+				pathEdges[i] = pathEdge[pathVertices[i + 1]];
+				pathVertices[i] = edgeSources[pathEdges[i]];
+				if (edgeIsParallel[pathEdges[i]]) {
+					return true;
+				}
+				edgeOnPath[pathEdges[i]] = true;
+			}
+
+			boolean[] onCycle = verticesOnCycles(edgeOnPath);
+			for (int v : pathVertices) {
+				if (onCycle[v]) {
+					return true;
+				}
+			}
+
+			/*
+			 * Going back along the path from t, with the vertices that reach t
+			 * without visiting p_0, ..., p_i, to which a path leaving the path
+			 * at p_i can lead.
+			 */
+			boolean[] excluded = new boolean[numVertices];
+			for (int i = 0; i < length; i++) {
+				excluded[pathVertices[i]] = true;
+			}
+			boolean[] reachesT = new boolean[numVertices];
+			int[] stack = new int[numVertices];
+			int stackSize = 0;
+			reachesT[t] = true;
+			stack[stackSize++] = t;
+			for (int i = length - 1; i >= 0; i--) {
+				while (stackSize > 0) {
+					int v = stack[--stackSize];
+					for (int j = incomingStart[v]; j < incomingStart[v + 1]; j++) {
+						int u = edgeSources[incoming[j]];
+						if (!excluded[u] && !reachesT[u]) {
+							reachesT[u] = true;
+							stack[stackSize++] = u;
+						}
+					}
+				}
+				int p = pathVertices[i];
+				for (int j = outgoingStart[p]; j < outgoingStart[p + 1]; j++) {
+					if (outgoing[j] != pathEdges[i] && reachesT[edgeTargets[outgoing[j]]]) {
+						return true;
+					}
+				}
+				/* p_i reaches t along the path */
+				excluded[p] = false;
+				reachesT[p] = true;
+				stack[stackSize++] = p;
+			}
+			return false;
+		}
+
+		/* Finds the vertices on cycles of the graph without the given edges, from its strongly connected components */
+		private boolean[] verticesOnCycles(boolean[] removedEdges) {
+			boolean[] onCycle = new boolean[numVertices];
+			for (int e = 0; e < edgeSources.length; e++) {
+				if (!removedEdges[e] && edgeSources[e] == edgeTargets[e]) {
+					onCycle[edgeSources[e]] = true;
+				}
+			}
+			int[] successors = new int[outgoing.length];
+			for (int i = 0; i < outgoing.length; i++) {
+				successors[i] = removedEdges[outgoing[i]] ? -1 : edgeTargets[outgoing[i]];
+			}
+			int[] component = new int[numVertices];
+			int numComponents = stronglyConnectedComponents(numVertices, outgoingStart, Arrays.copyOfRange(outgoingStart, 1, numVertices + 1), successors, component);
+			int[] componentSize = new int[numComponents];
+			for (int v = 0; v < numVertices; v++) {
+				componentSize[component[v]]++;
+			}
+			for (int v = 0; v < numVertices; v++) {
+				if (componentSize[component[v]] > 1) {
+					onCycle[v] = true;
+				}
+			}
+			return onCycle;
 		}
 	}
 
@@ -811,231 +1260,22 @@ public class NFAAnalysisTools {
 		return visited;
 	}
 	
+	/**
+	 * Constructs the DFA of the sets of states of an NFA reachable from a set
+	 * of states, in which the symbols of an alphabet without a transition lead
+	 * to an empty state.
+	 * 
+	 * @param input
+	 *            The NFA to determinize.
+	 * @param reachableFromStart
+	 *            The states of the initial state of the DFA.
+	 * @param alphabet
+	 *            The symbols every state of the DFA needs a transition for.
+	 * @return The DFA.
+	 */
 	public static NFAGraph determinize(NFAGraph input, Set<NFAVertexND> reachableFromStart, Set<TransitionLabel> alphabet) {
-		NFAGraph dfa = new NFAGraph();
-		
 		/* http://www.cse.unsw.edu.au/~rvg/pub/nfadfa.pdf */
-		//NFAVertexND startState = input.getInitialState();
-		//HashSet<Integer> reachableFromStart = reachableWithEpsilon(input, startState);
-		LinkedList<NFAVertexND> toVisit = new LinkedList<NFAVertexND>();		
-		
-		LinkedList<NFAVertexND> sortedReachableFromStart = new LinkedList<NFAVertexND>(reachableFromStart);
-		Collections.sort(sortedReachableFromStart);
-		StringBuilder labelBuilder = new StringBuilder();
-		Iterator<NFAVertexND> i0 = sortedReachableFromStart.iterator();
-		while (i0.hasNext()) {
-			NFAVertexND startState = i0.next();
-			List<String> subStates = startState.getStates();
-			if (subStates.size() == 1) {
-				String currentLabel = subStates.iterator().next();
-				labelBuilder.append(currentLabel);
-				
-			} else {
-				Iterator<String> i1 = subStates.iterator();
-				labelBuilder.append("(");
-				while (i1.hasNext()) {
-					String currentLabel = i1.next();
-					labelBuilder.append(currentLabel);
-					if (i1.hasNext()) {
-						labelBuilder.append(", ");
-					}
-				}
-				labelBuilder.append(")");
-
-			}
-			if (i0.hasNext()) {
-				labelBuilder.append(", ");
-			}
-			
-		}
-		
-		
-		/* note dfa states are not multidimensional */
-		NFAVertexND dfaStartState = new NFAVertexND(labelBuilder.toString());
-		toVisit.add(dfaStartState);
-		HashMap<NFAVertexND, Set<NFAVertexND>> dfaStateToSubStatesMap = new HashMap<NFAVertexND, Set<NFAVertexND>>();
-		dfaStateToSubStatesMap.put(dfaStartState, reachableFromStart);
-		
-		dfa.addVertex(dfaStartState);
-		dfa.setInitialState(dfaStartState);
-		for (NFAVertexND i : reachableFromStart) {
-			if (input.isAcceptingState(i)) {
-				dfa.addAcceptingState(dfaStartState);
-			}
-			
-		}
-		
-		NFAVertexND emptyState = new NFAVertexND(0);
-		
-		
-		while (!toVisit.isEmpty()) {
-
-			NFAVertexND P = toVisit.removeLast();
-			/* with the label in TransitionLabel, P can get to the states in HashSet<NFAvertexND> */
-			HashMap<TransitionLabel, HashSet<NFAVertexND>> newStates = new HashMap<TransitionLabel, HashSet<NFAVertexND>>();
-			Set<NFAVertexND> subStates = dfaStateToSubStatesMap.get(P);
-			for (NFAVertexND currentSubState : subStates) {
-				for (NFAEdge e : input.outgoingEdgesOf(currentSubState)) {
-					if (!e.getIsEpsilonTransition()) {
-						TransitionLabel label = e.getTransitionLabel();
-						NFAVertexND targetState = e.getTargetVertex();
-						//HashSet<NFAVertexND> newState = newStates.getOrDefault(label, new HashSet<NFAVertexND>());
-						HashSet<NFAVertexND> newState;
-						if (newStates.containsKey(label)) {
-							newState = newStates.get(label);
-						} else {
-							newState = new HashSet<NFAVertexND>();
-						}
-
-
-						if (!newState.contains(targetState)) {
-							newState.add(targetState);
-						}
-						
-						/* If there isn't another outgoing label exactly like this one, check for other overlapping labels */
-						if (!newStates.containsKey(label)) {
-							/* Copying entries, to avoid concurrent modification errors */
-							Set<Map.Entry<TransitionLabel, HashSet<NFAVertexND>>> entries = new HashSet<Map.Entry<TransitionLabel, HashSet<NFAVertexND>>>(newStates.entrySet());
-							for (Map.Entry<TransitionLabel, HashSet<NFAVertexND>> kv : entries) {
-								TransitionLabel tl1 = kv.getKey();
-							
-								TransitionLabel intersection = tl1.intersection(label);
-								if (!intersection.isEmpty()) {
-									//System.out.println(tl1 + " " + symbol + " " + intersection);
-									/* the transition labels over lap. For a DFA we need to 
-									 * ensure that all character class labels are disjoint.
-									 * We can do this by ensuring the original class (tl1Copy) without the intersecting part of 
-									 * the new class (symbol) goes to the original states
-									 * the new class (symbol) without the intersecting part of the orignal class (tl1Copy) 
-									 * goes to the new states.
-									 * the intersection goes to both the classes.
-									 *  */
-									
-									HashSet<NFAVertexND> tmpVertices =  newStates.remove(kv.getKey());
-									TransitionLabel uniqueTl1 = tl1.intersection(label.complement());
-									if (!uniqueTl1.isEmpty()) {
-										//System.out.println("1: " + uniqueTl1 + " " + tmpVertices);
-										newStates.put(uniqueTl1, tmpVertices);
-									}									
-									
-								
-									HashSet<NFAVertexND> unionStates = new HashSet<NFAVertexND>(tmpVertices);
-									unionStates.addAll(newState);
-									//System.out.println("2: " + intersection + " " + unionStates);
-									/* We know intersection is not empty */
-									newStates.put(intersection, unionStates);
-									label = label.intersection(tl1.complement());
-								}
-							
-							}
-						}
-						if (!label.isEmpty()) {
-							//System.out.println("3: " + symbol + " " + newState);
-							newStates.put(label, newState);
-						}
-						
-					}
-				}
-			}
-			//System.out.println(P + "\t\t" + newStates);
-			/* Finding all the ranges in the alphabet not accounted for */
-			for (TransitionLabel s : alphabet) {
-				TransitionLabel toEmptyState = s;
-				/* for each range accounted for, remove it from the current alphabet range */
-				for (TransitionLabel tl : newStates.keySet()) {
-					toEmptyState = toEmptyState.intersection(tl.complement());
-					if (toEmptyState.isEmpty()) {
-						break;
-					}
-				}
-				if (!toEmptyState.isEmpty()) {
-					//System.out.println("check: " + toEmptyState);
-					//System.out.println(toEmptyState);
-					if (!dfa.containsVertex(emptyState)) {
-						dfa.addVertex(emptyState);
-						for (TransitionLabel s2 : alphabet) {
-							
-							dfa.addEdge(new NFAEdge(emptyState, emptyState, s2));
-						}
-					}
-					dfa.addEdge(new NFAEdge(P, emptyState, toEmptyState));
-				}
-			}
-			
-			/*for (TransitionLabel s : alphabet) {
-				if (!newStates.containsKey(s)) {
-					if (!dfa.containsVertex(emptyState)) {
-						dfa.addVertex(emptyState);
-						for (TransitionLabel s2 : alphabet) {
-							dfa.addEdge(new NFAEdge(emptyState, emptyState, s2));
-						}
-					}
-					dfa.addEdge(new NFAEdge(P, emptyState, s));
-				}
-			}*/
-			
-			for (Map.Entry<TransitionLabel, HashSet<NFAVertexND>> kv : newStates.entrySet()) {
-				TransitionLabel label = kv.getKey();
-				HashSet<NFAVertexND> reachableViaSymbolEpsilon = new HashSet<NFAVertexND>();
-				
-				for (NFAVertexND v : kv.getValue()) {
-					reachableViaSymbolEpsilon.add(v);
-					HashSet<NFAVertexND> reachableViaEpsilon = reachableWithEpsilon(input, v);
-					reachableViaSymbolEpsilon.addAll(reachableViaEpsilon);
-				}
-				/* we sort the sub states, so that states with the same sub states are equal (since order matters in the PC, but not here) */
-				LinkedList<NFAVertexND> sortedReachableViaSymbolEpsilon = new LinkedList<NFAVertexND>(reachableViaSymbolEpsilon);
-				Collections.sort(sortedReachableViaSymbolEpsilon);
-				
-				labelBuilder = new StringBuilder();
-				Iterator<NFAVertexND> i1 = sortedReachableViaSymbolEpsilon.iterator();
-				while (i1.hasNext()) {
-					NFAVertexND currentSubState = i1.next();
-					List<String> labelSubStates = currentSubState.getStates();
-					if (labelSubStates.size() == 1) {
-						String currentLabel = labelSubStates.iterator().next();
-						labelBuilder.append(currentLabel);
-						
-					} else {
-						/* TODO determinizing a multidimensional NFA is untested */
-						Iterator<String> i2 = labelSubStates.iterator();
-						labelBuilder.append("(");
-						while (i2.hasNext()) {
-							String currentLabel = i2.next();
-							labelBuilder.append(currentLabel);
-							if (i2.hasNext()) {
-								labelBuilder.append(", ");
-							}
-						}
-						labelBuilder.append(")");
-
-					}
-					if (i1.hasNext()) {
-						labelBuilder.append(", ");
-					}
-					
-				}
-
-				
-				NFAVertexND stateToAdd = new NFAVertexND(labelBuilder.toString()); /* << build a label from sortedReachableViaSymbolEpsilon and store in map from stateToAdd to sortedReachableViaSymbolEpsilon */
-				dfaStateToSubStatesMap.put(stateToAdd, reachableViaSymbolEpsilon);
-				if (!dfa.containsVertex(stateToAdd)) {
-					toVisit.add(stateToAdd);
-					dfa.addVertex(stateToAdd);
-					for (NFAVertexND i : reachableViaSymbolEpsilon) {
-						if (input.isAcceptingState(i)) {
-							dfa.addAcceptingState(stateToAdd);
-						}
-						
-					}
-				}
-				//System.out.println(P + " " + " " + stateToAdd + " " + symbol);
-				dfa.addEdge(new NFAEdge(P, stateToAdd, label));				
-			}
-		}
-		
-		//System.out.println(dfa);
-		return dfa;
+		return new SubsetConstruction(input, alphabet).determinize(reachableFromStart);
 	}
 	
 	public static NFAGraph dfaIntersection(NFAGraph m1, NFAGraph m2) {
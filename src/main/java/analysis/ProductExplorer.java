@@ -0,0 +1,477 @@
+package analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import analysis.NFAAnalyserInterface.EdaAnalysisResultsFilter;
+import analysis.NFAAnalyserInterface.EdaAnalysisResultsNoEda;
+import analysis.NFAAnalyserInterface.TooComplexEdaAnalysisResults;
+import nfa.CompactNFA;
+import nfa.NFAEdge;
+import nfa.NFAGraph;
+import nfa.NFAVertexND;
+import nfa.transitionlabel.EpsilonTransitionLabel;
+import nfa.transitionlabel.MintermAlphabet;
+import nfa.transitionlabel.TransitionLabel;
+import nfa.transitionlabel.TransitionLabel.TransitionType;
+
+import util.LongIntHashMap;
+
+/**
+ * Explores the product of a compact NFA with itself through the Mohri filter
+ * on the fly, for the EDA filter test. The product states are only generated
+ * when the depth first search of Tarjan's algorithm reaches them, and the
+ * search stops as soon as it completes a strongly connected component
+ * containing a state (P, P) and a state (P', P'') with P' != P''.
+ *
+ * The states of such a component all lie in one strongly connected component
+ * C of the NFA, in both their first and their last dimension, so the product
+ * is only explored within C x C for every component C of the NFA with edges,
+ * starting from the states (c, 0, c) for the states c in C that are reachable
+ * from the initial state. Every such state is reachable in the whole product
+ * as well, and any state (c, f, c) can only reach states (c, 0, c) reaches, so
+ * a witness component is found if and only if the whole product has one. The
+ * number of product states explored grows with the sum of |C|^2 over the
+ * components, instead of with the square of the number of states. This
+ * already excludes every state that
+ * {@link NFAAnalysisTools#statesReachingCycles(CompactNFA)} would, as well as
+ * the states that only lead into other components.
+ *
+ * The product of an NFA with itself is symmetric: mirroring a state (p, f, q)
+ * into (q, f', p), where f' swaps the filter states 1 and 2 (m1 moving on its
+ * own for m2 moving on its own), maps its transitions onto the transitions of
+ * the mirrored state. So only one state of every mirrored pair is explored,
+ * the one with p < q, or with f != 2 if p = q, and the transitions are
+ * followed to the explored state of their target's pair. The components of
+ * the pairs are the pairs of the mirrored components, and (P, P) and (P',
+ * P'') stay diagonal and off-diagonal when mirrored, so the same components
+ * are witnesses. Only when a witness is found is it translated back to the
+ * ordered states of one component of the product.
+ *
+ * The transitions of every state are followed in the order of the edges of
+ * the constructed product
+ * ({@link ProductNFA#productConstructionAFB(CompactNFA, CompactNFA)}).
+ */
+class ProductExplorer {
+
+	private final CompactNFA m;
+
+	private final int m1Bits;
+
+	private final MintermAlphabet mintermAlphabet;
+
+	/* The strongly connected component of every state of the NFA, the product is explored within one at a time */
+	private final int[] mComponent;
+	private final BitSet[] mComponentStates;
+
+	/*
+	 * The mirrored pairs of states found so far, by the key of their explored
+	 * state, numbered in the order they are found, which is also their Tarjan
+	 * index
+	 */
+	private final LongIntHashMap stateNumbers;
+	private long[] stateKeys;
+	private int[] lowLink;
+	/* The component of every state, -1 while it is still on the Tarjan stack */
+	private int[] component;
+	private int numStates;
+	private int numComponents;
+
+	private int[] stack;
+	private int stackSize;
+
+	/*
+	 * The call stack of the depth first search. The targets of the
+	 * transitions of the state in frame i are stored in successors from
+	 * successorStart[i] up to (but not including) successorStart[i + 1], of
+	 * which the ones from nextSuccessor[i] on are still to be followed.
+	 */
+	private int[] callStack;
+	private int[] nextSuccessor;
+	private int[] successorStart;
+	private int callStackSize;
+	private long[] successors;
+
+	private final TransitionList transitions;
+
+	private ProductExplorer(CompactNFA m) {
+		this.m = m;
+		m1Bits = ProductNFA.bitsFor(m, m);
+		mintermAlphabet = ProductNFA.sharedMintermAlphabet(m, m);
+		mComponent = new int[m.getNumStates()];
+		int mNumComponents = NFAAnalysisTools.stronglyConnectedComponents(m, false, mComponent);
+		mComponentStates = NFAAnalysisTools.componentStatesWithEdges(m, false, mComponent, mNumComponents);
+		stateNumbers = new LongIntHashMap(2 * m.getNumStates());
+		stateKeys = new long[16];
+		lowLink = new int[16];
+		component = new int[16];
+		stack = new int[16];
+		callStack = new int[16];
+		nextSuccessor = new int[16];
+		successorStart = new int[17];
+		successors = new long[64];
+		transitions = new TransitionList();
+	}
+
+	/**
+	 * Tests for EDA by searching the product of an NFA with itself for a
+	 * strongly connected component containing a state (P, P) and a state
+	 * (P', P'') with P' != P''.
+	 *
+	 * @param originalM
+	 *            The NFA the results are for.
+	 * @param m
+	 *            The NFA to construct the product of.
+	 * @return The results, with the witness component of the product if EDA
+	 *         was found.
+	 */
+	static EdaAnalysisResults edaTestCaseFilter(NFAGraph originalM, CompactNFA m, int maxComplexity, AtomicInteger maxSeenComplexity) {
+		ProductExplorer explorer = new ProductExplorer(m);
+		int[] witness = explorer.findWitnessComponent(maxComplexity);
+		if (witness == null) {
+			/* the components completed so far are more than the maximum complexity */
+			NFAAnalysisTools.isTooComplex(explorer.numComponents, maxComplexity, maxSeenComplexity);
+			return new TooComplexEdaAnalysisResults(originalM);
+		}
+		NFAAnalysisTools.isTooComplex(explorer.numComponents, maxComplexity, maxSeenComplexity);
+		if (witness.length == 0) {
+			return new EdaAnalysisResultsNoEda(originalM);
+		}
+
+		/* the lowest numbered state (P, P) of the component, its explored state is not mirrored */
+		long pfpKey = -1;
+		for (int s : witness) {
+			if (explorer.isDiagonal(explorer.stateKeys[s])) {
+				pfpKey = explorer.stateKeys[s];
+				break;
+			}
+		}
+		/* building the exploit string, only the witness component is converted to an NFA graph */
+		LinkedHashMap<Long, NFAVertexND> witnessVertices = new LinkedHashMap<Long, NFAVertexND>();
+		NFAGraph pcScc = explorer.toNFAGraph(explorer.component[witness[0]], pfpKey, witnessVertices);
+		/* the first state (P', P'') found from (P, P) */
+		NFAVertexND qfq = null;
+		for (Map.Entry<Long, NFAVertexND> kv : witnessVertices.entrySet()) {
+			if (!explorer.isDiagonal(kv.getKey())) {
+				qfq = kv.getValue();
+				break;
+			}
+		}
+		return new EdaAnalysisResultsFilter(originalM, pcScc, witnessVertices.get(pfpKey), qfq);
+	}
+
+	/*
+	 * Runs Tarjan's algorithm from the product states (c, 0, c) until a
+	 * witness component is completed, returning its states in ascending
+	 * order, an empty array if there is none, or null when more components
+	 * than the maximum complexity were completed.
+	 */
+	private int[] findWitnessComponent(int maxComplexity) {
+		BitSet reachable = reachableStates();
+		for (int c = reachable.nextSetBit(0); c >= 0; c = reachable.nextSetBit(c + 1)) {
+			/* states on no cycle of the NFA are on no cycle of the product either */
+			if (mComponentStates[mComponent[c]] == null) {
+				continue;
+			}
+			long rootKey = ProductNFA.packState(m1Bits, c, 0, c);
+			if (stateNumbers.get(rootKey) != -1) {
+				continue;
+			}
+			discover(rootKey);
+			int[] witness = searchFromRoot(maxComplexity);
+			if (witness != null || numComponents > maxComplexity) {
+				return witness;
+			}
+		}
+		return new int[0];
+	}
+
+	/*
+	 * Continues the depth first search until the call stack is empty or a
+	 * witness component is completed, returning its states in ascending order
+	 * or null if there is none, or when more components than the maximum
+	 * complexity were completed.
+	 */
+	private int[] searchFromRoot(int maxComplexity) {
+		while (callStackSize > 0) {
+			int frame = callStackSize - 1;
+			int v = callStack[frame];
+			if (nextSuccessor[frame] < successorStart[frame + 1]) {
+				long wKey = successors[nextSuccessor[frame]++];
+				int w = stateNumbers.get(wKey);
+				if (w == -1) {
+					discover(wKey);
+				} else if (component[w] == -1 && w < lowLink[v]) {
+					lowLink[v] = w;
+				}
+			} else {
+				callStackSize--;
+				if (lowLink[v] == v) {
+					int componentStart = stackSize;
+					do {
+						componentStart--;
+						component[stack[componentStart]] = numComponents;
+					} while (stack[componentStart] != v);
+					int[] componentStates = Arrays.copyOfRange(stack, componentStart, stackSize);
+					stackSize = componentStart;
+					numComponents++;
+					if (numComponents > maxComplexity) {
+						return null;
+					}
+					if (isWitness(componentStates)) {
+						Arrays.sort(componentStates);
+						return componentStates;
+					}
+				}
+				if (callStackSize > 0) {
+					int u = callStack[callStackSize - 1];
+					if (lowLink[v] < lowLink[u]) {
+						lowLink[u] = lowLink[v];
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	/* The states of the NFA that are reachable from its initial state */
+	private BitSet reachableStates() {
+		BitSet reachable = new BitSet(m.getNumStates());
+		int[] toVisit = new int[m.getNumStates()];
+		int numToVisit = 0;
+		reachable.set(m.getInitialState());
+		toVisit[numToVisit++] = m.getInitialState();
+		while (numToVisit > 0) {
+			int s = toVisit[--numToVisit];
+			for (int e = m.getOutgoingStart(s); e < m.getOutgoingEnd(s); e++) {
+				int t = m.getEdgeTarget(e);
+				if (!reachable.get(t)) {
+					reachable.set(t);
+					toVisit[numToVisit++] = t;
+				}
+			}
+		}
+		return reachable;
+	}
+
+	private boolean isDiagonal(long key) {
+		return ProductNFA.unpackM1State(m1Bits, key) == ProductNFA.unpackM2State(m1Bits, key);
+	}
+
+	/* Returns the key of the explored state of the mirrored pair of the state with the given key */
+	private long exploredKey(long key) {
+		int p = ProductNFA.unpackM1State(m1Bits, key);
+		int f = ProductNFA.unpackFilterState(m1Bits, key);
+		int q = ProductNFA.unpackM2State(m1Bits, key);
+		if (p < q || (p == q && f != 2)) {
+			return key;
+		}
+		/* the filter states for m1 and m2 moving on their own are swapped */
+		return ProductNFA.packState(m1Bits, q, f == 0 ? 0 : 3 - f, p);
+	}
+
+	private boolean isWitness(int[] componentStates) {
+		boolean foundDiagonal = false;
+		boolean foundOffDiagonal = false;
+		for (int s : componentStates) {
+			if (isDiagonal(stateKeys[s])) {
+				foundDiagonal = true;
+			} else {
+				foundOffDiagonal = true;
+			}
+		}
+		return foundDiagonal && foundOffDiagonal;
+	}
+
+	/* Numbers a new state and pushes it onto the Tarjan stack and the call stack */
+	private void discover(long key) {
+		int s = numStates++;
+		if (s == stateKeys.length) {
+			stateKeys = Arrays.copyOf(stateKeys, 2 * s);
+			lowLink = Arrays.copyOf(lowLink, 2 * s);
+			component = Arrays.copyOf(component, 2 * s);
+			stack = Arrays.copyOf(stack, 2 * s);
+		}
+		stateKeys[s] = key;
+		stateNumbers.put(key, s);
+		lowLink[s] = s;
+		component[s] = -1;
+		stack[stackSize++] = s;
+
+		int frame = callStackSize++;
+		if (callStackSize == callStack.length) {
+			callStack = Arrays.copyOf(callStack, 2 * callStackSize);
+			nextSuccessor = Arrays.copyOf(nextSuccessor, 2 * callStackSize);
+			successorStart = Arrays.copyOf(successorStart, 2 * callStackSize + 1);
+		}
+		callStack[frame] = s;
+		int start = successorStart[frame];
+		nextSuccessor[frame] = start;
+
+		transitions.expand(key);
+		int end = start + transitions.size;
+		if (end > successors.length) {
+			successors = Arrays.copyOf(successors, Math.max(2 * successors.length, end));
+		}
+		for (int i = 0; i < transitions.size; i++) {
+			successors[start + i] = exploredKey(transitions.targetKeys[i]);
+		}
+		successorStart[frame + 1] = end;
+	}
+
+	/*
+	 * Converts the strongly connected component of the product that contains
+	 * the state with the given key, which is explored, and whose mirrored
+	 * pairs are in the given component of pairs, to an NFA graph. The vertex
+	 * of every state is recorded, in the order the states are found from the
+	 * given state.
+	 */
+	private NFAGraph toNFAGraph(int witnessComponent, long startKey, LinkedHashMap<Long, NFAVertexND> vertices) {
+		/* the states whose pairs are in the component, reachable from the start state */
+		LongIntHashMap orderedNumbers = new LongIntHashMap(16);
+		ArrayList<Long> orderedKeys = new ArrayList<Long>();
+		ArrayList<Integer> edgeSources = new ArrayList<Integer>();
+		ArrayList<Integer> edgeTargets = new ArrayList<Integer>();
+		ArrayList<TransitionLabel> edgeLabels = new ArrayList<TransitionLabel>();
+		ArrayList<Integer> edgeNumParallel = new ArrayList<Integer>();
+		orderedNumbers.put(startKey, 0);
+		orderedKeys.add(startKey);
+		for (int s = 0; s < orderedKeys.size(); s++) {
+			transitions.expand(orderedKeys.get(s));
+			for (int i = 0; i < transitions.size; i++) {
+				long targetKey = transitions.targetKeys[i];
+				int pair = stateNumbers.get(exploredKey(targetKey));
+				if (pair == -1 || component[pair] != witnessComponent) {
+					continue;
+				}
+				int t = orderedNumbers.get(targetKey);
+				if (t == -1) {
+					t = orderedKeys.size();
+					orderedNumbers.put(targetKey, t);
+					orderedKeys.add(targetKey);
+				}
+				edgeSources.add(s);
+				edgeTargets.add(t);
+				edgeLabels.add(transitions.labels[i]);
+				edgeNumParallel.add(transitions.numParallel[i]);
+			}
+		}
+
+		/* of which the ones the start state is reachable from are in its component */
+		int numOrdered = orderedKeys.size();
+		int[] incomingStart = new int[numOrdered + 1];
+		for (int t : edgeTargets) {
+			incomingStart[t + 1]++;
+		}
+		for (int s = 0; s < numOrdered; s++) {
+			incomingStart[s + 1] += incomingStart[s];
+		}
+		int[] incomingSources = new int[edgeSources.size()];
+		int[] nextIncoming = Arrays.copyOf(incomingStart, numOrdered);
+		for (int e = 0; e < edgeSources.size(); e++) {
+			incomingSources[nextIncoming[edgeTargets.get(e)]++] = edgeSources.get(e);
+		}
+		BitSet inComponent = new BitSet(numOrdered);
+		int[] toVisit = new int[numOrdered];
+		int numToVisit = 0;
+		inComponent.set(0);
+		toVisit[numToVisit++] = 0;
+		while (numToVisit > 0) {
+			int t = toVisit[--numToVisit];
+			for (int i = incomingStart[t]; i < incomingStart[t + 1]; i++) {
+				int s = incomingSources[i];
+				if (!inComponent.get(s)) {
+					inComponent.set(s);
+					toVisit[numToVisit++] = s;
+				}
+			}
+		}
+
+		NFAGraph.Builder pcScc = new NFAGraph.Builder();
+		NFAVertexND[] orderedVertices = new NFAVertexND[numOrdered];
+		for (int s = inComponent.nextSetBit(0); s >= 0; s = inComponent.nextSetBit(s + 1)) {
+			long key = orderedKeys.get(s);
+			orderedVertices[s] = new NFAVertexND(m.getVertex(ProductNFA.unpackM1State(m1Bits, key)), new NFAVertexND(ProductNFA.unpackFilterState(m1Bits, key)), m.getVertex(ProductNFA.unpackM2State(m1Bits, key)));
+			vertices.put(key, orderedVertices[s]);
+			pcScc.addVertex(orderedVertices[s]);
+		}
+		for (int e = 0; e < edgeSources.size(); e++) {
+			int s = edgeSources.get(e);
+			int t = edgeTargets.get(e);
+			if (inComponent.get(s) && inComponent.get(t)) {
+				NFAEdge newEdge = new NFAEdge(orderedVertices[s], orderedVertices[t], edgeLabels.get(e));
+				newEdge.setNumParallel(edgeNumParallel.get(e));
+				pcScc.appendEdge(newEdge);
+			}
+		}
+		return pcScc.build();
+	}
+
+	/*
+	 * The transitions of one product state that stay within the component of
+	 * the NFA its states are in, in the order of the edges of the compact
+	 * product: the symbol transitions, and then the epsilon transitions
+	 * stably sorted by priority.
+	 */
+	private class TransitionList implements ProductNFA.TransitionSink {
+
+		private long[] targetKeys = new long[16];
+		private TransitionLabel[] labels = new TransitionLabel[16];
+		private int[] numParallel = new int[16];
+		private int[] priorities = new int[16];
+		private int size;
+
+		/* The component of the NFA the states of the expanded product state are in */
+		private int sourceComponent;
+
+		private void expand(long key) {
+			size = 0;
+			sourceComponent = mComponent[ProductNFA.unpackM1State(m1Bits, key)];
+			ProductNFA.expandState(m, m, m1Bits, mintermAlphabet, key, this);
+			/* insertion sort is stable, and the symbol transitions come first already */
+			for (int i = 1; i < size; i++) {
+				for (int j = i; j > 0 && priorities[j - 1] > priorities[j]; j--) {
+					swap(j - 1, j);
+				}
+			}
+		}
+
+		@Override
+		public void addTransition(long targetKey, TransitionLabel label, int numParallel) {
+			if (mComponent[ProductNFA.unpackM1State(m1Bits, targetKey)] != sourceComponent || mComponent[ProductNFA.unpackM2State(m1Bits, targetKey)] != sourceComponent) {
+				return;
+			}
+			if (size == targetKeys.length) {
+				targetKeys = Arrays.copyOf(targetKeys, 2 * size);
+				labels = Arrays.copyOf(labels, 2 * size);
+				this.numParallel = Arrays.copyOf(this.numParallel, 2 * size);
+				priorities = Arrays.copyOf(priorities, 2 * size);
+			}
+			targetKeys[size] = targetKey;
+			labels[size] = label;
+			this.numParallel[size] = numParallel;
+			priorities[size] = label.getTransitionType() == TransitionType.EPSILON ? ((EpsilonTransitionLabel) label).getPriority() : -1;
+			size++;
+		}
+
+		private void swap(int i, int j) {
+			long tmpKey = targetKeys[i];
+			targetKeys[i] = targetKeys[j];
+			targetKeys[j] = tmpKey;
+			TransitionLabel tmpLabel = labels[i];
+			labels[i] = labels[j];
+			labels[j] = tmpLabel;
+			int tmpNumParallel = numParallel[i];
+			numParallel[i] = numParallel[j];
+			numParallel[j] = tmpNumParallel;
+			int tmpPriority = priorities[i];
+			priorities[i] = priorities[j];
+			priorities[j] = tmpPriority;
+		}
+	}
+
+}
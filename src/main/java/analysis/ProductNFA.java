@@ -0,0 +1,351 @@
+package analysis;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import nfa.CompactNFA;
+import nfa.NFAVertexND;
+import nfa.SymbolEdgeIndex;
+import nfa.transitionlabel.CharacterClassTransitionLabel;
+import nfa.transitionlabel.EpsilonTransitionLabel;
+import nfa.transitionlabel.MintermAlphabet;
+import nfa.transitionlabel.TransitionLabel;
+
+import util.LongIntHashMap;
+
+/**
+ * The product construction of two compact NFAs with the Mohri filter between
+ * them. Every product state (p, f, q) is identified by a long in which the
+ * state numbers of p in m1, f in the filter and q in m2 are bit-packed, so
+ * that no vertex is constructed while the product is explored. The vertex of
+ * a product state is only decoded when it is asked for, for example when an
+ * exploit string is built.
+ */
+public class ProductNFA extends CompactNFA {
+
+	private static final EpsilonTransitionLabel EPSILON_1 = EpsilonTransitionLabel.forPriority(1);
+
+	private static final EpsilonTransitionLabel EPSILON_2 = EpsilonTransitionLabel.forPriority(2);
+
+	private static final int FILTER_BITS = 2;
+
+	private final CompactNFA m1;
+
+	private final CompactNFA m2;
+
+	private final int m1Bits;
+
+	private final long[] stateKeys;
+
+	private final LongIntHashMap stateNumbers;
+
+	private ProductNFA(CompactNFA.Builder b, MintermAlphabet mintermAlphabet, CompactNFA m1, CompactNFA m2, int m1Bits, long[] stateKeys, LongIntHashMap stateNumbers) {
+		super(b, mintermAlphabet);
+		this.m1 = m1;
+		this.m2 = m2;
+		this.m1Bits = m1Bits;
+		this.stateKeys = stateKeys;
+		this.stateNumbers = stateNumbers;
+	}
+
+	/**
+	 * @return The number of the state in m1 of the product state.
+	 */
+	public int getM1State(int s) {
+		return unpackM1State(m1Bits, stateKeys[s]);
+	}
+
+	/**
+	 * @return The number of the filter state of the product state.
+	 */
+	public int getFilterState(int s) {
+		return unpackFilterState(m1Bits, stateKeys[s]);
+	}
+
+	/**
+	 * @return The number of the state in m2 of the product state.
+	 */
+	public int getM2State(int s) {
+		return unpackM2State(m1Bits, stateKeys[s]);
+	}
+
+	/**
+	 * @return The number of the product state (m1State, filterState,
+	 *         m2State), or -1 if it was not reached.
+	 */
+	public int getStateNumber(int m1State, int filterState, int m2State) {
+		return stateNumbers.get(packState(m1Bits, m1State, filterState, m2State));
+	}
+
+	@Override
+	protected NFAVertexND decodeVertex(int s) {
+		return new NFAVertexND(m1.getVertex(getM1State(s)), new NFAVertexND(getFilterState(s)), m2.getVertex(getM2State(s)));
+	}
+
+	private static int bitsFor(int numStates) {
+		return Math.max(1, 32 - Integer.numberOfLeadingZeros(numStates - 1));
+	}
+
+	/**
+	 * Constructs the part of the product of m1, the Mohri filter and m2 that
+	 * is reachable from the initial state. The states and transitions are
+	 * those of
+	 * {@link NFAAnalysisTools#productConstructionAFB(nfa.NFAGraph, nfa.NFAGraph)},
+	 * but m1 and m2 are not copied and modified to prepare them for the
+	 * filter.
+	 *
+	 * When m1 and m2 share their minterm alphabet, as they do in products of
+	 * an NFA with itself, symbol transitions are matched by intersecting
+	 * their minterm sets, and the product shares the alphabet as well.
+	 *
+	 * @param m1
+	 *            The first NFA.
+	 * @param m2
+	 *            The second NFA.
+	 * @return The product construction.
+	 */
+	public static ProductNFA productConstructionAFB(CompactNFA m1, CompactNFA m2) {
+		return productConstructionAFB(m1, m2, null, null);
+	}
+
+	/**
+	 * Constructs the part of the product of m1, the Mohri filter and m2 that
+	 * is reachable from the initial state through the product states of which
+	 * the states in m1 and m2 are in the given sets, for example the states
+	 * that can reach an accepting state or a cycle. The other product states
+	 * are not created, and the transitions to them are left out, except for
+	 * the initial state.
+	 *
+	 * @param m1
+	 *            The first NFA.
+	 * @param m2
+	 *            The second NFA.
+	 * @param m1States
+	 *            The states of m1 the product states may contain, or null for
+	 *            all of them.
+	 * @param m2States
+	 *            The states of m2 the product states may contain, or null for
+	 *            all of them.
+	 * @return The product construction.
+	 */
+	public static ProductNFA productConstructionAFB(CompactNFA m1, CompactNFA m2, BitSet m1States, BitSet m2States) {
+		int m1Bits = bitsFor(m1, m2);
+		MintermAlphabet mintermAlphabet = sharedMintermAlphabet(m1, m2);
+
+		Construction construction = new Construction(m1.getNumStates() + m2.getNumStates(), m1Bits, m1States, m2States);
+		CompactNFA.Builder productConstruction = construction.productConstruction;
+
+		/* Adding the initial state */
+		long initialKey = packState(m1Bits, m1.getInitialState(), 0, m2.getInitialState());
+		productConstruction.setInitialState(construction.findState(initialKey));
+
+		/* the states are numbered in the order they are found, so they are visited breadth first */
+		for (int sourceState = 0; sourceState < productConstruction.getNumStates(); sourceState++) {
+			long sourceKey = construction.stateKeys[sourceState];
+			/* all the filter states are accepting */
+			if (m1.isAcceptingState(unpackM1State(m1Bits, sourceKey)) && m2.isAcceptingState(unpackM2State(m1Bits, sourceKey))) {
+				productConstruction.addAcceptingState(sourceState);
+			}
+			construction.sourceState = sourceState;
+			expandState(m1, m2, m1Bits, mintermAlphabet, sourceKey, construction);
+		}
+
+		int numStates = productConstruction.getNumStates();
+		return new ProductNFA(productConstruction, mintermAlphabet, m1, m2, m1Bits, Arrays.copyOf(construction.stateKeys, numStates), construction.stateNumbers);
+	}
+
+	/**
+	 * @return The number of bits the state numbers of m1 are packed into in
+	 *         the product of m1 and m2.
+	 */
+	static int bitsFor(CompactNFA m1, CompactNFA m2) {
+		int m1Bits = bitsFor(m1.getNumStates());
+		int m2Bits = bitsFor(m2.getNumStates());
+		if (m1Bits + FILTER_BITS + m2Bits > Long.SIZE) {
+			throw new IllegalArgumentException("Product states of " + m1.getNumStates() + " and " + m2.getNumStates() + " states cannot be packed");
+		}
+		return m1Bits;
+	}
+
+	/**
+	 * @return The minterm alphabet of m1 and m2 if they share it, null if not.
+	 */
+	static MintermAlphabet sharedMintermAlphabet(CompactNFA m1, CompactNFA m2) {
+		MintermAlphabet mintermAlphabet = m1.getMintermAlphabet();
+		return mintermAlphabet == m2.getMintermAlphabet() ? mintermAlphabet : null;
+	}
+
+	static long packState(int m1Bits, int m1State, int filterState, int m2State) {
+		return m1State | ((long) filterState << m1Bits) | ((long) m2State << (m1Bits + FILTER_BITS));
+	}
+
+	static int unpackM1State(int m1Bits, long key) {
+		return (int) (key & ((1L << m1Bits) - 1));
+	}
+
+	static int unpackFilterState(int m1Bits, long key) {
+		return (int) ((key >>> m1Bits) & ((1L << FILTER_BITS) - 1));
+	}
+
+	static int unpackM2State(int m1Bits, long key) {
+		return (int) (key >>> (m1Bits + FILTER_BITS));
+	}
+
+	/**
+	 * @param m1States
+	 *            The states of m1 the product states may contain, or null for
+	 *            all of them.
+	 * @param m2States
+	 *            The states of m2 the product states may contain, or null for
+	 *            all of them.
+	 * @return True if the packed product state may be created.
+	 */
+	static boolean isAllowedState(int m1Bits, BitSet m1States, BitSet m2States, long key) {
+		return (m1States == null || m1States.get(unpackM1State(m1Bits, key))) && (m2States == null || m2States.get(unpackM2State(m1Bits, key)));
+	}
+
+	/**
+	 * Receives the transitions of a product state as they are generated.
+	 */
+	interface TransitionSink {
+		void addTransition(long targetKey, TransitionLabel label, int numParallel);
+	}
+
+	/**
+	 * Generates the transitions leaving a product state, in the order the
+	 * product construction adds them: the symbol transitions, and then the
+	 * epsilon transitions of m1 and m2 in the order their loops find them,
+	 * which the compact NFA only sorts by priority afterwards.
+	 *
+	 * @param mintermAlphabet
+	 *            The minterm alphabet shared by m1 and m2, or null.
+	 * @param sourceKey
+	 *            The packed product state.
+	 */
+	static void expandState(CompactNFA m1, CompactNFA m2, int m1Bits, MintermAlphabet mintermAlphabet, long sourceKey, TransitionSink sink) {
+		int p = unpackM1State(m1Bits, sourceKey);
+		int f = unpackFilterState(m1Bits, sourceKey);
+		int q = unpackM2State(m1Bits, sourceKey);
+
+		/* symbol transitions are taken together and reset the filter */
+		SymbolEdgeIndex m2Index = m2.getSymbolEdgeIndex(q);
+		for (int e1 = m1.getOutgoingStart(p); e1 < m1.getEpsilonStart(p); e1++) {
+			TransitionLabel word = m1.getEdgeLabel(e1);
+			BitSet wordMinterms = mintermAlphabet != null ? m1.getEdgeMinterms(e1) : null;
+			/* with an index, only the edges of m2 overlapping the word are tested, in the same order */
+			int[] m2Edges = null;
+			int numM2Edges = m2.getEpsilonStart(q) - m2.getOutgoingStart(q);
+			if (m2Index != null && word instanceof CharacterClassTransitionLabel) {
+				m2Edges = m2Index.getOverlappingEdges(((CharacterClassTransitionLabel) word).getRanges());
+				numM2Edges = m2Edges.length;
+			}
+			for (int i = 0; i < numM2Edges; i++) {
+				int e2 = m2Edges != null ? m2Edges[i] : m2.getOutgoingStart(q) + i;
+				TransitionLabel tl2 = m2.getEdgeLabel(e2);
+				BitSet tl2Minterms = wordMinterms != null ? m2.getEdgeMinterms(e2) : null;
+				TransitionLabel intersection;
+				if (tl2Minterms != null) {
+					if (!wordMinterms.intersects(tl2Minterms)) {
+						/* current edge can't handle word */
+						continue;
+					}
+					intersection = mintermAlphabet.getLabel(MintermAlphabet.intersection(wordMinterms, tl2Minterms));
+				} else {
+					if (!tl2.matches(word)) {
+						/* current edge can't handle word */
+						continue;
+					}
+					intersection = word.intersection(tl2);
+					if (intersection instanceof CharacterClassTransitionLabel) {
+						/* equal intersections found from different edges share one label */
+						intersection = ((CharacterClassTransitionLabel) intersection).intern();
+					}
+				}
+				long targetKey = packState(m1Bits, m1.getEdgeTarget(e1), 0, m2.getEdgeTarget(e2));
+				sink.addTransition(targetKey, intersection, m1.getEdgeNumParallel(e1) * m2.getEdgeNumParallel(e2));
+			}
+		}
+
+		/* epsilon transitions in m1 */
+		for (int e1 = m1.getEpsilonStart(p); e1 < m1.getOutgoingEnd(p); e1++) {
+			int m1Target = m1.getEdgeTarget(e1);
+			int m1NumParallel = m1.getEdgeNumParallel(e1);
+			if (f == 0) {
+				/* together with the epsilon transitions in m2 */
+				for (int e2 = m2.getEpsilonStart(q); e2 < m2.getOutgoingEnd(q); e2++) {
+					long targetKey = packState(m1Bits, m1Target, 0, m2.getEdgeTarget(e2));
+					sink.addTransition(targetKey, EPSILON_2, m1NumParallel * m2.getEdgeNumParallel(e2));
+				}
+			}
+			if (f == 0 || f == 2) {
+				/* while m2 stays in its state */
+				long targetKey = packState(m1Bits, m1Target, 2, q);
+				sink.addTransition(targetKey, EPSILON_2, m1NumParallel);
+			}
+		}
+
+		/* epsilon transitions in m2 while m1 stays in its state */
+		if (f == 0 || f == 1) {
+			for (int e2 = m2.getEpsilonStart(q); e2 < m2.getOutgoingEnd(q); e2++) {
+				long targetKey = packState(m1Bits, p, 1, m2.getEdgeTarget(e2));
+				sink.addTransition(targetKey, EPSILON_1, m2.getEdgeNumParallel(e2));
+			}
+		}
+	}
+
+	/*
+	 * Numbers the product states in the order they are found and appends the
+	 * transitions of the current source state to the compact NFA.
+	 */
+	private static class Construction implements TransitionSink {
+
+		private final CompactNFA.Builder productConstruction;
+
+		private final LongIntHashMap stateNumbers;
+
+		private long[] stateKeys;
+
+		/* The states of m1 and m2 the product states may contain, null for all of them */
+		private final int m1Bits;
+		private final BitSet m1States;
+		private final BitSet m2States;
+
+		/* The state the transitions are added from */
+		private int sourceState;
+
+		private Construction(int expectedNumStates, int m1Bits, BitSet m1States, BitSet m2States) {
+			productConstruction = new CompactNFA.Builder();
+			stateNumbers = new LongIntHashMap(expectedNumStates);
+			stateKeys = new long[16];
+			this.m1Bits = m1Bits;
+			this.m1States = m1States;
+			this.m2States = m2States;
+		}
+
+		/* Returns the number of the state with the given key, adding the state first if it was not found before */
+		private int findState(long key) {
+			int state = stateNumbers.get(key);
+			if (state == -1) {
+				state = productConstruction.addState();
+				if (state == stateKeys.length) {
+					stateKeys = Arrays.copyOf(stateKeys, 2 * stateKeys.length);
+				}
+				stateKeys[state] = key;
+				stateNumbers.put(key, state);
+			}
+			return state;
+		}
+
+		@Override
+		public void addTransition(long targetKey, TransitionLabel label, int numParallel) {
+			if (!isAllowedState(m1Bits, m1States, m2States, targetKey)) {
+				/* the target cannot lie on the runs the product is constructed for */
+				return;
+			}
+			int targetState = findState(targetKey);
+			/* parallel and overlapping edges are only merged once part of the product is converted to an NFA graph */
+			productConstruction.appendEdge(sourceState, targetState, label, numParallel);
+		}
+	}
+
+}
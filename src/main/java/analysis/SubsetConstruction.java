@@ -0,0 +1,279 @@
+package analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import nfa.CompactNFA;
+import nfa.NFAEdge;
+import nfa.NFAGraph;
+import nfa.NFAVertexND;
+import nfa.transitionlabel.MintermAlphabet;
+import nfa.transitionlabel.TransitionLabel;
+
+/**
+ * The subset construction of an NFA over the minterms of an alphabet and the
+ * labels of the NFA. The states of the DFA are sets of states of the NFA,
+ * represented as bitsets over the state numbers of its compact form, and the
+ * states a set reaches with every minterm are found with the epsilon closures
+ * of the targets of the symbol transitions of its states.
+ *
+ * The symbols of the alphabet without a transition lead to the empty set of
+ * states, and the symbols outside the alphabet without a transition have no
+ * transition in the DFA. The construction can be searched one set at a time
+ * with {@link #successors(BitSet)}, or the whole DFA can be built with
+ * {@link #determinize(Set)}.
+ */
+class SubsetConstruction {
+
+	private final CompactNFA m;
+
+	private final EpsilonClosures closures;
+
+	/* The minterms of the alphabet and the labels of m, of the alphabet, and of the labels of every edge */
+	private final MintermAlphabet mintermAlphabet;
+	private final BitSet alphabetMinterms;
+	private final BitSet[] edgeMinterms;
+
+	/**
+	 * @param m
+	 *            The NFA to determinize.
+	 * @param alphabet
+	 *            The symbols that need a transition from every set of states.
+	 */
+	SubsetConstruction(NFAGraph m, Collection<? extends TransitionLabel> alphabet) {
+		this(CompactNFA.fromNFAGraph(m), alphabet);
+	}
+
+	/**
+	 * @param m
+	 *            The NFA to determinize.
+	 * @param alphabet
+	 *            The symbols that need a transition from every set of states.
+	 */
+	SubsetConstruction(CompactNFA m, Collection<? extends TransitionLabel> alphabet) {
+		this.m = m;
+		closures = new EpsilonClosures(m);
+
+		ArrayList<TransitionLabel> labels = new ArrayList<TransitionLabel>(alphabet);
+		for (int e = 0; e < m.getNumEdges(); e++) {
+			if (!m.isEpsilonEdge(e)) {
+				labels.add(m.getEdgeLabel(e));
+			}
+		}
+		mintermAlphabet = new MintermAlphabet(labels);
+		alphabetMinterms = new BitSet(mintermAlphabet.getNumMinterms());
+		for (TransitionLabel s : alphabet) {
+			alphabetMinterms.or(mintermAlphabet.getMinterms(s));
+		}
+		edgeMinterms = new BitSet[m.getNumEdges()];
+		for (int e = 0; e < m.getNumEdges(); e++) {
+			if (!m.isEpsilonEdge(e)) {
+				edgeMinterms[e] = mintermAlphabet.getMinterms(m.getEdgeLabel(e));
+			}
+		}
+	}
+
+	CompactNFA getNFA() {
+		return m;
+	}
+
+	MintermAlphabet getMintermAlphabet() {
+		return mintermAlphabet;
+	}
+
+	/**
+	 * @return The minterms of the symbols of the alphabet, which should not be
+	 *         modified.
+	 */
+	BitSet getAlphabetMinterms() {
+		return alphabetMinterms;
+	}
+
+	/**
+	 * @return The set of the numbers of the states of the NFA.
+	 */
+	BitSet toStates(Set<NFAVertexND> vertices) {
+		BitSet states = new BitSet(m.getNumStates());
+		for (NFAVertexND v : vertices) {
+			states.set(m.getStateNumber(v));
+		}
+		return states;
+	}
+
+	/**
+	 * @return True if one of the states is an accepting state of the NFA.
+	 */
+	boolean isAccepting(BitSet states) {
+		for (int s = states.nextSetBit(0); s >= 0; s = states.nextSetBit(s + 1)) {
+			if (m.isAcceptingState(s)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param states
+	 *            A set of states of the NFA.
+	 * @return The sets of states reachable from the states with every minterm
+	 *         and the epsilon transitions after it, null for the minterms
+	 *         without transitions.
+	 */
+	BitSet[] successors(BitSet states) {
+		BitSet[] successors = new BitSet[mintermAlphabet.getNumMinterms()];
+		for (int s = states.nextSetBit(0); s >= 0; s = states.nextSetBit(s + 1)) {
+			for (int e = m.getOutgoingStart(s); e < m.getEpsilonStart(s); e++) {
+				BitSet targetClosure = closures.getClosure(m.getEdgeTarget(e));
+				for (int minterm = edgeMinterms[e].nextSetBit(0); minterm >= 0; minterm = edgeMinterms[e].nextSetBit(minterm + 1)) {
+					if (successors[minterm] == null) {
+						successors[minterm] = new BitSet(m.getNumStates());
+					}
+					successors[minterm].or(targetClosure);
+				}
+			}
+		}
+		return successors;
+	}
+
+	/**
+	 * Builds the DFA of the sets of states reachable from a set of states.
+	 * Every set is interned once, and its state in the DFA is named after the
+	 * states it contains. The empty set of states is named 0.
+	 *
+	 * @param startStates
+	 *            The states of the initial state of the DFA, without taking
+	 *            their epsilon transitions.
+	 * @return The DFA.
+	 */
+	NFAGraph determinize(Set<NFAVertexND> startStates) {
+		NFAGraph dfa = new NFAGraph();
+		int[] sortedStates = sortedStates();
+		String[] stateNames = new String[m.getNumStates()];
+		for (int s = 0; s < stateNames.length; s++) {
+			stateNames[s] = stateName(m.getVertex(s));
+		}
+
+		HashMap<BitSet, NFAVertexND> dfaStates = new HashMap<BitSet, NFAVertexND>();
+		ArrayList<BitSet> toVisit = new ArrayList<BitSet>();
+		BitSet start = toStates(startStates);
+		NFAVertexND dfaStartState = addState(dfa, sortedStates, stateNames, start);
+		dfaStates.put(start, dfaStartState);
+		toVisit.add(start);
+		dfa.setInitialState(dfaStartState);
+
+		NFAVertexND emptyState = new NFAVertexND(0);
+		while (!toVisit.isEmpty()) {
+			BitSet P = toVisit.remove(toVisit.size() - 1);
+			NFAVertexND dfaState = dfaStates.get(P);
+			BitSet[] successors = successors(P);
+
+			/*
+			 * For a DFA all character class labels need to be disjoint. Since
+			 * the minterms are disjoint, the minterms leading to the same set
+			 * of states form one label.
+			 */
+			LinkedHashMap<BitSet, BitSet> statesToMinterms = new LinkedHashMap<BitSet, BitSet>();
+			BitSet toEmptyStateMinterms = (BitSet) alphabetMinterms.clone();
+			for (int minterm = 0; minterm < successors.length; minterm++) {
+				BitSet next = successors[minterm];
+				if (next != null) {
+					BitSet nextMinterms = statesToMinterms.get(next);
+					if (nextMinterms == null) {
+						nextMinterms = new BitSet();
+						statesToMinterms.put(next, nextMinterms);
+					}
+					nextMinterms.set(minterm);
+					toEmptyStateMinterms.clear(minterm);
+				}
+			}
+
+			/* the symbols in the alphabet not accounted for go to the empty state */
+			if (!toEmptyStateMinterms.isEmpty()) {
+				if (!dfa.containsVertex(emptyState)) {
+					dfa.addVertex(emptyState);
+					dfa.addEdge(new NFAEdge(emptyState, emptyState, mintermAlphabet.getLabel(alphabetMinterms)));
+				}
+				dfa.addEdge(new NFAEdge(dfaState, emptyState, mintermAlphabet.getLabel(toEmptyStateMinterms)));
+			}
+
+			for (Map.Entry<BitSet, BitSet> kv : statesToMinterms.entrySet()) {
+				BitSet next = kv.getKey();
+				NFAVertexND nextDfaState = dfaStates.get(next);
+				if (nextDfaState == null) {
+					nextDfaState = addState(dfa, sortedStates, stateNames, next);
+					dfaStates.put(next, nextDfaState);
+					toVisit.add(next);
+				}
+				dfa.addEdge(new NFAEdge(dfaState, nextDfaState, mintermAlphabet.getLabel(kv.getValue())));
+			}
+		}
+
+		return dfa;
+	}
+
+	/* Adds the state of a set of states to the DFA */
+	private NFAVertexND addState(NFAGraph dfa, int[] sortedStates, String[] stateNames, BitSet states) {
+		/* the names are in the order of the states, as the sets of states are */
+		StringBuilder labelBuilder = new StringBuilder();
+		for (int s : sortedStates) {
+			if (states.get(s)) {
+				if (labelBuilder.length() > 0) {
+					labelBuilder.append(", ");
+				}
+				labelBuilder.append(stateNames[s]);
+			}
+		}
+		/* note dfa states are not multidimensional */
+		NFAVertexND dfaState = new NFAVertexND(labelBuilder.toString());
+		dfa.addVertex(dfaState);
+		if (isAccepting(states)) {
+			dfa.addAcceptingState(dfaState);
+		}
+		return dfaState;
+	}
+
+	/* The numbers of the states of the NFA in the order of the states */
+	private int[] sortedStates() {
+		Integer[] states = new Integer[m.getNumStates()];
+		for (int s = 0; s < states.length; s++) {
+			states[s] = s;
+		}
+		Arrays.sort(states, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer s1, Integer s2) {
+				return m.getVertex(s1).compareTo(m.getVertex(s2));
+			}
+		});
+		int[] sortedStates = new int[states.length];
+		for (int i = 0; i < states.length; i++) {
+			sortedStates[i] = states[i];
+		}
+		return sortedStates;
+	}
+
+	private static String stateName(NFAVertexND v) {
+		List<String> subStates = v.getStates();
+		if (subStates.size() == 1) {
+			return subStates.get(0);
+		}
+		/* TODO determinizing a multidimensional NFA is untested */
+		StringBuilder name = new StringBuilder("(");
+		for (int i = 0; i < subStates.size(); i++) {
+			if (i > 0) {
+				name.append(", ");
+			}
+			name.append(subStates.get(i));
+		}
+		name.append(")");
+		return name.toString();
+	}
+
+}
@@ -0,0 +1,675 @@
+package nfa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import nfa.transitionlabel.CharacterClassTransitionLabel;
+import nfa.transitionlabel.EpsilonTransitionLabel;
+import nfa.transitionlabel.MintermAlphabet;
+import nfa.transitionlabel.TransitionLabel;
+import nfa.transitionlabel.TransitionLabel.TransitionType;
+import util.CompactRangeSet;
+
+/**
+ * A compact, int indexed representation of an NFA. The states are numbered
+ * densely from zero and the edges are stored in compressed sparse row form, so
+ * that walking the outgoing or incoming edges of a state neither hashes a
+ * vertex nor allocates an edge object.
+ *
+ * The outgoing edges of a state form one contiguous block of edge numbers:
+ * first the symbol transitions, in the order they were added, and then the
+ * epsilon transitions, sorted by priority.
+ */
+public class CompactNFA {
+
+	/* The vertex each state number represents */
+	private final NFAVertexND[] vertices;
+
+	private final HashMap<NFAVertexND, Integer> stateNumbers;
+
+	private final int initialState;
+
+	private final BitSet acceptingStates;
+
+	/*
+	 * The outgoing edges of state s are numbered from outgoingStart[s] up to
+	 * (but not including) outgoingStart[s + 1], of which the epsilon edges
+	 * start at epsilonStart[s]
+	 */
+	private final int[] outgoingStart;
+	private final int[] epsilonStart;
+
+	private final int[] edgeSource;
+	private final int[] edgeTarget;
+	private final TransitionLabel[] edgeLabel;
+	/* The priority of an epsilon edge, -1 for all other edges */
+	private final int[] edgePriority;
+	private final int[] edgeNumParallel;
+
+	/*
+	 * The numbers of the edges coming into state s are stored in incomingEdges
+	 * from incomingStart[s] up to (but not including) incomingStart[s + 1]
+	 */
+	private final int[] incomingStart;
+	private final int[] incomingEdges;
+
+	/* Both are computed when they are first asked for */
+	private MintermAlphabet mintermAlphabet;
+	/* The minterm sets of the symbol edges, null for all other edges */
+	private BitSet[] edgeMinterms;
+
+	/* States with fewer symbol edges are not indexed, as testing every edge is cheaper */
+	private static final int MIN_INDEXED_SYMBOL_EDGES = 8;
+
+	/* The symbol edge index of every state, built when it is first asked for */
+	private SymbolEdgeIndex[] symbolEdgeIndices;
+	private BitSet indexedStates;
+
+	protected CompactNFA(Builder b) {
+		this(b, null);
+	}
+
+	/**
+	 * @param mintermAlphabet
+	 *            A minterm alphabet containing the labels of the edges, which
+	 *            is constructed from the labels when null.
+	 */
+	protected CompactNFA(Builder b, MintermAlphabet mintermAlphabet) {
+		this.mintermAlphabet = mintermAlphabet;
+		int numStates = b.vertices.size();
+		vertices = b.vertices.toArray(new NFAVertexND[numStates]);
+		stateNumbers = b.stateNumbers;
+		initialState = b.initialState;
+		acceptingStates = (BitSet) b.acceptingStates.clone();
+
+		/* only the edges that were not removed while normalising */
+		int numEdges = 0;
+		for (int i = 0; i < b.numEdges; i++) {
+			if (b.labels[i] != null) {
+				numEdges++;
+			}
+		}
+
+		/* counting the outgoing symbol and epsilon edges of every state */
+		outgoingStart = new int[numStates + 1];
+		epsilonStart = new int[numStates];
+		int[] numSymbolEdges = new int[numStates];
+		for (int i = 0; i < b.numEdges; i++) {
+			if (b.labels[i] != null) {
+				outgoingStart[b.sources[i] + 1]++;
+				if (b.labels[i].getTransitionType() != TransitionType.EPSILON) {
+					numSymbolEdges[b.sources[i]]++;
+				}
+			}
+		}
+		for (int s = 0; s < numStates; s++) {
+			outgoingStart[s + 1] += outgoingStart[s];
+			epsilonStart[s] = outgoingStart[s] + numSymbolEdges[s];
+		}
+
+		edgeSource = new int[numEdges];
+		edgeTarget = new int[numEdges];
+		edgeLabel = new TransitionLabel[numEdges];
+		edgePriority = new int[numEdges];
+		edgeNumParallel = new int[numEdges];
+
+		int[] nextSymbolEdge = Arrays.copyOf(outgoingStart, numStates);
+		int[] nextEpsilonEdge = Arrays.copyOf(epsilonStart, numStates);
+		for (int i = 0; i < b.numEdges; i++) {
+			TransitionLabel label = b.labels[i];
+			if (label == null) {
+				continue;
+			}
+			int source = b.sources[i];
+			int e;
+			if (label.getTransitionType() == TransitionType.EPSILON) {
+				e = nextEpsilonEdge[source]++;
+				edgePriority[e] = ((EpsilonTransitionLabel) label).getPriority();
+			} else {
+				e = nextSymbolEdge[source]++;
+				edgePriority[e] = -1;
+			}
+			edgeSource[e] = source;
+			edgeTarget[e] = b.targets[i];
+			edgeLabel[e] = label;
+			edgeNumParallel[e] = b.numParallel[i];
+		}
+
+		/* sorting the epsilon edges of every state by priority (insertion sort is stable, and blocks are small) */
+		for (int s = 0; s < numStates; s++) {
+			int end = outgoingStart[s + 1];
+			for (int i = epsilonStart[s] + 1; i < end; i++) {
+				for (int j = i; j > epsilonStart[s] && edgePriority[j - 1] > edgePriority[j]; j--) {
+					swapEdges(j - 1, j);
+				}
+			}
+		}
+
+		/* building the incoming edges */
+		incomingStart = new int[numStates + 1];
+		for (int e = 0; e < numEdges; e++) {
+			incomingStart[edgeTarget[e] + 1]++;
+		}
+		for (int s = 0; s < numStates; s++) {
+			incomingStart[s + 1] += incomingStart[s];
+		}
+		incomingEdges = new int[numEdges];
+		int[] nextIncomingEdge = Arrays.copyOf(incomingStart, numStates);
+		for (int e = 0; e < numEdges; e++) {
+			incomingEdges[nextIncomingEdge[edgeTarget[e]]++] = e;
+		}
+	}
+
+	private void swapEdges(int e1, int e2) {
+		int tmpTarget = edgeTarget[e1];
+		edgeTarget[e1] = edgeTarget[e2];
+		edgeTarget[e2] = tmpTarget;
+		TransitionLabel tmpLabel = edgeLabel[e1];
+		edgeLabel[e1] = edgeLabel[e2];
+		edgeLabel[e2] = tmpLabel;
+		int tmpPriority = edgePriority[e1];
+		edgePriority[e1] = edgePriority[e2];
+		edgePriority[e2] = tmpPriority;
+		int tmpNumParallel = edgeNumParallel[e1];
+		edgeNumParallel[e1] = edgeNumParallel[e2];
+		edgeNumParallel[e2] = tmpNumParallel;
+	}
+
+	/**
+	 * Constructs a compact NFA equal to an NFA graph. The states are numbered
+	 * in the iteration order of the vertex set of the graph.
+	 *
+	 * @param m
+	 *            The NFA graph to convert.
+	 * @return The compact NFA.
+	 */
+	public static CompactNFA fromNFAGraph(NFAGraph m) {
+		Builder b = new Builder();
+		for (NFAVertexND v : m.vertexSet()) {
+			b.addState(v);
+		}
+		if (m.getInitialState() != null) {
+			b.setInitialState(b.getStateNumber(m.getInitialState()));
+		}
+		for (NFAVertexND v : m.getAcceptingStates()) {
+			b.addAcceptingState(b.getStateNumber(v));
+		}
+		for (NFAEdge e : m.edgeSet()) {
+			/* the edges of an NFA graph are already normalised */
+			b.appendEdge(b.getStateNumber(e.getSourceVertex()), b.getStateNumber(e.getTargetVertex()), e.getTransitionLabel(), e.getNumParallel());
+		}
+		return b.build();
+	}
+
+	/**
+	 * @return A new NFA graph equal to this compact NFA.
+	 */
+	public NFAGraph toNFAGraph() {
+		NFAGraph.Builder m = new NFAGraph.Builder();
+		for (int s = 0; s < vertices.length; s++) {
+			m.addVertex(getVertex(s));
+		}
+		if (initialState >= 0) {
+			m.setInitialState(getVertex(initialState));
+		}
+		for (int s = acceptingStates.nextSetBit(0); s >= 0; s = acceptingStates.nextSetBit(s + 1)) {
+			m.addAcceptingState(getVertex(s));
+		}
+		for (int e = 0; e < edgeLabel.length; e++) {
+			m.appendEdge(createEdge(e));
+		}
+		return m.build();
+	}
+
+	/**
+	 * Constructs an NFA graph containing only the specified states of this
+	 * compact NFA and the edges between them.
+	 *
+	 * @param states
+	 *            The states to include.
+	 * @param epsilonOnly
+	 *            True if only the epsilon edges should be included.
+	 * @return The subgraph induced by the states.
+	 */
+	public NFAGraph toNFAGraph(BitSet states, boolean epsilonOnly) {
+		/* the edges of products are appended without merging them, so there can be many to merge */
+		NFAGraph.Builder m = new NFAGraph.Builder();
+		for (int s = states.nextSetBit(0); s >= 0; s = states.nextSetBit(s + 1)) {
+			m.addVertex(getVertex(s));
+		}
+		for (int s = states.nextSetBit(0); s >= 0; s = states.nextSetBit(s + 1)) {
+			int from = epsilonOnly ? epsilonStart[s] : outgoingStart[s];
+			for (int e = from; e < outgoingStart[s + 1]; e++) {
+				if (states.get(edgeTarget[e])) {
+					m.appendEdge(createEdge(e));
+				}
+			}
+		}
+		return m.build();
+	}
+
+	/**
+	 * @param e
+	 *            The number of the edge.
+	 * @return A new NFA edge equal to the edge.
+	 */
+	public NFAEdge createEdge(int e) {
+		NFAEdge newEdge = new NFAEdge(getVertex(edgeSource[e]), getVertex(edgeTarget[e]), edgeLabel[e]);
+		newEdge.setNumParallel(edgeNumParallel[e]);
+		return newEdge;
+	}
+
+	public int getNumStates() {
+		return vertices.length;
+	}
+
+	public int getNumEdges() {
+		return edgeLabel.length;
+	}
+
+	/**
+	 * @return The number of the initial state, or -1 if there is none.
+	 */
+	public int getInitialState() {
+		return initialState;
+	}
+
+	public boolean isAcceptingState(int s) {
+		return acceptingStates.get(s);
+	}
+
+	/**
+	 * @return A copy of the set of accepting state numbers.
+	 */
+	public BitSet getAcceptingStates() {
+		return (BitSet) acceptingStates.clone();
+	}
+
+	public NFAVertexND getVertex(int s) {
+		NFAVertexND v = vertices[s];
+		return v != null ? v : decodeVertex(s);
+	}
+
+	/**
+	 * Constructs the vertex of a state that was added to the builder without
+	 * one. Subclasses that add such states must override this method.
+	 * 
+	 * @param s
+	 *            The number of the state.
+	 * @return The vertex the state represents.
+	 */
+	protected NFAVertexND decodeVertex(int s) {
+		throw new IllegalStateException("State " + s + " has no vertex");
+	}
+
+	/**
+	 * @param v
+	 *            The vertex to find.
+	 * @return The number of the state representing the vertex, or -1 if there
+	 *         is no such state.
+	 */
+	public int getStateNumber(NFAVertexND v) {
+		Integer s = stateNumbers.get(v);
+		return s == null ? -1 : s;
+	}
+
+	/* The outgoing edges of s are numbered [getOutgoingStart(s), getOutgoingEnd(s)) */
+	public int getOutgoingStart(int s) {
+		return outgoingStart[s];
+	}
+
+	/* The outgoing epsilon edges of s are numbered [getEpsilonStart(s), getOutgoingEnd(s)) */
+	public int getEpsilonStart(int s) {
+		return epsilonStart[s];
+	}
+
+	public int getOutgoingEnd(int s) {
+		return outgoingStart[s + 1];
+	}
+
+	public int getOutDegree(int s) {
+		return outgoingStart[s + 1] - outgoingStart[s];
+	}
+
+	public boolean hasSymbolEdges(int s) {
+		return epsilonStart[s] > outgoingStart[s];
+	}
+
+	/* The incoming edges of s are getIncomingEdge(i) for i in [getIncomingStart(s), getIncomingEnd(s)) */
+	public int getIncomingStart(int s) {
+		return incomingStart[s];
+	}
+
+	public int getIncomingEnd(int s) {
+		return incomingStart[s + 1];
+	}
+
+	public int getIncomingEdge(int i) {
+		return incomingEdges[i];
+	}
+
+	public int getEdgeSource(int e) {
+		return edgeSource[e];
+	}
+
+	public int getEdgeTarget(int e) {
+		return edgeTarget[e];
+	}
+
+	public TransitionLabel getEdgeLabel(int e) {
+		return edgeLabel[e];
+	}
+
+	public int getEdgeNumParallel(int e) {
+		return edgeNumParallel[e];
+	}
+
+	public boolean isEpsilonEdge(int e) {
+		return e >= epsilonStart[edgeSource[e]];
+	}
+
+	/**
+	 * @return The partition of the characters of the character class labels
+	 *         of this NFA into minterms.
+	 */
+	public MintermAlphabet getMintermAlphabet() {
+		if (mintermAlphabet == null) {
+			HashSet<TransitionLabel> labels = new HashSet<TransitionLabel>();
+			for (int e = 0; e < edgeLabel.length; e++) {
+				if (edgeLabel[e] instanceof CharacterClassTransitionLabel) {
+					labels.add(edgeLabel[e]);
+				}
+			}
+			mintermAlphabet = new MintermAlphabet(labels);
+		}
+		return mintermAlphabet;
+	}
+
+	/**
+	 * @param e
+	 *            The number of the edge.
+	 * @return The numbers of the minterms in the label of a character class
+	 *         edge, which should not be modified, or null for all other
+	 *         edges.
+	 */
+	public BitSet getEdgeMinterms(int e) {
+		if (edgeMinterms == null) {
+			MintermAlphabet alphabet = getMintermAlphabet();
+			edgeMinterms = new BitSet[edgeLabel.length];
+			for (int i = 0; i < edgeLabel.length; i++) {
+				if (edgeLabel[i] instanceof CharacterClassTransitionLabel) {
+					edgeMinterms[i] = alphabet.getMinterms(edgeLabel[i]);
+				}
+			}
+		}
+		return edgeMinterms[e];
+	}
+
+	/**
+	 * Finds the index over the symbol edges of a state, for states with
+	 * enough character class edges that testing every one of them against a
+	 * label is slower than looking the label up.
+	 *
+	 * @param s
+	 *            The number of the state.
+	 * @return The index, or null if the edges of the state are not indexed.
+	 */
+	public SymbolEdgeIndex getSymbolEdgeIndex(int s) {
+		if (epsilonStart[s] - outgoingStart[s] < MIN_INDEXED_SYMBOL_EDGES) {
+			return null;
+		}
+		if (symbolEdgeIndices == null) {
+			symbolEdgeIndices = new SymbolEdgeIndex[vertices.length];
+			indexedStates = new BitSet(vertices.length);
+		}
+		if (!indexedStates.get(s)) {
+			indexedStates.set(s);
+			CompactRangeSet[] edgeRanges = new CompactRangeSet[epsilonStart[s] - outgoingStart[s]];
+			for (int e = outgoingStart[s]; e < epsilonStart[s]; e++) {
+				if (!(edgeLabel[e] instanceof CharacterClassTransitionLabel)) {
+					/* other labels have no ranges to index */
+					return null;
+				}
+				edgeRanges[e - outgoingStart[s]] = ((CharacterClassTransitionLabel) edgeLabel[e]).getRanges();
+			}
+			symbolEdgeIndices[s] = new SymbolEdgeIndex(outgoingStart[s], edgeRanges);
+		}
+		return symbolEdgeIndices[s];
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("I:" + (initialState >= 0 ? getVertex(initialState) : null) + " A:");
+		for (int s = acceptingStates.nextSetBit(0); s >= 0; s = acceptingStates.nextSetBit(s + 1)) {
+			sb.append(getVertex(s) + ";");
+		}
+		sb.append(" (");
+		for (int e = 0; e < edgeLabel.length; e++) {
+			sb.append(getVertex(edgeSource[e]) + "-" + edgeLabel[e] + "*" + edgeNumParallel[e] + "->" + getVertex(edgeTarget[e]));
+			if (e < edgeLabel.length - 1) {
+				sb.append(", ");
+			}
+		}
+		sb.append(")");
+		return sb.toString();
+	}
+
+	/**
+	 * Collects the states and edges of a compact NFA. Edges added with
+	 * {@link #addEdge(int, int, TransitionLabel, int)} are merged with the
+	 * parallel and overlapping edges between the same states exactly as
+	 * {@link NFAGraph#addEdge(NFAEdge)} would.
+	 */
+	public static class Builder {
+
+		private final ArrayList<NFAVertexND> vertices;
+		private final HashMap<NFAVertexND, Integer> stateNumbers;
+		private int initialState;
+		private final BitSet acceptingStates;
+
+		private int numEdges;
+		private int[] sources;
+		private int[] targets;
+		/* a null label marks an edge removed while normalising */
+		private TransitionLabel[] labels;
+		private int[] numParallel;
+
+		/* the numbers of the edges between every pair of states, only built when edges are normalised */
+		private HashMap<Long, ArrayList<Integer>> edgesBetween;
+
+		public Builder() {
+			vertices = new ArrayList<NFAVertexND>();
+			stateNumbers = new HashMap<NFAVertexND, Integer>();
+			initialState = -1;
+			acceptingStates = new BitSet();
+			sources = new int[16];
+			targets = new int[16];
+			labels = new TransitionLabel[16];
+			numParallel = new int[16];
+		}
+
+		/**
+		 * Adds a new state.
+		 *
+		 * @param v
+		 *            The vertex the state represents.
+		 * @return The number of the new state.
+		 */
+		public int addState(NFAVertexND v) {
+			if (stateNumbers.containsKey(v)) {
+				throw new IllegalArgumentException("Builder already contains vertex: " + v);
+			}
+			int s = vertices.size();
+			vertices.add(v);
+			stateNumbers.put(v, s);
+			return s;
+		}
+
+		/**
+		 * Adds a new state without a vertex, which the compact NFA constructs
+		 * on demand with {@link CompactNFA#decodeVertex(int)}.
+		 *
+		 * @return The number of the new state.
+		 */
+		public int addState() {
+			int s = vertices.size();
+			vertices.add(null);
+			return s;
+		}
+
+		/**
+		 * @return The number of the state representing the vertex, or -1 if
+		 *         there is no such state.
+		 */
+		public int getStateNumber(NFAVertexND v) {
+			Integer s = stateNumbers.get(v);
+			return s == null ? -1 : s;
+		}
+
+		public int getNumStates() {
+			return vertices.size();
+		}
+
+		public void setInitialState(int s) {
+			checkState(s);
+			initialState = s;
+		}
+
+		public void addAcceptingState(int s) {
+			checkState(s);
+			acceptingStates.set(s);
+		}
+
+		private void checkState(int s) {
+			if (s < 0 || s >= vertices.size()) {
+				throw new IllegalArgumentException("Builder does not contain state: " + s);
+			}
+		}
+
+		/**
+		 * Adds a new edge, merging it with the edges already between the same
+		 * states in the same way as {@link NFAGraph#addEdge(NFAEdge)}.
+		 *
+		 * @param source
+		 *            The number of the source state.
+		 * @param target
+		 *            The number of the target state.
+		 * @param label
+		 *            The transition label of the edge.
+		 * @param weight
+		 *            The number of parallel edges the edge represents.
+		 */
+		public void addEdge(int source, int target, TransitionLabel label, int weight) {
+			if (label.isEmpty()) {
+				return;
+			}
+			checkState(source);
+			checkState(target);
+			if (edgesBetween == null) {
+				indexEdges();
+			}
+			Long pair = pairKey(source, target);
+			ArrayList<Integer> es = edgesBetween.get(pair);
+			if (es == null) {
+				es = new ArrayList<Integer>(2);
+				edgesBetween.put(pair, es);
+			}
+			for (int e : es) {
+				if (labels[e].equals(label)) {
+					/* if the edge exists increase the number of its parallel edges */
+					numParallel[e]++;
+					return;
+				}
+			}
+			if (label.getTransitionType() == TransitionType.SYMBOL) {
+				/* check if the new edge overlaps the current edges */
+				for (int e : es) {
+					TransitionLabel current = labels[e];
+					if (current.getTransitionType() != TransitionType.SYMBOL) {
+						/* epsilon edges cannot overlap */
+						continue;
+					}
+					TransitionLabel intersection = label.intersection(current);
+					if (!intersection.isEmpty()) {
+						TransitionLabel currentRelabel = current.intersection(label.complement());
+						int currentWeight = 0;
+						if (!currentRelabel.isEmpty()) {
+							currentWeight = numParallel[e];
+							removeEdge(pair, e);
+							addEdge(source, target, currentRelabel, currentWeight);
+						}
+						addEdge(source, target, intersection, currentWeight + weight);
+						TransitionLabel newRelabel = label.intersection(current.complement());
+						if (!newRelabel.isEmpty()) {
+							addEdge(source, target, newRelabel, weight);
+						}
+						return;
+					}
+				}
+			}
+			appendEdge(source, target, label, weight);
+		}
+
+		/**
+		 * Adds a new edge without merging it with the edges between the same
+		 * states, for edges known not to be parallel to or overlap any other.
+		 *
+		 * @return The index of the new edge in the builder.
+		 */
+		public int appendEdge(int source, int target, TransitionLabel label, int weight) {
+			if (numEdges == labels.length) {
+				int newLength = 2 * labels.length;
+				sources = Arrays.copyOf(sources, newLength);
+				targets = Arrays.copyOf(targets, newLength);
+				labels = Arrays.copyOf(labels, newLength);
+				numParallel = Arrays.copyOf(numParallel, newLength);
+			}
+			sources[numEdges] = source;
+			targets[numEdges] = target;
+			labels[numEdges] = label;
+			numParallel[numEdges] = weight;
+			if (edgesBetween != null) {
+				Long pair = pairKey(source, target);
+				ArrayList<Integer> es = edgesBetween.get(pair);
+				if (es == null) {
+					es = new ArrayList<Integer>(2);
+					edgesBetween.put(pair, es);
+				}
+				es.add(numEdges);
+			}
+			return numEdges++;
+		}
+
+		private void removeEdge(Long pair, int e) {
+			labels[e] = null;
+			edgesBetween.get(pair).remove(Integer.valueOf(e));
+		}
+
+		private void indexEdges() {
+			edgesBetween = new HashMap<Long, ArrayList<Integer>>();
+			for (int e = 0; e < numEdges; e++) {
+				if (labels[e] != null) {
+					Long pair = pairKey(sources[e], targets[e]);
+					ArrayList<Integer> es = edgesBetween.get(pair);
+					if (es == null) {
+						es = new ArrayList<Integer>(2);
+						edgesBetween.put(pair, es);
+					}
+					es.add(e);
+				}
+			}
+		}
+
+		private static Long pairKey(int source, int target) {
+			return ((long) source << 32) | (target & 0xffffffffL);
+		}
+
+		public CompactNFA build() {
+			return new CompactNFA(this);
+		}
+	}
+
+}
@@ -152,7 +152,8 @@ public class NFAEdge extends DefaultEdge implements Comparable<NFAEdge> {
 		if (!targetVertex.equals(n.targetVertex)) {
 			return false;
 		}
-		return transitionLabel.equals(n.transitionLabel);
+		/* labels are mostly interned, so they are compared by reference first */
+		return transitionLabel == n.transitionLabel || transitionLabel.equals(n.transitionLabel);
 	}
 
 	@Override
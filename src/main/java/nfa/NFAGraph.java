@@ -3,7 +3,9 @@ package nfa;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Set;
 import java.util.Iterator;
 
@@ -73,21 +75,22 @@ public class NFAGraph extends DirectedPseudograph<NFAVertexND, NFAEdge> {
 	 * @return A new instance of a NFAGraph equal to this instance
 	 */
 	public NFAGraph copy() {
-		NFAGraph c = new NFAGraph();
+		Builder b = new Builder();
 		for (NFAVertexND v : super.vertexSet()) {
-			c.addVertex(v.copy());
+			b.addVertex(v.copy());
 		}
 		for (NFAEdge e : super.edgeSet()) {
-			c.addEdge(e.copy());
+			b.appendEdge(e.copy());
 		}
+		
+		for (NFAVertexND v : acceptingStates) {
+			b.addAcceptingState(v.copy());
+		}
+		NFAGraph c = b.build();
 
 		if (initialState != null) {
 			c.initialState = initialState.copy();
 		}
-		
-		for (NFAVertexND v : acceptingStates) {
-			c.addAcceptingState(v.copy());
-		}
 		return c;
 	}
 
@@ -176,27 +179,6 @@ public class NFAGraph extends DirectedPseudograph<NFAVertexND, NFAEdge> {
 		return super.addEdge(newEdge.getSourceVertex(), newEdge.getTargetVertex(), newEdge);
 	}
 
-	/**
-	 * All the edges representing an epsilon transition from a vertex
-	 * 
-	 * @param v
-	 *            The vertex to find the epsilon transitions from.
-	 * @return A set of NFA edges representing the epsilon transitions.
-	 */
-	public Set<NFAEdge> outgoingEpsilonEdgesOf(NFAVertexND v) {
-		Set<NFAEdge> allEdges = super.outgoingEdgesOf(v);
-
-		Set<NFAEdge> toReturn = new HashSet<NFAEdge>();
-
-		for (NFAEdge e : allEdges) {
-			if (e.getIsEpsilonTransition()) {
-				toReturn.add(e);
-			}
-		}
-
-		return toReturn;
-	}
-
 	@Override
 	public boolean addVertex(NFAVertexND v) {
 		if (containsVertex(v)) {
@@ -294,4 +276,187 @@ public class NFAGraph extends DirectedPseudograph<NFAVertexND, NFAEdge> {
 			sb.append("\"");
 			return sb.toString();
 	}
+
+	/**
+	 * Constructs an NFA graph from many edges at once. The edges are only
+	 * staged when they are appended, and at {@link #build()} the parallel and
+	 * overlapping edges between every pair of vertices are merged exactly as
+	 * {@link NFAGraph#addEdge(NFAEdge)} would have merged them if they were
+	 * added in the same order. The edges between a pair of vertices are only
+	 * compared with each other, instead of with all the edges leaving their
+	 * source, and no edge is added to the graph only to be removed again.
+	 */
+	public static class Builder {
+
+		private final NFAGraph m;
+
+		private final ArrayList<NFAEdge> stagedEdges;
+
+		public Builder() {
+			m = new NFAGraph();
+			stagedEdges = new ArrayList<NFAEdge>();
+		}
+
+		public boolean containsVertex(NFAVertexND v) {
+			return m.containsVertex(v);
+		}
+
+		public void addVertex(NFAVertexND v) {
+			m.addVertex(v);
+		}
+
+		public void setInitialState(NFAVertexND initialState) {
+			m.setInitialState(initialState);
+		}
+
+		public void addAcceptingState(NFAVertexND acceptingState) {
+			m.addAcceptingState(acceptingState);
+		}
+
+		/**
+		 * Stages an edge to be added when the graph is built.
+		 *
+		 * @param newEdge
+		 *            The edge, between vertices that were added already.
+		 */
+		public void appendEdge(NFAEdge newEdge) {
+			if (newEdge == null) {
+				throw new NullPointerException("New edge cannot be null");
+			}
+			if (!m.containsVertex(newEdge.getSourceVertex())) {
+				throw new IllegalArgumentException("Graph doesn't contain vertex: " + newEdge.getSourceVertex());
+			}
+			if (!m.containsVertex(newEdge.getTargetVertex())) {
+				throw new IllegalArgumentException("Graph doesn't contain vertex: " + newEdge.getTargetVertex());
+			}
+			stagedEdges.add(newEdge);
+		}
+
+		/**
+		 * Merges the staged edges and adds them to the graph.
+		 *
+		 * @return The graph, after which the builder should not be used.
+		 */
+		public NFAGraph build() {
+			/* grouping the staged edges by the pair of vertices they are between, in the order they were appended */
+			LinkedHashMap<NFAVertexND, HashMap<NFAVertexND, ArrayList<Integer>>> pairEdges = new LinkedHashMap<NFAVertexND, HashMap<NFAVertexND, ArrayList<Integer>>>();
+			for (int i = 0; i < stagedEdges.size(); i++) {
+				NFAEdge e = stagedEdges.get(i);
+				HashMap<NFAVertexND, ArrayList<Integer>> sourceEdges = pairEdges.get(e.getSourceVertex());
+				if (sourceEdges == null) {
+					sourceEdges = new HashMap<NFAVertexND, ArrayList<Integer>>();
+					pairEdges.put(e.getSourceVertex(), sourceEdges);
+				}
+				ArrayList<Integer> edges = sourceEdges.get(e.getTargetVertex());
+				if (edges == null) {
+					edges = new ArrayList<Integer>();
+					sourceEdges.put(e.getTargetVertex(), edges);
+				}
+				edges.add(i);
+			}
+
+			/*
+			 * merging the edges of every pair separately, stamping every
+			 * resulting edge with the position it would have been added at, so
+			 * that the edges can be added in the same order as edge by edge
+			 */
+			ArrayList<StampedEdge> mergedEdges = new ArrayList<StampedEdge>();
+			for (HashMap<NFAVertexND, ArrayList<Integer>> sourceEdges : pairEdges.values()) {
+				for (ArrayList<Integer> edges : sourceEdges.values()) {
+					ArrayList<StampedEdge> currentPairEdges = new ArrayList<StampedEdge>();
+					for (int i : edges) {
+						int[] numAdded = new int[1];
+						addPairEdge(currentPairEdges, stagedEdges.get(i), (long) i << 32, numAdded);
+					}
+					mergedEdges.addAll(currentPairEdges);
+				}
+			}
+			Collections.sort(mergedEdges);
+			for (StampedEdge se : mergedEdges) {
+				m.addMergedEdge(se.edge);
+			}
+			stagedEdges.clear();
+			return m;
+		}
+
+		/*
+		 * Adds an edge to the merged edges between its pair of vertices the
+		 * way NFAGraph.addEdge adds it to the graph.
+		 */
+		private static void addPairEdge(ArrayList<StampedEdge> currentPairEdges, NFAEdge newEdge, long stampBase, int[] numAdded) {
+			if (newEdge.getTransitionLabel().isEmpty()) {
+				return;
+			}
+			for (StampedEdge se : currentPairEdges) {
+				if (se.edge.equals(newEdge)) {
+					/* if the edge exists increase the number of its parallel edges */
+					se.edge.incNumParallel();
+					return;
+				}
+			}
+			if (!newEdge.getIsEpsilonTransition()) {
+				NFAVertexND s = newEdge.getSourceVertex();
+				NFAVertexND t = newEdge.getTargetVertex();
+				/* the edges are only changed before returning, so the loop does not continue over them */
+				for (int i = 0; i < currentPairEdges.size(); i++) {
+					NFAEdge currentEdge = currentPairEdges.get(i).edge;
+					/* epsilon edges cannot overlap */
+					if (currentEdge.getTransitionType() == TransitionType.SYMBOL) {
+						TransitionLabel tlCurrentEdge = currentEdge.getTransitionLabel();
+						TransitionLabel tlNewEdge = newEdge.getTransitionLabel();
+						TransitionLabel intersection = tlNewEdge.intersection(tlCurrentEdge);
+						if (!intersection.isEmpty()) {
+							/* overlapping edge */
+							TransitionLabel currentEdgeRelabel = tlCurrentEdge.intersection(tlNewEdge.complement());
+							int currentEdgeWeight = 0;
+							if (!currentEdgeRelabel.isEmpty()) {
+								currentEdgeWeight = currentEdge.getNumParallel();
+								currentPairEdges.remove(i);
+
+								NFAEdge currentEdgeRelabeled = new NFAEdge(s, t, currentEdgeRelabel);
+								currentEdgeRelabeled.setNumParallel(currentEdgeWeight);
+								addPairEdge(currentPairEdges, currentEdgeRelabeled, stampBase, numAdded);
+							}
+
+							NFAEdge overlappingEdge = new NFAEdge(s, t, intersection);
+							overlappingEdge.setNumParallel(currentEdgeWeight + newEdge.getNumParallel());
+							addPairEdge(currentPairEdges, overlappingEdge, stampBase, numAdded);
+
+							TransitionLabel newEdgeRelabel = tlNewEdge.intersection(tlCurrentEdge.complement());
+							if (!newEdgeRelabel.isEmpty()) {
+								NFAEdge newEdgeRelabeled = new NFAEdge(s, t, newEdgeRelabel);
+								newEdgeRelabeled.setNumParallel(newEdge.getNumParallel());
+								addPairEdge(currentPairEdges, newEdgeRelabeled, stampBase, numAdded);
+							}
+							return;
+						}
+					}
+				}
+			}
+			currentPairEdges.add(new StampedEdge(newEdge, stampBase | numAdded[0]++));
+		}
+
+		private static class StampedEdge implements Comparable<StampedEdge> {
+
+			private final NFAEdge edge;
+
+			/* the appended edge it resulted from in the high bits, the edges added for it before in the low bits */
+			private final long stamp;
+
+			private StampedEdge(NFAEdge edge, long stamp) {
+				this.edge = edge;
+				this.stamp = stamp;
+			}
+
+			@Override
+			public int compareTo(StampedEdge o) {
+				return Long.compare(stamp, o.stamp);
+			}
+		}
+	}
+
+	/* Adds an edge the builder merged already */
+	private void addMergedEdge(NFAEdge e) {
+		super.addEdge(e.getSourceVertex(), e.getTargetVertex(), e);
+	}
 }
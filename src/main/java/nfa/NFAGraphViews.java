@@ -0,0 +1,108 @@
+package nfa;
+
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.jgrapht.Graph;
+import org.jgrapht.graph.AsUnmodifiableGraph;
+import org.jgrapht.graph.EdgeReversedGraph;
+import org.jgrapht.graph.MaskSubgraph;
+
+import nfa.transitionlabel.TransitionLabel.TransitionType;
+
+/**
+ * Read-only views of NFA graphs. A view shares the vertices and edges of the
+ * graph it is created from, so creating one does not copy the graph, and it
+ * reflects later changes to the graph. Views can be combined, for example to
+ * view only the epsilon transitions between a set of vertices.
+ */
+public final class NFAGraphViews {
+
+	private NFAGraphViews() {
+	}
+
+	/**
+	 * Creates a view of a graph with all its edges reversed.
+	 *
+	 * Note that the edges of the view are the edges of the graph, so their
+	 * own source and target vertices are not reversed. Use
+	 * {@link Graph#getEdgeSource(Object)} and
+	 * {@link Graph#getEdgeTarget(Object)} of the view instead.
+	 *
+	 * @param m
+	 *            The graph to reverse.
+	 * @return The reversed view.
+	 */
+	public static Graph<NFAVertexND, NFAEdge> reversed(Graph<NFAVertexND, NFAEdge> m) {
+		return new AsUnmodifiableGraph<NFAVertexND, NFAEdge>(new EdgeReversedGraph<NFAVertexND, NFAEdge>(m));
+	}
+
+	/**
+	 * Creates a view of a graph containing all its vertices, but only the
+	 * edges of a specified transition type.
+	 *
+	 * @param m
+	 *            The graph to filter.
+	 * @param transitionType
+	 *            The transition type of the edges to keep.
+	 * @return The filtered view.
+	 */
+	public static Graph<NFAVertexND, NFAEdge> withTransitionType(Graph<NFAVertexND, NFAEdge> m, final TransitionType transitionType) {
+		return new MaskSubgraph<NFAVertexND, NFAEdge>(m, new Predicate<NFAVertexND>() {
+			@Override
+			public boolean test(NFAVertexND v) {
+				return false;
+			}
+		}, new Predicate<NFAEdge>() {
+			@Override
+			public boolean test(NFAEdge e) {
+				/* the edges for which the mask is true are hidden */
+				return e.getTransitionType() != transitionType;
+			}
+		});
+	}
+
+	/**
+	 * Creates a view of the subgraph induced by a set of vertices, containing
+	 * the vertices and all the edges between them.
+	 *
+	 * @param m
+	 *            The graph to view a part of.
+	 * @param vertices
+	 *            The vertices to keep, which should be contained in the graph.
+	 * @return The induced subgraph view.
+	 */
+	public static Graph<NFAVertexND, NFAEdge> induced(Graph<NFAVertexND, NFAEdge> m, final Set<NFAVertexND> vertices) {
+		return new MaskSubgraph<NFAVertexND, NFAEdge>(m, new Predicate<NFAVertexND>() {
+			@Override
+			public boolean test(NFAVertexND v) {
+				return !vertices.contains(v);
+			}
+		}, new Predicate<NFAEdge>() {
+			@Override
+			public boolean test(NFAEdge e) {
+				/* edges to hidden vertices are hidden by the vertex mask */
+				return false;
+			}
+		});
+	}
+
+	/**
+	 * Constructs a new NFA graph containing the vertices and edges of a view,
+	 * for when the view has to outlive changes to the graph it views.
+	 *
+	 * @param view
+	 *            The view to copy.
+	 * @return A new NFA graph sharing the vertex and edge objects of the view.
+	 */
+	public static NFAGraph toNFAGraph(Graph<NFAVertexND, NFAEdge> view) {
+		NFAGraph.Builder m = new NFAGraph.Builder();
+		for (NFAVertexND v : view.vertexSet()) {
+			m.addVertex(v);
+		}
+		for (NFAEdge e : view.edgeSet()) {
+			m.appendEdge(e);
+		}
+		return m.build();
+	}
+}
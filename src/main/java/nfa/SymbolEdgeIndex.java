@@ -0,0 +1,124 @@
+package nfa;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import util.CompactRangeSet;
+
+/**
+ * An index over the character class edges leaving one state of a compact NFA,
+ * for finding the edges whose labels overlap a set of characters without
+ * testing every edge. The bounds of the ranges of all the labels are sorted
+ * into an array of boundaries, which split the characters into intervals
+ * that no label tells apart, and every interval stores the edges whose labels
+ * contain it.
+ */
+public class SymbolEdgeIndex {
+
+	/* The number of the first indexed edge, edges are stored as offsets from it */
+	private final int firstEdge;
+
+	private final int numEdges;
+
+	/* The sorted, distinct bounds of the ranges of all the labels */
+	private final int[] boundaries;
+
+	/*
+	 * The offsets of the edges containing the interval from boundaries[i] up
+	 * to boundaries[i + 1] are stored in ascending order in intervalEdges
+	 * from intervalStart[i] up to (but not including) intervalStart[i + 1]
+	 */
+	private final int[] intervalStart;
+	private final int[] intervalEdges;
+
+	/**
+	 * @param firstEdge
+	 *            The number of the first edge to index.
+	 * @param edgeRanges
+	 *            The ranges of the labels of the edges numbered from
+	 *            firstEdge up.
+	 */
+	SymbolEdgeIndex(int firstEdge, CompactRangeSet[] edgeRanges) {
+		this.firstEdge = firstEdge;
+		this.numEdges = edgeRanges.length;
+
+		int numBounds = 0;
+		for (CompactRangeSet rs : edgeRanges) {
+			numBounds += 2 * rs.getNumRanges();
+		}
+		int[] bounds = new int[numBounds];
+		numBounds = 0;
+		for (CompactRangeSet rs : edgeRanges) {
+			for (int r = 0; r < rs.getNumRanges(); r++) {
+				bounds[numBounds++] = rs.getLow(r);
+				bounds[numBounds++] = rs.getHigh(r);
+			}
+		}
+		Arrays.sort(bounds);
+		int numBoundaries = 0;
+		for (int b = 0; b < bounds.length; b++) {
+			if (numBoundaries == 0 || bounds[numBoundaries - 1] != bounds[b]) {
+				bounds[numBoundaries++] = bounds[b];
+			}
+		}
+		boundaries = Arrays.copyOf(bounds, numBoundaries);
+		int numIntervals = Math.max(0, numBoundaries - 1);
+
+		/* counting the edges of every interval, and then storing them */
+		intervalStart = new int[numIntervals + 1];
+		for (CompactRangeSet rs : edgeRanges) {
+			for (int r = 0; r < rs.getNumRanges(); r++) {
+				for (int i = Arrays.binarySearch(boundaries, rs.getLow(r)); boundaries[i] < rs.getHigh(r); i++) {
+					intervalStart[i + 1]++;
+				}
+			}
+		}
+		for (int i = 0; i < numIntervals; i++) {
+			intervalStart[i + 1] += intervalStart[i];
+		}
+		intervalEdges = new int[intervalStart[numIntervals]];
+		int[] nextIntervalEdge = Arrays.copyOf(intervalStart, numIntervals);
+		for (int l = 0; l < edgeRanges.length; l++) {
+			CompactRangeSet rs = edgeRanges[l];
+			for (int r = 0; r < rs.getNumRanges(); r++) {
+				for (int i = Arrays.binarySearch(boundaries, rs.getLow(r)); boundaries[i] < rs.getHigh(r); i++) {
+					intervalEdges[nextIntervalEdge[i]++] = l;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the indexed edges whose labels overlap a set of characters.
+	 *
+	 * @param ranges
+	 *            The set of characters.
+	 * @return The numbers of the edges, in ascending order.
+	 */
+	public int[] getOverlappingEdges(CompactRangeSet ranges) {
+		int numIntervals = intervalStart.length - 1;
+		BitSet overlappingEdges = new BitSet(numEdges);
+		for (int r = 0; r < ranges.getNumRanges(); r++) {
+			int low = ranges.getLow(r);
+			int high = ranges.getHigh(r);
+			/* starting at the interval containing low, or the first interval if low comes before it */
+			int i = Arrays.binarySearch(boundaries, low);
+			if (i < 0) {
+				i = Math.max(0, -i - 2);
+			}
+			for (; i < numIntervals && boundaries[i] < high; i++) {
+				for (int j = intervalStart[i]; j < intervalStart[i + 1]; j++) {
+					overlappingEdges.set(intervalEdges[j]);
+				}
+			}
+		}
+
+		int[] edges = new int[overlappingEdges.cardinality()];
+		int numFound = 0;
+		for (int l = overlappingEdges.nextSetBit(0); l >= 0; l = overlappingEdges.nextSetBit(l + 1)) {
+			edges[numFound++] = firstEdge + l;
+		}
+		return edges;
+	}
+
+}
@@ -1,31 +1,217 @@
 package nfa;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 
+/**
+ * A state of an unprioritised NFA: a state q of an NFA together with the set
+ * P of states of the NFA with a higher priority than q. P is stored as a
+ * bitset over a numbering of the states of the NFA, which is shared by all
+ * the states of one unprioritised NFA, so that sets can be combined and
+ * compared a word at a time.
+ */
 public class UPNFAState extends NFAVertexND {
-	
-	private final Set<NFAVertexND> P;
+
+	/**
+	 * A dense numbering of the states of an NFA, for storing sets of them as
+	 * bitsets of a fixed width.
+	 */
+	public static class StateNumbering {
+
+		private final NFAVertexND[] vertices;
+
+		private final HashMap<NFAVertexND, Integer> numbers;
+
+		/* The hash code of every vertex, the hash code of a set is their sum, as for a HashSet */
+		private final int[] hashCodes;
+
+		public StateNumbering(Collection<NFAVertexND> vertices) {
+			this.vertices = new NFAVertexND[vertices.size()];
+			numbers = new HashMap<NFAVertexND, Integer>();
+			for (NFAVertexND v : vertices) {
+				if (!numbers.containsKey(v)) {
+					this.vertices[numbers.size()] = v;
+					numbers.put(v, numbers.size());
+				}
+			}
+			hashCodes = new int[numbers.size()];
+			for (int i = 0; i < hashCodes.length; i++) {
+				hashCodes[i] = this.vertices[i].hashCode();
+			}
+		}
+
+		public int size() {
+			return hashCodes.length;
+		}
+
+		/**
+		 * @return The number of the vertex, or -1 if it is not numbered.
+		 */
+		public int getNumber(NFAVertexND v) {
+			Integer number = numbers.get(v);
+			return number != null ? number : -1;
+		}
+
+		public NFAVertexND getVertex(int i) {
+			return vertices[i];
+		}
+
+		/**
+		 * @return A new bitset with room for every numbered vertex.
+		 */
+		public long[] createSet() {
+			return new long[(size() + 63) >>> 6];
+		}
+
+		public boolean contains(long[] set, int i) {
+			return (set[i >>> 6] & (1L << (i & 63))) != 0;
+		}
+
+		/**
+		 * Adds a vertex to a set.
+		 *
+		 * @param set
+		 *            The set, which is modified.
+		 * @param i
+		 *            The number of the vertex.
+		 * @return The amount the hash code of the set grows by, zero if the
+		 *         vertex was in the set already.
+		 */
+		public int add(long[] set, int i) {
+			long bit = 1L << (i & 63);
+			if ((set[i >>> 6] & bit) != 0) {
+				return 0;
+			}
+			set[i >>> 6] |= bit;
+			return hashCodes[i];
+		}
+
+		/**
+		 * Adds all the vertices of one set to another.
+		 *
+		 * @param set
+		 *            The set to add to, which is modified.
+		 * @param toAdd
+		 *            The set of vertices to add.
+		 * @return The amount the hash code of the set grows by.
+		 */
+		public int addAll(long[] set, long[] toAdd) {
+			int hashCodeIncrease = 0;
+			for (int w = 0; w < set.length; w++) {
+				long added = toAdd[w] & ~set[w];
+				set[w] |= added;
+				for (; added != 0; added &= added - 1) {
+					hashCodeIncrease += hashCodes[(w << 6) + Long.numberOfTrailingZeros(added)];
+				}
+			}
+			return hashCodeIncrease;
+		}
+
+		/**
+		 * @return The hash code of a set, equal to that of a HashSet of the
+		 *         same vertices.
+		 */
+		public int hashCode(long[] set) {
+			int hashCode = 0;
+			for (int w = 0; w < set.length; w++) {
+				for (long word = set[w]; word != 0; word &= word - 1) {
+					hashCode += hashCodes[(w << 6) + Long.numberOfTrailingZeros(word)];
+				}
+			}
+			return hashCode;
+		}
+
+		/**
+		 * @return The numbers of the vertices in a set, in ascending order.
+		 */
+		public int[] toArray(long[] set) {
+			int size = 0;
+			for (long word : set) {
+				size += Long.bitCount(word);
+			}
+			int[] members = new int[size];
+			size = 0;
+			for (int w = 0; w < set.length; w++) {
+				for (long word = set[w]; word != 0; word &= word - 1) {
+					members[size++] = (w << 6) + Long.numberOfTrailingZeros(word);
+				}
+			}
+			return members;
+		}
+	}
+
+	private final StateNumbering numbering;
+
+	private final long[] P;
 
 	private final int pHashCode;
 
+	/**
+	 * @return A new set of the vertices in P. The analysis reads P through
+	 *         {@link #getPSet()} instead, without creating the set.
+	 */
 	public Set<NFAVertexND> getP() {
+		HashSet<NFAVertexND> vertices = new HashSet<NFAVertexND>();
+		for (int i : numbering.toArray(P)) {
+			vertices.add(numbering.getVertex(i));
+		}
+		return vertices;
+	}
+
+	public StateNumbering getNumbering() {
+		return numbering;
+	}
+
+	/**
+	 * @return The bitset of P over the numbering of this state, which should
+	 *         not be modified.
+	 */
+	public long[] getPSet() {
 		return P;
 	}
-	
+
+	/**
+	 * @return The hash code of P, equal to that of a HashSet of its vertices.
+	 */
+	public int getPHashCode() {
+		return pHashCode;
+	}
+
 	public UPNFAState(Collection<String> q, Set<NFAVertexND> P) {
 		super(q);
-		this.P = new HashSet<NFAVertexND>(P);
-		this.pHashCode = this.P.hashCode();
+		numbering = new StateNumbering(P);
+		this.P = numbering.createSet();
+		for (int i = 0; i < numbering.size(); i++) {
+			numbering.add(this.P, i);
+		}
+		this.pHashCode = numbering.hashCode(this.P);
 	}
-	
+
+	/**
+	 * Constructs a state without copying its set P.
+	 *
+	 * @param numbering
+	 *            The numbering P is a set over.
+	 * @param P
+	 *            The set P, which should not be modified afterwards.
+	 * @param pHashCode
+	 *            The hash code of P, as maintained by the numbering.
+	 */
+	public UPNFAState(Collection<String> q, StateNumbering numbering, long[] P, int pHashCode) {
+		super(q);
+		this.numbering = numbering;
+		this.P = P;
+		this.pHashCode = pHashCode;
+	}
+
 	@Override
 	public UPNFAState copy() {
-		return new UPNFAState(super.getStates(), P);
+		return new UPNFAState(super.getStates(), numbering, P, pHashCode);
 	}
-	
+
 	@Override
 	public boolean equals(Object o) {
 		boolean superEquals = super.equals(o);
@@ -36,7 +222,18 @@ public class UPNFAState extends NFAVertexND {
 			return false;
 		}
 		UPNFAState p = (UPNFAState) o;
-		return pHashCode == p.pHashCode && P.equals(p.P);
+		if (pHashCode != p.pHashCode) {
+			return false;
+		}
+		if (numbering == p.numbering) {
+			for (int w = 0; w < P.length; w++) {
+				if (P[w] != p.P[w]) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return getP().equals(p.getP());
 	}
 
 	@Override
@@ -56,7 +253,7 @@ public class UPNFAState extends NFAVertexND {
 			}
 		}
 		sb.append("}, {");
-		Iterator<NFAVertexND> i1 = P.iterator();
+		Iterator<NFAVertexND> i1 = getP().iterator();
 		while (i1.hasNext()) {
 			NFAVertexND state = i1.next();
 			sb.append(state);
@@ -65,7 +262,7 @@ public class UPNFAState extends NFAVertexND {
 			}
 		}
 		sb.append("}}");
-		
+
 		return sb.toString();
 	}
 }
@@ -1,9 +1,13 @@
 package nfa.transitionlabel;
 
+import java.lang.ref.WeakReference;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 
+import util.CompactRangeSet;
 import util.RangeSet;
 import util.RangeSet.Range;
 
@@ -75,9 +79,36 @@ public class CharacterClassTransitionLabel implements TransitionLabel, Comparabl
 		return ranges;
 	}
 
-	private final RangeSet ranges;
+	/* The number of characters kept in the low plane bitset */
+	private static final int LOW_PLANE_SIZE = 256;
+	
+	private static final CompactRangeSet EMPTY_HIGH_RANGES = new CompactRangeSet(LOW_PLANE_SIZE, MAX_16UNICODE);
+	
+	/*
+	 * The characters below LOW_PLANE_SIZE are the set bits of the four low
+	 * plane words, the characters from LOW_PLANE_SIZE up are the ranges in
+	 * highRanges, which are bounded by LOW_PLANE_SIZE so that they can be
+	 * complemented separately.
+	 */
+	private final long lowPlane0;
+	private final long lowPlane1;
+	private final long lowPlane2;
+	private final long lowPlane3;
+	private final CompactRangeSet highRanges;
+	
+	/* All the ranges, only constructed when they are asked for */
+	private CompactRangeSet ranges;
+	private int hashCode;
+	
+	/*
+	 * The canonical instance of every interned label. The canonical instances
+	 * are only referenced weakly, so that labels no longer used by any NFA are
+	 * removed from the table.
+	 */
+	private static final Map<CharacterClassTransitionLabel, WeakReference<CharacterClassTransitionLabel>> canonicalLabels = Collections.synchronizedMap(new WeakHashMap<CharacterClassTransitionLabel, WeakReference<CharacterClassTransitionLabel>>());
+	
 	public CharacterClassTransitionLabel() {
-		ranges  = new RangeSet(MIN_16UNICODE, MAX_16UNICODE);
+		this(0L, 0L, 0L, 0L, EMPTY_HIGH_RANGES);
 	}
 	
 	public CharacterClassTransitionLabel(String word) {
@@ -86,17 +117,127 @@ public class CharacterClassTransitionLabel implements TransitionLabel, Comparabl
 			throw new IllegalArgumentException("Parameter word must be of length 1.");
 		}
 		
-		this.ranges  = new RangeSet(MIN_16UNICODE, MAX_16UNICODE);
-		Range r = this.ranges.createRange((int) word.charAt(0));
-		this.ranges.union(r);
+		int symbol = (int) word.charAt(0);
+		if (symbol < LOW_PLANE_SIZE) {
+			long bit = 1L << (symbol & 63);
+			lowPlane0 = symbol >>> 6 == 0 ? bit : 0L;
+			lowPlane1 = symbol >>> 6 == 1 ? bit : 0L;
+			lowPlane2 = symbol >>> 6 == 2 ? bit : 0L;
+			lowPlane3 = symbol >>> 6 == 3 ? bit : 0L;
+			highRanges = EMPTY_HIGH_RANGES;
+		} else {
+			lowPlane0 = 0L;
+			lowPlane1 = 0L;
+			lowPlane2 = 0L;
+			lowPlane3 = 0L;
+			highRanges = new CompactRangeSet(LOW_PLANE_SIZE, MAX_16UNICODE, symbol, symbol + 1);
+		}
 	}
 	
 	public CharacterClassTransitionLabel(RangeSet ranges) {
-		this.ranges  = new RangeSet(ranges);
+		this(new CompactRangeSet(ranges));
+	}
+	
+	public CharacterClassTransitionLabel(CompactRangeSet ranges) {
+		long[] lowPlane = new long[LOW_PLANE_SIZE / 64];
+		int[] highBounds = new int[2 * ranges.getNumRanges()];
+		int numHighBounds = 0;
+		for (int i = 0; i < ranges.getNumRanges(); i++) {
+			int low = ranges.getLow(i);
+			int high = ranges.getHigh(i);
+			for (int c = low; c < high && c < LOW_PLANE_SIZE; c++) {
+				lowPlane[c >>> 6] |= 1L << (c & 63);
+			}
+			if (high > LOW_PLANE_SIZE) {
+				highBounds[numHighBounds++] = Math.max(low, LOW_PLANE_SIZE);
+				highBounds[numHighBounds++] = high;
+			}
+		}
+		lowPlane0 = lowPlane[0];
+		lowPlane1 = lowPlane[1];
+		lowPlane2 = lowPlane[2];
+		lowPlane3 = lowPlane[3];
+		highRanges = numHighBounds == 0 ? EMPTY_HIGH_RANGES : CompactRangeSet.fromSortedRanges(LOW_PLANE_SIZE, MAX_16UNICODE, highBounds, numHighBounds);
+		/* compact range sets are immutable, so they can be shared */
+		this.ranges = ranges;
+	}
+	
+	private CharacterClassTransitionLabel(long lowPlane0, long lowPlane1, long lowPlane2, long lowPlane3, CompactRangeSet highRanges) {
+		this.lowPlane0 = lowPlane0;
+		this.lowPlane1 = lowPlane1;
+		this.lowPlane2 = lowPlane2;
+		this.lowPlane3 = lowPlane3;
+		this.highRanges = highRanges;
+	}
+	
+	/**
+	 * @return The ranges of all the characters of the label.
+	 */
+	public CompactRangeSet getRanges() {
+		if (ranges == null) {
+			int[] bounds = new int[LOW_PLANE_SIZE + 2 * highRanges.getNumRanges()];
+			int numBounds = 0;
+			/* the runs of set bits in the low plane */
+			int c = nextLowPlaneCharacter(0, true);
+			while (c < LOW_PLANE_SIZE) {
+				int end = nextLowPlaneCharacter(c, false);
+				bounds[numBounds++] = c;
+				bounds[numBounds++] = end;
+				c = nextLowPlaneCharacter(end, true);
+			}
+			for (int i = 0; i < highRanges.getNumRanges(); i++) {
+				bounds[numBounds++] = highRanges.getLow(i);
+				bounds[numBounds++] = highRanges.getHigh(i);
+			}
+			/* merges a run ending at the end of the low plane with a range starting there */
+			ranges = CompactRangeSet.fromSortedRanges(MIN_16UNICODE, MAX_16UNICODE, bounds, numBounds);
+		}
+		return ranges;
+	}
+	
+	/* Finds the first character from c up in the low plane that is (or is not) in the label, or LOW_PLANE_SIZE if there is none */
+	private int nextLowPlaneCharacter(int c, boolean inLabel) {
+		for (int word = c >>> 6; word < LOW_PLANE_SIZE / 64; word++) {
+			long bits = inLabel ? getLowPlaneWord(word) : ~getLowPlaneWord(word);
+			if (word == c >>> 6) {
+				bits &= -1L << (c & 63);
+			}
+			if (bits != 0) {
+				return 64 * word + Long.numberOfTrailingZeros(bits);
+			}
+		}
+		return LOW_PLANE_SIZE;
+	}
+	
+	private long getLowPlaneWord(int word) {
+		switch (word) {
+		case 0:
+			return lowPlane0;
+		case 1:
+			return lowPlane1;
+		case 2:
+			return lowPlane2;
+		default:
+			return lowPlane3;
+		}
+	}
+	
+	public boolean contains(int c) {
+		if (c < LOW_PLANE_SIZE) {
+			return (getLowPlaneWord(c >>> 6) & (1L << (c & 63))) != 0;
+		}
+		return highRanges.contains(c);
 	}
 	
 	@Override
 	public boolean matches(String word) {
+		if (word.length() == 1) {
+			char c = word.charAt(0);
+			/* the single characters the parser treats as something other than that character */
+			if (c != '.' && c != '[' && c != '\\' && c != 'ε') {
+				return contains(c);
+			}
+		}
 		TransitionLabelParserRecursive tlpr = new TransitionLabelParserRecursive(word);
 		return matches(tlpr.parseTransitionLabel());
 	}
@@ -106,10 +247,10 @@ public class CharacterClassTransitionLabel implements TransitionLabel, Comparabl
 		if (tl instanceof CharacterClassTransitionLabel) {
 			CharacterClassTransitionLabel cctl = (CharacterClassTransitionLabel) tl;
 			
-			RangeSet rs1 = new RangeSet(ranges);
-			RangeSet rs2 = new RangeSet(cctl.ranges);
-			rs1.intersection(rs2);
-			return !rs1.isEmpty();
+			if (((lowPlane0 & cctl.lowPlane0) | (lowPlane1 & cctl.lowPlane1) | (lowPlane2 & cctl.lowPlane2) | (lowPlane3 & cctl.lowPlane3)) != 0) {
+				return true;
+			}
+			return !highRanges.isEmpty() && highRanges.overlaps(cctl.highRanges);
 		} else {
 			return false;
 		}
@@ -120,10 +261,8 @@ public class CharacterClassTransitionLabel implements TransitionLabel, Comparabl
 		if (tl instanceof CharacterClassTransitionLabel) {
 			CharacterClassTransitionLabel cctl = (CharacterClassTransitionLabel) tl;
 			
-			RangeSet rs1 = new RangeSet(ranges);
-			RangeSet rs2 = new RangeSet(cctl.ranges);
-			rs1.intersection(rs2);
-			return new CharacterClassTransitionLabel(rs1);
+			CompactRangeSet highIntersection = highRanges.isEmpty() || cctl.highRanges.isEmpty() ? EMPTY_HIGH_RANGES : highRanges.intersection(cctl.highRanges);
+			return new CharacterClassTransitionLabel(lowPlane0 & cctl.lowPlane0, lowPlane1 & cctl.lowPlane1, lowPlane2 & cctl.lowPlane2, lowPlane3 & cctl.lowPlane3, highIntersection);
 		} else {
 			throw new IllegalArgumentException("Invalid TransitionLabel type.");
 		}
@@ -134,10 +273,7 @@ public class CharacterClassTransitionLabel implements TransitionLabel, Comparabl
 		if (tl instanceof CharacterClassTransitionLabel) {
 			CharacterClassTransitionLabel cctl = (CharacterClassTransitionLabel) tl;
 			
-			RangeSet rs1 = new RangeSet(ranges);
-			RangeSet rs2 = new RangeSet(cctl.ranges);
-			rs1.union(rs2);
-			return new CharacterClassTransitionLabel(rs1);
+			return new CharacterClassTransitionLabel(lowPlane0 | cctl.lowPlane0, lowPlane1 | cctl.lowPlane1, lowPlane2 | cctl.lowPlane2, lowPlane3 | cctl.lowPlane3, highRanges.union(cctl.highRanges));
 		} else {
 			throw new IllegalArgumentException("Invalid TransitionLabel type.");
 		}
@@ -145,30 +281,56 @@ public class CharacterClassTransitionLabel implements TransitionLabel, Comparabl
 	
 	@Override
 	public TransitionLabel complement() {
-		RangeSet rs = new RangeSet(ranges);
-		rs.complement();
-		return new CharacterClassTransitionLabel(rs);
+		return new CharacterClassTransitionLabel(~lowPlane0, ~lowPlane1, ~lowPlane2, ~lowPlane3, highRanges.complement());
 	}
 	
 	public boolean isEmpty() {
-		return ranges.isEmpty();
+		return (lowPlane0 | lowPlane1 | lowPlane2 | lowPlane3) == 0 && highRanges.isEmpty();
 	}
 
 	@Override
 	public String getSymbol() {
-		if (ranges.contains((int) PREFERRED_CHAR1)) {
+		if (contains((int) PREFERRED_CHAR1)) {
 			return "" + PREFERRED_CHAR1;
-		} else if (ranges.contains((int) PREFERRED_CHAR2)) {
+		} else if (contains((int) PREFERRED_CHAR2)) {
 			return "" + PREFERRED_CHAR2;
 		}
-		return "" + ((char) ranges.sampleRangeSet());
+		return "" + ((char) sampleCharacter());
+	}
+	
+	/* The lowest character in the label */
+	private int sampleCharacter() {
+		int c = nextLowPlaneCharacter(0, true);
+		if (c < LOW_PLANE_SIZE) {
+			return c;
+		}
+		return highRanges.sampleRangeSet();
+	}
+	
+	/**
+	 * Finds the canonical instance of the labels equal to this label, so that
+	 * equal labels can share one instance and its cached hash code. If no
+	 * equal label was interned before, this label becomes the canonical
+	 * instance.
+	 * 
+	 * @return The canonical label equal to this label.
+	 */
+	public CharacterClassTransitionLabel intern() {
+		synchronized (canonicalLabels) {
+			WeakReference<CharacterClassTransitionLabel> canonicalReference = canonicalLabels.get(this);
+			CharacterClassTransitionLabel canonicalLabel = canonicalReference != null ? canonicalReference.get() : null;
+			if (canonicalLabel == null) {
+				canonicalLabel = this;
+				canonicalLabels.put(this, new WeakReference<CharacterClassTransitionLabel>(this));
+			}
+			return canonicalLabel;
+		}
 	}
 	
 	@Override
 	public TransitionLabel copy() {
-		CharacterClassTransitionLabel toReturn = new CharacterClassTransitionLabel(ranges);
-		assert equals(toReturn) : this + " " + toReturn;
-		return toReturn;
+		/* labels are immutable, so the canonical instance is shared instead of copied */
+		return intern();
 	}
 	
 	@Override
@@ -185,14 +347,16 @@ public class CharacterClassTransitionLabel implements TransitionLabel, Comparabl
 	    }
 	    
 	    CharacterClassTransitionLabel cctl = (CharacterClassTransitionLabel) o;
-	    return cctl.ranges.equals(ranges);
+	    return lowPlane0 == cctl.lowPlane0 && lowPlane1 == cctl.lowPlane1 && lowPlane2 == cctl.lowPlane2 && lowPlane3 == cctl.lowPlane3 && highRanges.equals(cctl.highRanges);
 	}
 	
 
 	public Set<String> getSymbols() {
-		Set<Integer> symbolCodes = ranges.discretize();
 		Set<String> symbols = new HashSet<String>();
-		for (int sc : symbolCodes) {
+		for (int c = nextLowPlaneCharacter(0, true); c < LOW_PLANE_SIZE; c = nextLowPlaneCharacter(c + 1, true)) {
+			symbols.add("" + ((char) c));
+		}
+		for (int sc : highRanges.discretize()) {
 			symbols.add("" + ((char) sc));
 		}
 		return symbols;
@@ -200,34 +364,39 @@ public class CharacterClassTransitionLabel implements TransitionLabel, Comparabl
 	
 	@Override
 	public int hashCode() {
-		return ranges.hashCode();
+		/* the hash code of the ranges, computed once */
+		if (hashCode == 0) {
+			hashCode = getRanges().hashCode();
+		}
+		return hashCode;
 	}
 	
 	@Override
 	public String toString() {
+		CompactRangeSet ranges = getRanges();
 		if (ranges.isEmpty()) {
 			return "[]";
 		}
 		StringBuilder sb = new StringBuilder("[");
-		Iterator<Range> i0 = ranges.iterator();
-		while (i0.hasNext()) {
-			Range r = i0.next();
+		for (int i = 0; i < ranges.getNumRanges(); i++) {
+			int low = ranges.getLow(i);
+			int high = ranges.getHigh(i);
 			String lowString;
-			if ('!' <= r.low && r.low <= '~') {
-				lowString = "" + ((char) + r.low);
+			if ('!' <= low && low <= '~') {
+				lowString = "" + ((char) + low);
 			} else {
-				lowString = String.format("\\x{%02x}", r.low);
+				lowString = String.format("\\x{%02x}", low);
 			}
 			String highString;
-			if ('!' <= r.high && r.high <= '~') {
-				highString = "" + (char) + (r.high - 1);
+			if ('!' <= high && high <= '~') {
+				highString = "" + (char) + (high - 1);
 			} else {
-				highString = String.format("\\x{%02x}", r.high - 1);
+				highString = String.format("\\x{%02x}", high - 1);
 			}
-			if (r.low == r.high - 2) {
+			if (low == high - 2) {
 				/* Print adjacent characters as [ab] (remember high is exclusive) */
 				sb.append(lowString + highString);
-			} else if (r.low != r.high - 1) {
+			} else if (low != high - 1) {
 				/* Print non adjacent characters as [<low>-<high>] */
 				sb.append(lowString+ "-" + highString);
 
@@ -248,7 +417,7 @@ public class CharacterClassTransitionLabel implements TransitionLabel, Comparabl
 	@Override
 	public int compareTo(CharacterClassTransitionLabel cctl) {
 
-		return ranges.sampleRangeSet() - cctl.ranges.sampleRangeSet();
+		return sampleCharacter() - cctl.sampleCharacter();
 	}
 
 }
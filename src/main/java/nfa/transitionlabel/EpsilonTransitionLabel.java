@@ -1,5 +1,6 @@
 package nfa.transitionlabel;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -11,6 +12,9 @@ public class EpsilonTransitionLabel implements TransitionLabel, Comparable<Epsil
 
 	private static final Pattern epsilonTransitionLabelPattern = Pattern.compile("ε(\\d*)");
 	
+	/* The shared label of every priority asked for with forPriority */
+	private static final ConcurrentHashMap<Integer, EpsilonTransitionLabel> priorityLabels = new ConcurrentHashMap<Integer, EpsilonTransitionLabel>();
+	
 	public EpsilonTransitionLabel(String transitionLabel) {
 		Matcher matcher = epsilonTransitionLabelPattern.matcher(transitionLabel);
 		if (!matcher.matches()) {
@@ -21,6 +25,48 @@ public class EpsilonTransitionLabel implements TransitionLabel, Comparable<Epsil
 		this.transitionLabel = transitionLabel;
 	}
 	
+	private EpsilonTransitionLabel(int priority) {
+		this.priority = priority;
+		this.transitionLabel = "ε" + priority;
+	}
+	
+	/**
+	 * Finds the label of an epsilon transition with a given priority. Labels
+	 * are immutable, so every call for the same priority returns the same
+	 * instance, and the label string does not have to be parsed.
+	 * 
+	 * @param priority
+	 *            The priority of the transition.
+	 * @return The label equal to a label constructed from "ε" + priority.
+	 */
+	public static EpsilonTransitionLabel forPriority(int priority) {
+		if (priority < 0) {
+			throw new IllegalArgumentException("Priority must be non-negative.");
+		}
+		EpsilonTransitionLabel label = priorityLabels.get(priority);
+		if (label == null) {
+			label = new EpsilonTransitionLabel(priority);
+			EpsilonTransitionLabel existingLabel = priorityLabels.putIfAbsent(priority, label);
+			if (existingLabel != null) {
+				label = existingLabel;
+			}
+		}
+		return label;
+	}
+	
+	/**
+	 * @return The shared instance of a label equal to this label, or this
+	 *         label if its priority is written with leading zeros.
+	 */
+	public EpsilonTransitionLabel intern() {
+		EpsilonTransitionLabel label = forPriority(priority);
+		return label.transitionLabel.equals(transitionLabel) ? label : this;
+	}
+	
+	public int getPriority() {
+		return priority;
+	}
+
 	@Override
 	public boolean matches(String word) {
 		return transitionLabel.equals(word);
@@ -63,7 +109,8 @@ public class EpsilonTransitionLabel implements TransitionLabel, Comparable<Epsil
 
 	@Override
 	public TransitionLabel copy() {
-		return new EpsilonTransitionLabel(transitionLabel);
+		/* labels are immutable, so they can be shared */
+		return intern();
 	}
 	
 	@Override
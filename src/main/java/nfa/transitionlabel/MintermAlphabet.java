@@ -0,0 +1,204 @@
+package nfa.transitionlabel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+
+import util.CompactRangeSet;
+
+/**
+ * The partition of the characters of a set of character class labels into
+ * minterms: the largest disjoint classes of characters that no label tells
+ * apart. Every label of the set is the union of the minterms it overlaps, so
+ * it can be represented by the set of their numbers, and two such labels
+ * overlap exactly when their minterm sets intersect.
+ *
+ * Characters that are not in any of the labels are not in any minterm.
+ */
+public class MintermAlphabet {
+
+	private final CharacterClassTransitionLabel[] minterms;
+
+	/* the minterm sets of labels, labels that are not a union of minterms are mapped to the minterms they overlap */
+	private final HashMap<TransitionLabel, BitSet> labelMinterms;
+
+	private final HashMap<BitSet, CharacterClassTransitionLabel> mintermLabels;
+
+	/**
+	 * Partitions the characters of a set of labels into minterms. Labels that
+	 * are not character class labels are ignored.
+	 *
+	 * @param labels
+	 *            The labels to partition.
+	 */
+	public MintermAlphabet(Collection<? extends TransitionLabel> labels) {
+		labelMinterms = new HashMap<TransitionLabel, BitSet>();
+		mintermLabels = new HashMap<BitSet, CharacterClassTransitionLabel>();
+
+		LinkedHashSet<CharacterClassTransitionLabel> distinctLabels = new LinkedHashSet<CharacterClassTransitionLabel>();
+		for (TransitionLabel tl : labels) {
+			if (tl instanceof CharacterClassTransitionLabel) {
+				distinctLabels.add((CharacterClassTransitionLabel) tl);
+			}
+		}
+		CompactRangeSet[] labelRanges = new CompactRangeSet[distinctLabels.size()];
+		int numBounds = 0;
+		int i = 0;
+		for (CharacterClassTransitionLabel cctl : distinctLabels) {
+			labelRanges[i] = cctl.getRanges();
+			numBounds += 2 * labelRanges[i].getNumRanges();
+			i++;
+		}
+
+		/* the bounds of all ranges split the characters into intervals no label tells apart */
+		int[] bounds = new int[numBounds];
+		numBounds = 0;
+		for (CompactRangeSet rs : labelRanges) {
+			for (int r = 0; r < rs.getNumRanges(); r++) {
+				bounds[numBounds++] = rs.getLow(r);
+				bounds[numBounds++] = rs.getHigh(r);
+			}
+		}
+		Arrays.sort(bounds);
+		int numPoints = 0;
+		for (int b = 0; b < bounds.length; b++) {
+			if (numPoints == 0 || bounds[numPoints - 1] != bounds[b]) {
+				bounds[numPoints++] = bounds[b];
+			}
+		}
+		int numIntervals = Math.max(0, numPoints - 1);
+
+		/* the labels containing each interval */
+		BitSet[] intervalLabels = new BitSet[numIntervals];
+		for (int l = 0; l < labelRanges.length; l++) {
+			CompactRangeSet rs = labelRanges[l];
+			for (int r = 0; r < rs.getNumRanges(); r++) {
+				int interval = Arrays.binarySearch(bounds, 0, numPoints, rs.getLow(r));
+				for (; interval < numIntervals && bounds[interval] < rs.getHigh(r); interval++) {
+					if (intervalLabels[interval] == null) {
+						intervalLabels[interval] = new BitSet(labelRanges.length);
+					}
+					intervalLabels[interval].set(l);
+				}
+			}
+		}
+
+		/* intervals contained in the same labels form one minterm */
+		HashMap<BitSet, Integer> labelsToMinterm = new HashMap<BitSet, Integer>();
+		ArrayList<int[]> mintermBounds = new ArrayList<int[]>();
+		ArrayList<Integer> mintermNumBounds = new ArrayList<Integer>();
+		BitSet[] labelMintermSets = new BitSet[labelRanges.length];
+		for (int l = 0; l < labelRanges.length; l++) {
+			labelMintermSets[l] = new BitSet();
+		}
+		for (int interval = 0; interval < numIntervals; interval++) {
+			BitSet containingLabels = intervalLabels[interval];
+			if (containingLabels == null) {
+				continue;
+			}
+			Integer minterm = labelsToMinterm.get(containingLabels);
+			if (minterm == null) {
+				minterm = mintermBounds.size();
+				labelsToMinterm.put(containingLabels, minterm);
+				mintermBounds.add(new int[8]);
+				mintermNumBounds.add(0);
+			}
+			int[] currentBounds = mintermBounds.get(minterm);
+			int currentNumBounds = mintermNumBounds.get(minterm);
+			if (currentNumBounds == currentBounds.length) {
+				currentBounds = Arrays.copyOf(currentBounds, 2 * currentNumBounds);
+				mintermBounds.set(minterm, currentBounds);
+			}
+			currentBounds[currentNumBounds++] = bounds[interval];
+			currentBounds[currentNumBounds++] = bounds[interval + 1];
+			mintermNumBounds.set(minterm, currentNumBounds);
+			for (int l = containingLabels.nextSetBit(0); l >= 0; l = containingLabels.nextSetBit(l + 1)) {
+				labelMintermSets[l].set(minterm);
+			}
+		}
+
+		minterms = new CharacterClassTransitionLabel[mintermBounds.size()];
+		for (int m = 0; m < minterms.length; m++) {
+			minterms[m] = new CharacterClassTransitionLabel(CompactRangeSet.fromSortedRanges(TransitionLabel.MIN_16UNICODE, TransitionLabel.MAX_16UNICODE, mintermBounds.get(m), mintermNumBounds.get(m))).intern();
+		}
+		i = 0;
+		for (CharacterClassTransitionLabel cctl : distinctLabels) {
+			labelMinterms.put(cctl, labelMintermSets[i]);
+			mintermLabels.put(labelMintermSets[i], cctl);
+			i++;
+		}
+	}
+
+	public int getNumMinterms() {
+		return minterms.length;
+	}
+
+	public CharacterClassTransitionLabel getMinterm(int minterm) {
+		return minterms[minterm];
+	}
+
+	/**
+	 * Finds the numbers of the minterms a label overlaps. For the labels the
+	 * alphabet was constructed from, and every label built from them with
+	 * {@link #getLabel(BitSet)}, this is the set of minterms the label is the
+	 * union of.
+	 *
+	 * @param tl
+	 *            A character class label.
+	 * @return The set of minterm numbers, which should not be modified.
+	 */
+	public BitSet getMinterms(TransitionLabel tl) {
+		BitSet mintermSet = labelMinterms.get(tl);
+		if (mintermSet == null) {
+			if (!(tl instanceof CharacterClassTransitionLabel)) {
+				throw new IllegalArgumentException("Invalid TransitionLabel type.");
+			}
+			CompactRangeSet ranges = ((CharacterClassTransitionLabel) tl).getRanges();
+			mintermSet = new BitSet(minterms.length);
+			for (int m = 0; m < minterms.length; m++) {
+				if (minterms[m].getRanges().overlaps(ranges)) {
+					mintermSet.set(m);
+				}
+			}
+			labelMinterms.put(tl, mintermSet);
+		}
+		return mintermSet;
+	}
+
+	/**
+	 * Constructs the label of the union of a set of minterms.
+	 *
+	 * @param mintermSet
+	 *            The set of minterm numbers, which is not modified.
+	 * @return The label, which is shared by every call for an equal set.
+	 */
+	public CharacterClassTransitionLabel getLabel(BitSet mintermSet) {
+		CharacterClassTransitionLabel label = mintermLabels.get(mintermSet);
+		if (label == null) {
+			CompactRangeSet ranges = new CompactRangeSet(TransitionLabel.MIN_16UNICODE, TransitionLabel.MAX_16UNICODE);
+			for (int m = mintermSet.nextSetBit(0); m >= 0; m = mintermSet.nextSetBit(m + 1)) {
+				ranges = ranges.union(minterms[m].getRanges());
+			}
+			label = new CharacterClassTransitionLabel(ranges).intern();
+			BitSet key = (BitSet) mintermSet.clone();
+			mintermLabels.put(key, label);
+			if (!labelMinterms.containsKey(label)) {
+				labelMinterms.put(label, key);
+			}
+		}
+		return label;
+	}
+
+	/**
+	 * @return The set of minterms in both minterm sets.
+	 */
+	public static BitSet intersection(BitSet mintermSet1, BitSet mintermSet2) {
+		BitSet intersection = (BitSet) mintermSet1.clone();
+		intersection.and(mintermSet2);
+		return intersection;
+	}
+
+}
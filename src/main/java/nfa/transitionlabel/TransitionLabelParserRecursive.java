@@ -57,7 +57,7 @@ public class TransitionLabelParserRecursive {
 		switch (currentSymbol) {
 		case '.':
 			labelRanges = CharacterClassTransitionLabel.predefinedRangeWildcard();
-			toReturn = new CharacterClassTransitionLabel(labelRanges);
+			toReturn = new CharacterClassTransitionLabel(labelRanges).intern();
 			break;
 		case '[':
 			/* parse character class */
@@ -65,18 +65,18 @@ public class TransitionLabelParserRecursive {
 			if (depth != 0) {
 				throw new PatternSyntaxException("Unclosed character class", transitionLabelString, index);
 			}
-			toReturn = new CharacterClassTransitionLabel(labelRanges);
+			toReturn = new CharacterClassTransitionLabel(labelRanges).intern();
 			break;
 		case '\\':
 			/* parse predefined character class, or backslash */
 			consumeSymbol();
 			if (currentSymbol == '\\') {
-				toReturn = new CharacterClassTransitionLabel("\\");
+				toReturn = new CharacterClassTransitionLabel("\\").intern();
 			} else if (currentSymbol == '-') {
-				toReturn = new CharacterClassTransitionLabel("-");
+				toReturn = new CharacterClassTransitionLabel("-").intern();
 			} else {
 				RangeSet predefinedCharacterClassRangeSet = parsePredefinedCharacterClass(currentSymbol);
-				toReturn = new CharacterClassTransitionLabel(predefinedCharacterClassRangeSet);
+				toReturn = new CharacterClassTransitionLabel(predefinedCharacterClassRangeSet).intern();
 			}
 
 			break;
@@ -86,9 +86,9 @@ public class TransitionLabelParserRecursive {
 			 * subscripts
 			 */
 			if (NFAEdge.isEpsilonCharacter(transitionLabelString)) {
-				toReturn = new EpsilonTransitionLabel(transitionLabelString);
+				toReturn = new EpsilonTransitionLabel(transitionLabelString).intern();
 			} else {
-				toReturn = new CharacterClassTransitionLabel(transitionLabelString);
+				toReturn = new CharacterClassTransitionLabel(transitionLabelString).intern();
 			}
 
 		}
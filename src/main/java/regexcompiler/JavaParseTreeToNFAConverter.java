@@ -43,8 +43,8 @@ public class JavaParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 		m.addVertex(q0);
 		m.addVertex(lookAroundState);
 		m.addVertex(q1);
-		m.addEdge(new NFAEdge(q0, lookAroundState, new EpsilonTransitionLabel("ε1")));
-		m.addEdge(new NFAEdge(lookAroundState, q1, new EpsilonTransitionLabel("ε1")));
+		m.addEdge(new NFAEdge(q0, lookAroundState, EpsilonTransitionLabel.forPriority(1)));
+		m.addEdge(new NFAEdge(lookAroundState, q1, EpsilonTransitionLabel.forPriority(1)));
 		m.setInitialState(q0);
 		m.addAcceptingState(q1);
 		return m;
@@ -57,7 +57,7 @@ public class JavaParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 		NFAVertexND q1 = nextState();
 		m.addVertex(q0);
 		m.addVertex(q1);
-		m.addEdge(new NFAEdge(q0, q1, new EpsilonTransitionLabel("ε1")));
+		m.addEdge(new NFAEdge(q0, q1, EpsilonTransitionLabel.forPriority(1)));
 		m.setInitialState(q0);
 		m.addAcceptingState(q1);
 		return m;
@@ -148,8 +148,8 @@ public class JavaParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 		/* Add the connecting edges */
 		NFAVertexND m1InitialState = m1.getInitialState();
 		NFAVertexND m2InitialState = stateMap.get(m2.getInitialState());
-		resultNFA.addEdge(new NFAEdge(newInitialVertex, m1InitialState, new EpsilonTransitionLabel("ε1")));
-		resultNFA.addEdge(new NFAEdge(newInitialVertex, m2InitialState, new EpsilonTransitionLabel("ε2")));
+		resultNFA.addEdge(new NFAEdge(newInitialVertex, m1InitialState, EpsilonTransitionLabel.forPriority(1)));
+		resultNFA.addEdge(new NFAEdge(newInitialVertex, m2InitialState, EpsilonTransitionLabel.forPriority(2)));
 		
 		resultNFA.addAcceptingState(m1AcceptState);
 		
@@ -226,7 +226,7 @@ public class JavaParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 		resultNFA.addVertex(newInitialVertex);
 		resultNFA.setInitialState(newInitialVertex);
 		NFAVertexND oldInitialVertex = m1.getInitialState();
-		resultNFA.addEdge(new NFAEdge(newInitialVertex, oldInitialVertex, new EpsilonTransitionLabel("ε1")));
+		resultNFA.addEdge(new NFAEdge(newInitialVertex, oldInitialVertex, EpsilonTransitionLabel.forPriority(1)));
 		
 		/* Adding the accept states */
 		for (NFAVertexND v : m2.getAcceptingStates()) {
@@ -243,12 +243,12 @@ public class JavaParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 		TransitionLabel finishTransitionLabel;
 		switch (quantifierType) {
 		case GREEDY:
-			loopBackTransitionLabel = new EpsilonTransitionLabel("ε1");
-			finishTransitionLabel = new EpsilonTransitionLabel("ε2");
+			loopBackTransitionLabel = EpsilonTransitionLabel.forPriority(1);
+			finishTransitionLabel = EpsilonTransitionLabel.forPriority(2);
 			break;
 		case RELUCTANT:
-			loopBackTransitionLabel = new EpsilonTransitionLabel("ε2");
-			finishTransitionLabel = new EpsilonTransitionLabel("ε1");
+			loopBackTransitionLabel = EpsilonTransitionLabel.forPriority(2);
+			finishTransitionLabel = EpsilonTransitionLabel.forPriority(1);
 			break;
 		case POSSESSIVE:
 			throw new UnsupportedOperationException("Possessive quantifiers not implemented: " + quantifierType + " in " + starOperator);
@@ -306,12 +306,12 @@ public class JavaParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 		TransitionLabel finishTransitionLabel;
 		switch (quantifierType) {
 		case GREEDY:
-			loopBackTransitionLabel = new EpsilonTransitionLabel("ε1");
-			finishTransitionLabel = new EpsilonTransitionLabel("ε2");
+			loopBackTransitionLabel = EpsilonTransitionLabel.forPriority(1);
+			finishTransitionLabel = EpsilonTransitionLabel.forPriority(2);
 			break;
 		case RELUCTANT:
-			loopBackTransitionLabel = new EpsilonTransitionLabel("ε2");
-			finishTransitionLabel = new EpsilonTransitionLabel("ε1");
+			loopBackTransitionLabel = EpsilonTransitionLabel.forPriority(2);
+			finishTransitionLabel = EpsilonTransitionLabel.forPriority(1);
 			break;
 		case POSSESSIVE:
 			throw new UnsupportedOperationException("Possessive quantifiers not implemented: " + quantifierType + " in " + plusOperator);
@@ -341,7 +341,7 @@ public class JavaParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 		resultNFA.addVertex(newInitialState);
 		resultNFA.setInitialState(newInitialState);
 		/* Adding the initial connecting edge */
-		resultNFA.addEdge(new NFAEdge(newInitialState, mInitialState, new EpsilonTransitionLabel("ε1")));
+		resultNFA.addEdge(new NFAEdge(newInitialState, mInitialState, EpsilonTransitionLabel.forPriority(1)));
 		
 		if (m.getAcceptingStates().size() != 1) {
 			throw new RuntimeException("Plus construction only allows for one accept state");
@@ -370,12 +370,12 @@ public class JavaParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 		TransitionLabel finishTransitionLabel;
 		switch (quantifierType) {
 		case GREEDY:
-			continueTransitionLabel = new EpsilonTransitionLabel("ε1");
-			finishTransitionLabel = new EpsilonTransitionLabel("ε2");
+			continueTransitionLabel = EpsilonTransitionLabel.forPriority(1);
+			finishTransitionLabel = EpsilonTransitionLabel.forPriority(2);
 			break;
 		case RELUCTANT:
-			continueTransitionLabel = new EpsilonTransitionLabel("ε2");
-			finishTransitionLabel = new EpsilonTransitionLabel("ε1");
+			continueTransitionLabel = EpsilonTransitionLabel.forPriority(2);
+			finishTransitionLabel = EpsilonTransitionLabel.forPriority(1);
 			break;
 		case POSSESSIVE:
 			throw new UnsupportedOperationException("Possessive quantifiers not implemented: " + quantifierType + " in " + countClosureOperator);
@@ -399,7 +399,7 @@ public class JavaParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 				resultNFA.addEdge(newEdge);
 			} else {
 				/* if cmin=0 and cmax=0 have an epsilon transition to the accept state */
-				NFAEdge newEdge = new NFAEdge(newInitialVertex, newAcceptVertex, new EpsilonTransitionLabel("ε1"));
+				NFAEdge newEdge = new NFAEdge(newInitialVertex, newAcceptVertex, EpsilonTransitionLabel.forPriority(1));
 				resultNFA.addEdge(newEdge);
 			}
 			
@@ -447,7 +447,7 @@ public class JavaParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 				}
 				if ((bounded || cmin != 0) && i == numRepetitions) {
 					/* The only transition will be to the accept vertex so it must have highest priority. */
-					newEdge = new NFAEdge(repetitionAcceptVertex, newAcceptVertex, new EpsilonTransitionLabel("ε1"));
+					newEdge = new NFAEdge(repetitionAcceptVertex, newAcceptVertex, EpsilonTransitionLabel.forPriority(1));
 					resultNFA.addEdge(newEdge);	
 				} else if (i < numRepetitions) {
 					newEdge = new NFAEdge(repetitionAcceptVertex, newAcceptVertex, finishTransitionLabel);
@@ -470,12 +470,12 @@ public class JavaParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 		TransitionLabel finishTransitionLabel;
 		switch (quantifierType) {
 		case GREEDY:
-			continueTransitionLabel = new EpsilonTransitionLabel("ε1");
-			finishTransitionLabel = new EpsilonTransitionLabel("ε2");
+			continueTransitionLabel = EpsilonTransitionLabel.forPriority(1);
+			finishTransitionLabel = EpsilonTransitionLabel.forPriority(2);
 			break;
 		case RELUCTANT:
-			continueTransitionLabel = new EpsilonTransitionLabel("ε2");
-			finishTransitionLabel = new EpsilonTransitionLabel("ε1");
+			continueTransitionLabel = EpsilonTransitionLabel.forPriority(2);
+			finishTransitionLabel = EpsilonTransitionLabel.forPriority(1);
 			break;
 		case POSSESSIVE:
 			throw new UnsupportedOperationException("Possessive quantifiers not implemented: " + quantifierType + " in " + questionMarkOperator);
@@ -1,6 +1,7 @@
 package regexcompiler;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Stack;
@@ -534,6 +535,10 @@ public class MyPattern {
 		private boolean endOfStream;
 		private boolean isNested;
 		
+		/* The parsed contents of the groups, or the exceptions parsing them threw */
+		private final IdentityHashMap<RegexGroup, TreeNode> parsedGroups;
+		private final IdentityHashMap<RegexGroup, RuntimeException> groupExceptions;
+		
 		private boolean nextToken() {
 			if (tokenIterator.hasNext()) {
 				currentToken = tokenIterator.next();
@@ -550,25 +555,80 @@ public class MyPattern {
 			this.isNested = false;
 			this.pattern = pattern;
 			this.tokenList = tokenList;
+			this.parsedGroups = new IdentityHashMap<RegexGroup, TreeNode>();
+			this.groupExceptions = new IdentityHashMap<RegexGroup, RuntimeException>();
 		}
 		
-		private Parser(boolean isNested, String pattern, List<RegexToken> tokenList) {
+		private Parser(boolean isNested, String pattern, List<RegexToken> tokenList, IdentityHashMap<RegexGroup, TreeNode> parsedGroups, IdentityHashMap<RegexGroup, RuntimeException> groupExceptions) {
 			this.isNested = true;
 			this.pattern = pattern;
 			this.tokenList = tokenList;
+			this.parsedGroups = parsedGroups;
+			this.groupExceptions = groupExceptions;
 		}
 		
 		public ParseTree parse() {
-			tokenIterator = tokenList.iterator();
-			endOfStream = false;
-			nextToken();
-			TreeNode root = parseRegex();
+			if (!isNested) {
+				parseGroups();
+			}
+			TreeNode root = parseTokenList();
 			ParseTree pt = new ParseTree();
 			pt.newRoot(root);	
 			
 			return pt;
 		}
 		
+		private TreeNode parseTokenList() {
+			tokenIterator = tokenList.iterator();
+			endOfStream = false;
+			nextToken();
+			return parseRegex();
+		}
+		
+		/*
+		 * Parses the contents of all the groups, the innermost groups first,
+		 * so that parsing a group does not parse the groups in it again and
+		 * deeply nested groups do not overflow the call stack. The exception
+		 * parsing a group throws is thrown when the group is reached, so that
+		 * the first error in the pattern is reported.
+		 */
+		private void parseGroups() {
+			ArrayList<RegexGroup> groups = new ArrayList<RegexGroup>();
+			Stack<List<RegexToken>> toVisit = new Stack<List<RegexToken>>();
+			toVisit.push(tokenList);
+			while (!toVisit.isEmpty()) {
+				for (RegexToken token : toVisit.pop()) {
+					if (token.getTokenType() == TokenType.SUBEXPRESSION && ((RegexSubexpression<?>) token).getSubexpressionType() == SubexpressionType.GROUP) {
+						/* every group comes after the groups around it */
+						RegexGroup groupToken = (RegexGroup) token;
+						groups.add(groupToken);
+						toVisit.push(groupToken.getSubexpressionContent());
+					}
+				}
+			}
+			for (int i = groups.size() - 1; i >= 0; i--) {
+				RegexGroup groupToken = groups.get(i);
+				Parser p = new Parser(true, pattern, groupToken.getSubexpressionContent(), parsedGroups, groupExceptions);
+				try {
+					parsedGroups.put(groupToken, p.parseTokenList());
+				} catch (RuntimeException e) {
+					groupExceptions.put(groupToken, e);
+				}
+			}
+		}
+		
+		/* Creates the node of a group with the parsed contents of the group as child */
+		private TreeNode parsedGroupNode(RegexGroup groupToken) {
+			RuntimeException groupException = groupExceptions.get(groupToken);
+			if (groupException != null) {
+				throw groupException;
+			}
+			/* We add a group node so that the info on which type of group (?: or ?<= Etc) does not go missing  */
+			TreeNode groupNode = new TreeNode(groupToken);
+			groupNode.addChild(parsedGroups.get(groupToken));
+			return groupNode;
+		}
+		
 		public TreeNode parseRegex() {
 			//System.out.println("Parse Regex");
 			if (currentToken.getTokenType() == TokenType.ANCHOR) {
@@ -642,61 +702,31 @@ public class MyPattern {
 					switch (groupTokenType) {
 					case NEGLOOKAHEAD: {
 						//throw new UnimplementedFunctionalityException("Negative lookahead has not yet been implemented.");
-						Parser p = new Parser(true, pattern, groupToken.getSubexpressionContent());
-						ParseTree pt = p.parse();
-						/* We add a group node so that the info on which type of group (?: or ?<= Etc) does not go missing  */
-						TreeNode groupNode = new TreeNode(groupToken);
-						groupNode.addChild(pt.getRoot());
-						root = groupNode;
+						root = parsedGroupNode(groupToken);
 						break;
 					}
 					case NEGLOOKBEHIND: {
 						//throw new UnimplementedFunctionalityException("Negative lookbehind has not yet been implemented.");
-						Parser p = new Parser(true, pattern, groupToken.getSubexpressionContent());
-						ParseTree pt = p.parse();
-						/* We add a group node so that the info on which type of group (?: or ?<= Etc) does not go missing  */
-						TreeNode groupNode = new TreeNode(groupToken);
-						groupNode.addChild(pt.getRoot());
-						root = groupNode;
+						root = parsedGroupNode(groupToken);
 						break;
 					}
 					case NONCAPTURING: {
 						/* we do not perform capturing, so handle noncapturing groups as normal groups */
-						Parser p = new Parser(true, pattern, groupToken.getSubexpressionContent());
-						ParseTree pt = p.parse();
-						/* We add a group node so that the info on which type of group (?: or ?<= Etc) does not go missing  */
-						TreeNode groupNode = new TreeNode(groupToken);
-						groupNode.addChild(pt.getRoot());
-						root = groupNode;
+						root = parsedGroupNode(groupToken);
 						break;
 					}
 					case NORMAL: {
-						Parser p = new Parser(true, pattern, groupToken.getSubexpressionContent());
-						ParseTree pt = p.parse();
-						/* We add a group node so that the info on which type of group (?: or ?<= Etc) does not go missing  */
-						TreeNode groupNode = new TreeNode(groupToken);
-						groupNode.addChild(pt.getRoot());
-						root = groupNode;
+						root = parsedGroupNode(groupToken);
 						break;
 					}
 					case POSLOOKAHEAD: {
 						//throw new UnimplementedFunctionalityException("Positive lookahead has not yet been implemented.");
-						Parser p = new Parser(true, pattern, groupToken.getSubexpressionContent());
-						ParseTree pt = p.parse();
-						/* We add a group node so that the info on which type of group (?: or ?<= Etc) does not go missing  */
-						TreeNode groupNode = new TreeNode(groupToken);
-						groupNode.addChild(pt.getRoot());
-						root = groupNode;
+						root = parsedGroupNode(groupToken);
 						break;
 					}
 					case POSLOOKBEHIND: {
 						//throw new UnimplementedFunctionalityException("Positive lookbehind has not yet been implemented.");
-						Parser p = new Parser(true, pattern, groupToken.getSubexpressionContent());
-						ParseTree pt = p.parse();
-						/* We add a group node so that the info on which type of group (?: or ?<= Etc) does not go missing  */
-						TreeNode groupNode = new TreeNode(groupToken);
-						groupNode.addChild(pt.getRoot());
-						root = groupNode;
+						root = parsedGroupNode(groupToken);
 						break;
 					}
 					default:
@@ -7,6 +7,7 @@ import nfa.NFAVertexND;
 import nfa.NFAEdge;
 import analysis.*;
 import regexcompiler.RegexQuantifiableOperator.QuantifierType;
+import regexcompiler.RegexToken.TokenType;
 import regexcompiler.ParseTree.TreeNode;
 import regexcompiler.RegexQuantifiableOperator.RegexPlusOperator;
 import regexcompiler.RegexQuantifiableOperator.RegexQuestionMarkOperator;
@@ -55,62 +56,57 @@ public abstract class ParseTreeToNFAConverter implements NFACreator {
 		return nfaGraph;
 	}
 	
-	private NFAGraph dfsBuild(TreeNode currentNode) {
+	/*
+	 * Builds the NFA of a parse tree in post order, with an explicit stack
+	 * instead of recursion, since a chain of joins is as deep as the literal
+	 * it matches is long.
+	 */
+	private NFAGraph dfsBuild(TreeNode root) {
+		Stack<BuildFrame> frames = new Stack<BuildFrame>();
+		NFAGraph built = dfsBuildEnter(root, frames);
+		while (!frames.isEmpty()) {
+			BuildFrame frame = frames.peek();
+			if (built != null) {
+				frame.operands.add(built);
+				built = null;
+			}
+			if (frame.operands.size() < frame.numOperands) {
+				built = dfsBuildEnter(frame.childIterator.next(), frames);
+			} else {
+				frames.pop();
+				built = dfsBuildExit(frame);
+			}
+		}
+		return built;
+	}
+
+	/*
+	 * Returns the NFA of a node without operands, or pushes the frame of a
+	 * node the operands of which need to be built first and returns null.
+	 */
+	private NFAGraph dfsBuildEnter(TreeNode currentNode, Stack<BuildFrame> frames) {
 		NFAGraph newNfaGraph;
 		RegexToken regexToken = currentNode.getRegexToken();
-		Iterator<TreeNode> childIterator = currentNode.getChildren().iterator();
+		BuildFrame frame = new BuildFrame(currentNode);
 		switch (regexToken.getTokenType()) {
 		case OPERATOR:
 				RegexOperator regexOperator = (RegexOperator) regexToken;
 				switch (regexOperator.getOperatorType()) {
-				case STAR: {
-					RegexStarOperator starOperator = (RegexStarOperator) regexOperator;
-					TreeNode operandNode = childIterator.next();
-					NFAGraph subgraph = dfsBuild(operandNode);
-					newNfaGraph = starNFA(subgraph, starOperator);
-					break;
-				}
-				case PLUS: {
-					RegexPlusOperator plusOperator = (RegexPlusOperator) regexOperator;
-					TreeNode operandNode = childIterator.next();
-					NFAGraph subgraph = dfsBuild(operandNode);
-					newNfaGraph = plusNFA(subgraph, plusOperator);
-					break;
-				}
-				case COUNT_CLOSURE: {
-					RegexCountClosureOperator countClosureOperator = (RegexCountClosureOperator) regexOperator;
-					TreeNode operandNode = childIterator.next();
-					NFAGraph subgraph = dfsBuild(operandNode);
-					newNfaGraph = countClosureNFA(subgraph, countClosureOperator);
-					break;
-				}					
-				case QUESTION_MARK: {
-					RegexQuestionMarkOperator questionMarkOperator = (RegexQuestionMarkOperator) regexOperator;
-					TreeNode operandNode = childIterator.next();
-					NFAGraph subgraph = dfsBuild(operandNode);
-					newNfaGraph = questionMarkNFA(subgraph, questionMarkOperator);
-					break;
-				}					
-				case UNION: {
-					TreeNode operandNode1 = childIterator.next();
-					TreeNode operandNode2 = childIterator.next();
-					NFAGraph subgraph1 = dfsBuild(operandNode1);
-					NFAGraph subgraph2 = dfsBuild(operandNode2);
-					newNfaGraph = unionNFAs(subgraph1, subgraph2);
+				case STAR:
+				case PLUS:
+				case COUNT_CLOSURE:
+				case QUESTION_MARK:
+					frame.numOperands = 1;
 					break;
-				}
-				case JOIN: {
-					TreeNode operandNode1 = childIterator.next();
-					TreeNode operandNode2 = childIterator.next();
-					NFAGraph subgraph1 = dfsBuild(operandNode1);
-					NFAGraph subgraph2 = dfsBuild(operandNode2);
-					newNfaGraph = joinNFAs(subgraph1, subgraph2);
+				case UNION:
+				case JOIN:
+					frame.numOperands = 2;
 					break;
-				}
 				default:
 					throw new RuntimeException("Unknown operator type.");
 				}
-			break;
+			frames.push(frame);
+			return null;
 		case SUBEXPRESSION:
 			RegexSubexpression<?> regexSubexpression = (RegexSubexpression<?>) regexToken;
 			switch (regexSubexpression.getSubexpressionType()) {
@@ -128,37 +124,22 @@ public abstract class ParseTreeToNFAConverter implements NFACreator {
 				RegexGroup regexGroup = (RegexGroup) regexSubexpression;
 				switch (regexGroup.getGroupType()) {
 				case NORMAL:
-				case NONCAPTURING: {
-					TreeNode child = childIterator.next();
-					newNfaGraph = dfsBuild(child);					
+				case NONCAPTURING:
 					break;
-				}
-				/* The only difference between these should be where the join comes.
-				   Positive and negative look ahead the same from static analyses point of view. */
 				case NEGLOOKAHEAD:
-				case POSLOOKAHEAD: {
-					TreeNode child = childIterator.next();
-					NFAVertexND lookAroundState = nextLookAroundState();
-					newNfaGraph = createBaseCaseLookAround(lookAroundState);
-					NFAGraph lookAroundPatternNFA = dfsBuild(child);
-					lookAroundPatternNFA = joinNFAs(lookAroundPatternNFA, createWildCardStarNFA(regexToken.getIndex()));
-					lookaroundStates.put(lookAroundState, lookAroundPatternNFA);
-					break;
-				}
+				case POSLOOKAHEAD:
 				case NEGLOOKBEHIND:
-				case POSLOOKBEHIND: {
-					TreeNode child = childIterator.next();
-					NFAVertexND lookAroundState = nextLookAroundState();
-					newNfaGraph = createBaseCaseLookAround(lookAroundState);
-					NFAGraph lookAroundPatternNFA = dfsBuild(child);
-					lookAroundPatternNFA = joinNFAs(createWildCardStarNFA(regexToken.getIndex()), lookAroundPatternNFA);
-					lookaroundStates.put(lookAroundState, lookAroundPatternNFA);
+				case POSLOOKBEHIND:
+					/* the look around state is created before the pattern it looks for */
+					frame.lookAroundState = nextLookAroundState();
+					frame.lookAroundNfaGraph = createBaseCaseLookAround(frame.lookAroundState);
 					break;
-				}
 				default:
 					throw new RuntimeException("Unknown Group type.");
 				} // End switch group type
-				break;
+				frame.numOperands = 1;
+				frames.push(frame);
+				return null;
 			case SYMBOL: {
 				RegexSymbol regexSymbol = (RegexSymbol) regexSubexpression;
 				String content = regexSymbol.getSubexpressionContent();
@@ -177,6 +158,81 @@ public abstract class ParseTreeToNFAConverter implements NFACreator {
 		return newNfaGraph;
 	}
 
+	/* Returns the NFA of a node from the NFAs of its operands */
+	private NFAGraph dfsBuildExit(BuildFrame frame) {
+		NFAGraph newNfaGraph;
+		RegexToken regexToken = frame.node.getRegexToken();
+		List<NFAGraph> operands = frame.operands;
+		if (regexToken.getTokenType() == TokenType.OPERATOR) {
+			RegexOperator regexOperator = (RegexOperator) regexToken;
+			switch (regexOperator.getOperatorType()) {
+			case STAR:
+				newNfaGraph = starNFA(operands.get(0), (RegexStarOperator) regexOperator);
+				break;
+			case PLUS:
+				newNfaGraph = plusNFA(operands.get(0), (RegexPlusOperator) regexOperator);
+				break;
+			case COUNT_CLOSURE:
+				newNfaGraph = countClosureNFA(operands.get(0), (RegexCountClosureOperator) regexOperator);
+				break;
+			case QUESTION_MARK:
+				newNfaGraph = questionMarkNFA(operands.get(0), (RegexQuestionMarkOperator) regexOperator);
+				break;
+			case UNION:
+				newNfaGraph = unionNFAs(operands.get(0), operands.get(1));
+				break;
+			case JOIN:
+				newNfaGraph = joinNFAs(operands.get(0), operands.get(1));
+				break;
+			default:
+				throw new RuntimeException("Unknown operator type.");
+			}
+			return newNfaGraph;
+		}
+
+		RegexGroup regexGroup = (RegexGroup) regexToken;
+		NFAGraph lookAroundPatternNFA;
+		switch (regexGroup.getGroupType()) {
+		case NORMAL:
+		case NONCAPTURING:
+			return operands.get(0);
+		/* The only difference between these should be where the join comes.
+		   Positive and negative look ahead the same from static analyses point of view. */
+		case NEGLOOKAHEAD:
+		case POSLOOKAHEAD:
+			lookAroundPatternNFA = joinNFAs(operands.get(0), createWildCardStarNFA(regexToken.getIndex()));
+			break;
+		case NEGLOOKBEHIND:
+		case POSLOOKBEHIND:
+			lookAroundPatternNFA = joinNFAs(createWildCardStarNFA(regexToken.getIndex()), operands.get(0));
+			break;
+		default:
+			throw new RuntimeException("Unknown Group type.");
+		}
+		lookaroundStates.put(frame.lookAroundState, lookAroundPatternNFA);
+		return frame.lookAroundNfaGraph;
+	}
+
+	/* A node of the parse tree with the NFAs of the operands built so far */
+	private static class BuildFrame {
+
+		private final TreeNode node;
+		private final Iterator<TreeNode> childIterator;
+		private final ArrayList<NFAGraph> operands;
+		private int numOperands;
+
+		/* the state and NFA of a look around group */
+		private NFAVertexND lookAroundState;
+		private NFAGraph lookAroundNfaGraph;
+
+		private BuildFrame(TreeNode node) {
+			this.node = node;
+			this.childIterator = node.getChildren().iterator();
+			this.operands = new ArrayList<NFAGraph>(2);
+		}
+
+	}
+
 	protected NFAVertexND deriveVertex(NFAGraph m, NFAVertexND v) {
 		String newName = "" + v.getStateNumberByDimension(1).charAt(0);
 		int i = 0;
@@ -43,8 +43,8 @@ public class ThompsonParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 		m.addVertex(q0);
 		m.addVertex(lookAroundState);
 		m.addVertex(q1);
-		m.addEdge(new NFAEdge(q0, lookAroundState, new EpsilonTransitionLabel("ε1")));
-		m.addEdge(new NFAEdge(lookAroundState, q1, new EpsilonTransitionLabel("ε1")));
+		m.addEdge(new NFAEdge(q0, lookAroundState, EpsilonTransitionLabel.forPriority(1)));
+		m.addEdge(new NFAEdge(lookAroundState, q1, EpsilonTransitionLabel.forPriority(1)));
 		m.setInitialState(q0);
 		m.addAcceptingState(q1);
 		return m;
@@ -57,7 +57,7 @@ public class ThompsonParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 		NFAVertexND q1 = new NFAVertexND("q1");
 		m.addVertex(q0);
 		m.addVertex(q1);
-		m.addEdge(new NFAEdge(q0, q1, new EpsilonTransitionLabel("ε1")));
+		m.addEdge(new NFAEdge(q0, q1, EpsilonTransitionLabel.forPriority(1)));
 		m.setInitialState(q0);
 		m.addAcceptingState(q1);
 		return m;
@@ -133,8 +133,8 @@ public class ThompsonParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 		/* Add the connecting edges */
 		NFAVertexND m1InitialState = m1.getInitialState();
 		NFAVertexND m2InitialState = stateMap.get(m2.getInitialState());
-		resultNFA.addEdge(new NFAEdge(newInitialVertex, m1InitialState, new EpsilonTransitionLabel("ε1")));
-		resultNFA.addEdge(new NFAEdge(newInitialVertex, m2InitialState, new EpsilonTransitionLabel("ε2")));
+		resultNFA.addEdge(new NFAEdge(newInitialVertex, m1InitialState, EpsilonTransitionLabel.forPriority(1)));
+		resultNFA.addEdge(new NFAEdge(newInitialVertex, m2InitialState, EpsilonTransitionLabel.forPriority(2)));
 		
 		/* Add the new accept vertex */
 		NFAVertexND newAcceptVertex = new NFAVertexND("q" + resultNFA.vertexSet().size());
@@ -147,8 +147,8 @@ public class ThompsonParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 		
 		/* Add the connecting edges */
 		NFAVertexND m2AcceptState = stateMap.get(m2.getAcceptingStates().iterator().next());
-		resultNFA.addEdge(new NFAEdge(m1AcceptState, newAcceptVertex, new EpsilonTransitionLabel("ε1")));
-		resultNFA.addEdge(new NFAEdge(m2AcceptState, newAcceptVertex, new EpsilonTransitionLabel("ε1")));
+		resultNFA.addEdge(new NFAEdge(m1AcceptState, newAcceptVertex, EpsilonTransitionLabel.forPriority(1)));
+		resultNFA.addEdge(new NFAEdge(m2AcceptState, newAcceptVertex, EpsilonTransitionLabel.forPriority(1)));
 		
 		return resultNFA;
 	}
@@ -198,7 +198,7 @@ public class ThompsonParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 
 		/* Adding the connecting edges */
 		for (NFAVertexND m1AcceptingState : m1.getAcceptingStates()) {
-			NFAEdge newEdge = new NFAEdge(m1AcceptingState, m2InitialState, new EpsilonTransitionLabel("ε1"));
+			NFAEdge newEdge = new NFAEdge(m1AcceptingState, m2InitialState, EpsilonTransitionLabel.forPriority(1));
 			resultNFA.addEdge(newEdge);
 		}
 		
@@ -221,12 +221,12 @@ public class ThompsonParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 		TransitionLabel finishTransitionLabel;
 		switch (quantifierType) {
 		case GREEDY:
-			eatMoreTransitionLabel = new EpsilonTransitionLabel("ε1");
-			finishTransitionLabel = new EpsilonTransitionLabel("ε2");
+			eatMoreTransitionLabel = EpsilonTransitionLabel.forPriority(1);
+			finishTransitionLabel = EpsilonTransitionLabel.forPriority(2);
 			break;
 		case RELUCTANT:
-			eatMoreTransitionLabel = new EpsilonTransitionLabel("ε2");
-			finishTransitionLabel = new EpsilonTransitionLabel("ε1");
+			eatMoreTransitionLabel = EpsilonTransitionLabel.forPriority(2);
+			finishTransitionLabel = EpsilonTransitionLabel.forPriority(1);
 			break;
 		case POSSESSIVE:
 			throw new UnsupportedOperationException("Possessive quantifiers not implemented.");
@@ -292,12 +292,12 @@ public class ThompsonParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 		TransitionLabel finishTransitionLabel;
 		switch (quantifierType) {
 		case GREEDY:
-			eatMoreTransitionLabel = new EpsilonTransitionLabel("ε1");
-			finishTransitionLabel = new EpsilonTransitionLabel("ε2");
+			eatMoreTransitionLabel = EpsilonTransitionLabel.forPriority(1);
+			finishTransitionLabel = EpsilonTransitionLabel.forPriority(2);
 			break;
 		case RELUCTANT:
-			eatMoreTransitionLabel = new EpsilonTransitionLabel("ε2");
-			finishTransitionLabel = new EpsilonTransitionLabel("ε1");
+			eatMoreTransitionLabel = EpsilonTransitionLabel.forPriority(2);
+			finishTransitionLabel = EpsilonTransitionLabel.forPriority(1);
 			break;
 		case POSSESSIVE:
 			throw new UnsupportedOperationException("Possessive quantifiers not implemented.");
@@ -365,12 +365,12 @@ public class ThompsonParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 		TransitionLabel finishTransitionLabel;
 		switch (quantifierType) {
 		case GREEDY:
-			continueTransitionLabel = new EpsilonTransitionLabel("ε1");
-			finishTransitionLabel = new EpsilonTransitionLabel("ε2");
+			continueTransitionLabel = EpsilonTransitionLabel.forPriority(1);
+			finishTransitionLabel = EpsilonTransitionLabel.forPriority(2);
 			break;
 		case RELUCTANT:
-			continueTransitionLabel = new EpsilonTransitionLabel("ε2");
-			finishTransitionLabel = new EpsilonTransitionLabel("ε1");
+			continueTransitionLabel = EpsilonTransitionLabel.forPriority(2);
+			finishTransitionLabel = EpsilonTransitionLabel.forPriority(1);
 			break;
 		case POSSESSIVE:
 			throw new UnsupportedOperationException("Possessive quantifiers not implemented.");
@@ -394,7 +394,7 @@ public class ThompsonParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 				resultNFA.addEdge(newEdge);
 			} else {
 				/* if cmin=0 and cmax=0 have an epsilon transition to the accept state */
-				NFAEdge newEdge = new NFAEdge(newInitialVertex, newAcceptVertex, new EpsilonTransitionLabel("ε1"));
+				NFAEdge newEdge = new NFAEdge(newInitialVertex, newAcceptVertex, EpsilonTransitionLabel.forPriority(1));
 				resultNFA.addEdge(newEdge);
 			}
 			
@@ -442,7 +442,7 @@ public class ThompsonParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 				}
 				if ((bounded || cmin != 0) && i == numRepetitions) {
 					/* The only transition will be to the accept vertex so it must have highest priority. */
-					newEdge = new NFAEdge(repetitionAcceptVertex, newAcceptVertex, new EpsilonTransitionLabel("ε1"));
+					newEdge = new NFAEdge(repetitionAcceptVertex, newAcceptVertex, EpsilonTransitionLabel.forPriority(1));
 					resultNFA.addEdge(newEdge);	
 				} else if (i < numRepetitions) {
 					newEdge = new NFAEdge(repetitionAcceptVertex, newAcceptVertex, finishTransitionLabel);
@@ -464,12 +464,12 @@ public class ThompsonParseTreeToNFAConverter extends ParseTreeToNFAConverter {
 		TransitionLabel finishTransitionLabel;
 		switch (quantifierType) {
 		case GREEDY:
-			eatMoreTransitionLabel = new EpsilonTransitionLabel("ε1");
-			finishTransitionLabel = new EpsilonTransitionLabel("ε2");
+			eatMoreTransitionLabel = EpsilonTransitionLabel.forPriority(1);
+			finishTransitionLabel = EpsilonTransitionLabel.forPriority(2);
 			break;
 		case RELUCTANT:
-			eatMoreTransitionLabel = new EpsilonTransitionLabel("ε2");
-			finishTransitionLabel = new EpsilonTransitionLabel("ε1");
+			eatMoreTransitionLabel = EpsilonTransitionLabel.forPriority(2);
+			finishTransitionLabel = EpsilonTransitionLabel.forPriority(1);
 			break;
 		case POSSESSIVE:
 			throw new UnsupportedOperationException("Possessive quantifiers not implemented.");
@@ -0,0 +1,359 @@
+package util;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import util.RangeSet.Range;
+
+/**
+ * An immutable set of integers, stored as a sorted array of disjoint,
+ * non-adjacent ranges. Every range i is stored as its inclusive low bound at
+ * index 2 * i and its exclusive high bound at index 2 * i + 1, so that the
+ * set operations are linear merges over the two arrays. The operations
+ * returning a set construct a new one, while the tests such as
+ * {@link #overlaps(CompactRangeSet)} do not allocate anything.
+ */
+public class CompactRangeSet {
+
+	private final int rangesLowerBound; /* inclusive */
+	private final int rangesUpperBound; /* exclusive */
+
+	private final int[] bounds;
+
+	private CompactRangeSet(int rangesLowerBound, int rangesUpperBound, int[] bounds) {
+		this.rangesLowerBound = rangesLowerBound;
+		this.rangesUpperBound = rangesUpperBound;
+		this.bounds = bounds;
+	}
+
+	/**
+	 * Constructs an empty range set.
+	 */
+	public CompactRangeSet(int rangesLowerBound, int rangesUpperBound) {
+		this(rangesLowerBound, rangesUpperBound, new int[0]);
+	}
+
+	/**
+	 * Constructs a range set containing a single range.
+	 *
+	 * @param low
+	 *            The inclusive low bound of the range.
+	 * @param high
+	 *            The exclusive high bound of the range.
+	 */
+	public CompactRangeSet(int rangesLowerBound, int rangesUpperBound, int low, int high) {
+		this(rangesLowerBound, rangesUpperBound, new int[] { low, high });
+		if (low < rangesLowerBound || high > rangesUpperBound + 1) {
+			throw new IllegalArgumentException("Range exceeds bounds.");
+		}
+		if (low >= high) {
+			throw new IllegalArgumentException("Low must less than high.");
+		}
+	}
+
+	/**
+	 * Constructs a range set containing the ranges of a mutable range set.
+	 */
+	public CompactRangeSet(RangeSet rs) {
+		rangesLowerBound = rs.getRangesLowerBound();
+		rangesUpperBound = rs.getRangesUpperBound();
+		int[] rsBounds = new int[8];
+		int size = 0;
+		/* the ranges of a range set are sorted and merged already */
+		for (Range r : rs) {
+			if (size == rsBounds.length) {
+				rsBounds = Arrays.copyOf(rsBounds, 2 * size);
+			}
+			rsBounds[size++] = r.low;
+			rsBounds[size++] = r.high;
+		}
+		bounds = Arrays.copyOf(rsBounds, size);
+	}
+
+	/**
+	 * Constructs a range set from ranges sorted by their low bounds, merging
+	 * the ranges that overlap or are adjacent.
+	 *
+	 * @param ranges
+	 *            The inclusive low and exclusive high bound of every range,
+	 *            in the layout of the bounds of a compact range set.
+	 * @param numBounds
+	 *            The number of bounds used in the ranges array.
+	 * @return The range set.
+	 */
+	public static CompactRangeSet fromSortedRanges(int rangesLowerBound, int rangesUpperBound, int[] ranges, int numBounds) {
+		int[] sortedBounds = new int[numBounds];
+		int size = 0;
+		for (int i = 0; i < numBounds; i += 2) {
+			int low = ranges[i];
+			int high = ranges[i + 1];
+			if (low < rangesLowerBound || high > rangesUpperBound + 1 || low >= high) {
+				throw new IllegalArgumentException("Invalid range [" + low + ", " + high + ").");
+			}
+			if (size > 0 && low < sortedBounds[size - 2]) {
+				throw new IllegalArgumentException("Ranges must be sorted.");
+			}
+			if (size > 0 && low <= sortedBounds[size - 1]) {
+				sortedBounds[size - 1] = Math.max(sortedBounds[size - 1], high);
+			} else {
+				sortedBounds[size++] = low;
+				sortedBounds[size++] = high;
+			}
+		}
+		return new CompactRangeSet(rangesLowerBound, rangesUpperBound, Arrays.copyOf(sortedBounds, size));
+	}
+
+	public int getRangesLowerBound() {
+		return rangesLowerBound;
+	}
+
+	public int getRangesUpperBound() {
+		return rangesUpperBound;
+	}
+
+	public int getNumRanges() {
+		return bounds.length / 2;
+	}
+
+	/**
+	 * @return The inclusive low bound of range i.
+	 */
+	public int getLow(int i) {
+		return bounds[2 * i];
+	}
+
+	/**
+	 * @return The exclusive high bound of range i.
+	 */
+	public int getHigh(int i) {
+		return bounds[2 * i + 1];
+	}
+
+	public boolean isEmpty() {
+		return bounds.length == 0;
+	}
+
+	public boolean contains(int num) {
+		/* finding the last range with a low bound not greater than num */
+		int lowRange = 0;
+		int highRange = getNumRanges() - 1;
+		while (lowRange <= highRange) {
+			int middleRange = (lowRange + highRange) >>> 1;
+			if (bounds[2 * middleRange] <= num) {
+				lowRange = middleRange + 1;
+			} else {
+				highRange = middleRange - 1;
+			}
+		}
+		return highRange >= 0 && num < bounds[2 * highRange + 1];
+	}
+
+	/**
+	 * @return True if this set and rs have at least one element in common.
+	 */
+	public boolean overlaps(CompactRangeSet rs) {
+		int[] bounds1 = bounds;
+		int[] bounds2 = rs.bounds;
+		int i = 0;
+		int j = 0;
+		while (i < bounds1.length && j < bounds2.length) {
+			if (bounds1[i] < bounds2[j + 1] && bounds2[j] < bounds1[i + 1]) {
+				return true;
+			}
+			/* the range ending first cannot overlap any later range */
+			if (bounds1[i + 1] < bounds2[j + 1]) {
+				i += 2;
+			} else {
+				j += 2;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return True if every element of rs is an element of this set.
+	 */
+	public boolean containsAll(CompactRangeSet rs) {
+		int[] bounds1 = bounds;
+		int[] bounds2 = rs.bounds;
+		int i = 0;
+		for (int j = 0; j < bounds2.length; j += 2) {
+			while (i < bounds1.length && bounds1[i + 1] <= bounds2[j]) {
+				i += 2;
+			}
+			/* ranges are not adjacent, so a range of rs must fit in a single range */
+			if (i == bounds1.length || bounds1[i] > bounds2[j] || bounds1[i + 1] < bounds2[j + 1]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public CompactRangeSet union(CompactRangeSet rs) {
+		int[] bounds1 = bounds;
+		int[] bounds2 = rs.bounds;
+		if (bounds2.length == 0) {
+			return this;
+		}
+		if (bounds1.length == 0) {
+			return new CompactRangeSet(rangesLowerBound, rangesUpperBound, bounds2);
+		}
+		int[] unionBounds = new int[bounds1.length + bounds2.length];
+		int size = 0;
+		int i = 0;
+		int j = 0;
+		while (i < bounds1.length || j < bounds2.length) {
+			int low;
+			int high;
+			/* taking the range with the lowest low bound next */
+			if (j == bounds2.length || (i < bounds1.length && bounds1[i] <= bounds2[j])) {
+				low = bounds1[i];
+				high = bounds1[i + 1];
+				i += 2;
+			} else {
+				low = bounds2[j];
+				high = bounds2[j + 1];
+				j += 2;
+			}
+			if (size > 0 && low <= unionBounds[size - 1]) {
+				/* merging overlapping and adjacent ranges */
+				unionBounds[size - 1] = Math.max(unionBounds[size - 1], high);
+			} else {
+				unionBounds[size++] = low;
+				unionBounds[size++] = high;
+			}
+		}
+		return new CompactRangeSet(rangesLowerBound, rangesUpperBound, Arrays.copyOf(unionBounds, size));
+	}
+
+	public CompactRangeSet intersection(CompactRangeSet rs) {
+		int[] bounds1 = bounds;
+		int[] bounds2 = rs.bounds;
+		int[] intersectionBounds = new int[bounds1.length + bounds2.length];
+		int size = 0;
+		int i = 0;
+		int j = 0;
+		while (i < bounds1.length && j < bounds2.length) {
+			int low = Math.max(bounds1[i], bounds2[j]);
+			int high = Math.min(bounds1[i + 1], bounds2[j + 1]);
+			if (low < high) {
+				intersectionBounds[size++] = low;
+				intersectionBounds[size++] = high;
+			}
+			if (bounds1[i + 1] < bounds2[j + 1]) {
+				i += 2;
+			} else {
+				j += 2;
+			}
+		}
+		return new CompactRangeSet(rangesLowerBound, rangesUpperBound, Arrays.copyOf(intersectionBounds, size));
+	}
+
+	/**
+	 * @return The set of elements of this set that are not elements of rs.
+	 */
+	public CompactRangeSet difference(CompactRangeSet rs) {
+		int[] bounds1 = bounds;
+		int[] bounds2 = rs.bounds;
+		if (bounds1.length == 0 || bounds2.length == 0) {
+			return this;
+		}
+		int[] differenceBounds = new int[bounds1.length + bounds2.length];
+		int size = 0;
+		int j = 0;
+		for (int i = 0; i < bounds1.length; i += 2) {
+			int low = bounds1[i];
+			int high = bounds1[i + 1];
+			while (j < bounds2.length && bounds2[j + 1] <= low) {
+				j += 2;
+			}
+			/* a range of rs can overlap the next range of this set as well, so j is not moved past it */
+			for (int k = j; k < bounds2.length && bounds2[k] < high && low < high; k += 2) {
+				if (bounds2[k] > low) {
+					differenceBounds[size++] = low;
+					differenceBounds[size++] = bounds2[k];
+				}
+				low = Math.max(low, bounds2[k + 1]);
+			}
+			if (low < high) {
+				differenceBounds[size++] = low;
+				differenceBounds[size++] = high;
+			}
+		}
+		return new CompactRangeSet(rangesLowerBound, rangesUpperBound, Arrays.copyOf(differenceBounds, size));
+	}
+
+	public CompactRangeSet complement() {
+		int[] complementBounds = new int[bounds.length + 2];
+		int size = 0;
+		int previousHigh = rangesLowerBound;
+		for (int i = 0; i < bounds.length; i += 2) {
+			if (bounds[i] > previousHigh) {
+				complementBounds[size++] = previousHigh;
+				complementBounds[size++] = bounds[i];
+			}
+			previousHigh = bounds[i + 1];
+		}
+		if (previousHigh < rangesUpperBound) {
+			complementBounds[size++] = previousHigh;
+			complementBounds[size++] = rangesUpperBound;
+		}
+		return new CompactRangeSet(rangesLowerBound, rangesUpperBound, Arrays.copyOf(complementBounds, size));
+	}
+
+	public Set<Integer> discretize() {
+		Set<Integer> values = new HashSet<Integer>();
+		for (int i = 0; i < bounds.length; i += 2) {
+			for (int v = bounds[i]; v < bounds[i + 1]; v++) {
+				values.add(v);
+			}
+		}
+
+		return values;
+	}
+
+	public int sampleRangeSet() {
+		if (bounds.length == 0) {
+			throw new IllegalStateException("Cannot sample from empty range set.");
+		}
+		return bounds[0];
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == null) {
+			return false;
+		}
+		if (o == this) {
+			return true;
+		}
+		if (!(o instanceof CompactRangeSet)) {
+			return false;
+		}
+
+		CompactRangeSet rs = (CompactRangeSet) o;
+		/* as with RangeSet, the bounds are not compared */
+		return Arrays.equals(bounds, rs.bounds);
+	}
+
+	@Override
+	public int hashCode() {
+		/* the hash code of the equivalent RangeSet */
+		int rangesHashCode = 0;
+		for (int i = 0; i < bounds.length; i += 2) {
+			rangesHashCode += 5 * bounds[i] + 7 * bounds[i + 1];
+		}
+		return 17 * rangesLowerBound + 33 * rangesUpperBound + rangesHashCode;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < bounds.length; i += 2) {
+			sb.append("[" + bounds[i] + "," + bounds[i + 1] + ") ");
+		}
+		return sb.toString();
+	}
+
+}
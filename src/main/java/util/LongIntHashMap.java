@@ -0,0 +1,119 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from long keys to non-negative int values, using open addressing
+ * with linear probing so that neither keys nor values are boxed.
+ */
+public class LongIntHashMap {
+
+	private static final int NO_VALUE = -1;
+
+	private long[] keys;
+
+	/* NO_VALUE marks an empty slot */
+	private int[] values;
+
+	private int size;
+
+	/* keys.length - 1, the length is always a power of two */
+	private int mask;
+
+	public LongIntHashMap() {
+		this(16);
+	}
+
+	public LongIntHashMap(int expectedSize) {
+		int capacity = 16;
+		while (capacity < 2 * expectedSize) {
+			capacity <<= 1;
+		}
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(values, NO_VALUE);
+		mask = capacity - 1;
+	}
+
+	/**
+	 * @param key
+	 *            The key to find.
+	 * @return The value mapped to the key, or -1 if there is no such value.
+	 */
+	public int get(long key) {
+		int slot = hash(key) & mask;
+		while (values[slot] != NO_VALUE) {
+			if (keys[slot] == key) {
+				return values[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return NO_VALUE;
+	}
+
+	public boolean containsKey(long key) {
+		return get(key) != NO_VALUE;
+	}
+
+	/**
+	 * Maps a key to a value, replacing the value previously mapped to the key.
+	 *
+	 * @param key
+	 *            The key.
+	 * @param value
+	 *            The non-negative value.
+	 */
+	public void put(long key, int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Value cannot be negative: " + value);
+		}
+		int slot = hash(key) & mask;
+		while (values[slot] != NO_VALUE) {
+			if (keys[slot] == key) {
+				values[slot] = value;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		size++;
+		/* keeping the load factor below a half */
+		if (2 * size > keys.length) {
+			grow();
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new long[2 * oldKeys.length];
+		values = new int[2 * oldValues.length];
+		Arrays.fill(values, NO_VALUE);
+		mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != NO_VALUE) {
+				int slot = hash(oldKeys[i]) & mask;
+				while (values[slot] != NO_VALUE) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private static int hash(long key) {
+		/* the finalising step of MurmurHash3, since packed keys are far from random */
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb93fe53ef63bL;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+}
@@ -24,6 +24,14 @@ public class RangeSet implements Iterable<Range> {
 		ranges = new TreeSet<Range>(rs.ranges);
 	}
 	
+	public int getRangesLowerBound() {
+		return rangesLowerBound;
+	}
+	
+	public int getRangesUpperBound() {
+		return rangesUpperBound;
+	}
+	
 	public Range createRange(int num) {
 		return new Range(num);
 	}
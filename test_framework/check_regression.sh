@@ -0,0 +1,57 @@
+#!/bin/bash
+# Analyses tests/regression.txt with several epsilon loop removal and
+# priority removal settings, and compares the EDA/IDA verdicts and IDA
+# degrees, and for the exploits setting the exploit strings, with the
+# expected results in tests/.
+#
+# usage: ./check_regression.sh [--update]
+#
+# Build the project with mvn package first. The class path can be overridden
+# with the CLASS_PATH environment variable. With --update the expected
+# results are overwritten with the current results instead.
+
+PATH_TO_ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+PATH_TO_TESTS="$PATH_TO_ROOT/tests"
+CLASS_PATH="${CLASS_PATH:-$PATH_TO_ROOT/target/dependency-jars/*:$PATH_TO_ROOT/target/regex-static-analysis-1.0.5.jar}"
+
+TEST_FILE="$PATH_TO_TESTS/regression.txt"
+TIMEOUT=10
+
+update=false
+if [ "$1" == "--update" ]; then
+	update=true
+fi
+
+# name and arguments of every setting to check
+SETTINGS=(
+	"full|--full --verbose=false"
+	"simple|--simple --verbose=false"
+	"merging|--full --merge --verbose=false"
+	"simple_merging|--simple --merge --verbose=false"
+	"exploits|--full --verbose=true"
+)
+
+status=0
+for setting in "${SETTINGS[@]}"; do
+	name="${setting%%|*}"
+	args="${setting#*|}"
+	expected="$PATH_TO_TESTS/regression_expected_$name.txt"
+	actual="$(mktemp)"
+
+	# the timings and the summary differ between runs, so they are removed
+	java -Xms2048m -cp "$CLASS_PATH" driver.Main $args --test-eda-exploit-string=false --timeout=$TIMEOUT --if="$TEST_FILE" 2>&1 \
+		| grep -v "constructed in: \|performed in: \|Total analysis time: " \
+		| sed '/^Construction: \|^Analysed:/,$d' > "$actual"
+
+	if $update; then
+		cp "$actual" "$expected"
+		echo "$name: updated"
+	elif diff "$expected" "$actual"; then
+		echo "$name: passed"
+	else
+		echo "$name: FAILED"
+		status=1
+	fi
+	rm "$actual"
+done
+exit $status